@@ -10,6 +10,7 @@ import {
 } from 'react-native-paper';
 import { useTranslation } from 'react-i18next';
 import { FileApi } from './src/services/FileApi';
+import { BenchmarkApi } from './src/services/BenchmarkApi';
 import { GestureHandlerRootView } from 'react-native-gesture-handler';
 import { SafeAreaProvider } from 'react-native-safe-area-context';
 import ExceptionHandler from './src/common/components/ExceptionHandler';
@@ -78,6 +79,9 @@ const App = () => {
       });
   useEffect(() => {
     askPermission();
+    if (__DEV__) {
+      BenchmarkApi.registerDevMenu();
+    }
   }, []);
 
   return (
@@ -0,0 +1,83 @@
+package com.telenko.filemanager;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+// Scratch trees in the cache dir of the app under test
+public class TestFiles {
+
+    private TestFiles() {
+    }
+
+    // Empty folder, whatever a previous run left there is removed
+    public static File directory(String name) {
+        File directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), name);
+        delete(directory);
+        if (!directory.mkdirs()) {
+            throw new IllegalStateException("Failed to create " + directory);
+        }
+        return directory;
+    }
+
+    public static File write(File file, byte[] content) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(content);
+        }
+        return file;
+    }
+
+    public static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream input = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = input.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                offset += read;
+            }
+        }
+        return data;
+    }
+
+    public static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // Links are removed, never followed
+    public static void delete(File file) {
+        boolean isDirectory;
+        try {
+            int mode = Os.lstat(file.getPath()).st_mode;
+            isDirectory = OsConstants.S_ISDIR(mode);
+        } catch (ErrnoException e) {
+            return;
+        }
+        if (isDirectory) {
+            String[] names = file.list();
+            if (names != null) {
+                for (String name : names) {
+                    delete(new File(file, name));
+                }
+            }
+        }
+        file.delete();
+    }
+}
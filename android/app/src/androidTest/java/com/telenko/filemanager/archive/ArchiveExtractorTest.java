@@ -0,0 +1,135 @@
+package com.telenko.filemanager.archive;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.telenko.filemanager.TestFiles;
+import com.telenko.filemanager.operations.OperationControl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ArchiveExtractorTest {
+
+    private static final String CONFLICT_TEMPLATE = "({n})";
+
+    private File root;
+    private File destination;
+
+    @Before
+    public void setUp() {
+        root = TestFiles.directory("archive-extractor-test-" + System.nanoTime());
+        destination = new File(root, "out");
+        destination.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(root);
+    }
+
+    @Test
+    public void extractsWholeArchive() throws Exception {
+        byte[] a = TestFiles.randomBytes(1000, 1);
+        byte[] b = TestFiles.randomBytes(300 * 1024, 2);
+        File archive = zip("a.zip", "docs/a.txt", a, "docs/deep/b.bin", b);
+
+        extract(archive, Collections.emptyList(), false);
+
+        assertArrayEquals(a, TestFiles.read(new File(destination, "docs/a.txt")));
+        assertArrayEquals(b, TestFiles.read(new File(destination, "docs/deep/b.bin")));
+    }
+
+    @Test
+    public void extractsSelectedFolderUnderItsOwnName() throws Exception {
+        byte[] b = TestFiles.randomBytes(1000, 3);
+        File archive = zip("a.zip", "docs/a.txt", TestFiles.randomBytes(10, 4), "docs/deep/b.bin", b);
+
+        extract(archive, Collections.singletonList("docs/deep"), false);
+
+        assertArrayEquals(b, TestFiles.read(new File(destination, "deep/b.bin")));
+        assertEquals(Collections.singletonList("deep"), Arrays.asList(destination.list()));
+    }
+
+    @Test
+    public void rejectsEntriesOutsideOfDestination() throws Exception {
+        File archive = zip("slip.zip", "good.txt", TestFiles.randomBytes(10, 5), "../evil.txt", TestFiles.randomBytes(10, 6));
+
+        try {
+            extract(archive, Collections.emptyList(), false);
+            fail("Entry outside of destination was extracted");
+        } catch (IOException expected) {
+        }
+        assertFalse(new File(root, "evil.txt").exists());
+        // Checks run before anything is written
+        assertEquals(0, destination.list().length);
+    }
+
+    @Test
+    public void existingFileIsNotReplaced() throws Exception {
+        byte[] existing = TestFiles.randomBytes(100, 7);
+        TestFiles.write(new File(destination, "a.txt"), existing);
+        File archive = zip("a.zip", "a.txt", TestFiles.randomBytes(100, 8), "b.txt", TestFiles.randomBytes(100, 9));
+
+        try {
+            extract(archive, Collections.emptyList(), false);
+            fail("Existing file was replaced");
+        } catch (IOException expected) {
+        }
+        assertArrayEquals(existing, TestFiles.read(new File(destination, "a.txt")));
+        assertFalse(new File(destination, "b.txt").exists());
+    }
+
+    @Test
+    public void conflictsAreResolvedWithNumberedNames() throws Exception {
+        byte[] existing = TestFiles.randomBytes(100, 10);
+        TestFiles.write(new File(destination, "a.txt"), existing);
+        TestFiles.write(new File(destination, "docs/old.txt"), existing);
+        byte[] a = TestFiles.randomBytes(100, 11);
+        byte[] inner = TestFiles.randomBytes(100, 12);
+        File archive = zip("a.zip", "a.txt", a, "docs/new.txt", inner);
+
+        extract(archive, Collections.emptyList(), true);
+
+        assertArrayEquals(existing, TestFiles.read(new File(destination, "a.txt")));
+        assertArrayEquals(a, TestFiles.read(new File(destination, "a (1).txt")));
+        // A taken folder is not merged into either
+        assertFalse(new File(destination, "docs/new.txt").exists());
+        assertArrayEquals(inner, TestFiles.read(new File(destination, "docs (1)/new.txt")));
+    }
+
+    private void extract(File archive, List<String> entryPaths, boolean resolveConflicts) throws IOException {
+        new ArchiveExtractor(archive.getPath(), entryPaths, destination.getPath(), resolveConflicts, CONFLICT_TEMPLATE,
+                new OperationControl(), (bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond) -> {
+                }).run();
+    }
+
+    // Name and content pairs, names are written as given so they can point anywhere
+    private File zip(String name, Object... entries) throws IOException {
+        File file = new File(root, name);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                output.putNextEntry(new ZipEntry((String) entries[i]));
+                output.write((byte[]) entries[i + 1]);
+                output.closeEntry();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,145 @@
+package com.telenko.filemanager.archive;
+
+import android.system.Os;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.telenko.filemanager.TestFiles;
+import com.telenko.filemanager.operations.OperationControl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ZipCompressorTest {
+
+    private static final int THREADS = 2;
+
+    private File root;
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        root = TestFiles.directory("zip-compressor-test-" + System.nanoTime());
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        TestFiles.delete(root);
+    }
+
+    @Test
+    public void roundTripKeepsContents() throws Exception {
+        File source = new File(root, "source");
+        Map<String, byte[]> expected = new HashMap<>();
+        expected.put("source/empty.txt", new byte[0]);
+        expected.put("source/small.txt", TestFiles.randomBytes(1000, 1));
+        // Several chunks, each deflated on its own and joined into one stream
+        expected.put("source/nested/large.bin", compressible(3 * 1024 * 1024 + 17));
+        // Stored as is by extension
+        expected.put("source/nested/photo.jpg", TestFiles.randomBytes(700 * 1024, 2));
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            TestFiles.write(new File(root, entry.getKey()), entry.getValue());
+        }
+        new File(source, "folder/empty").mkdirs();
+        File zip = new File(root, "out.zip");
+
+        compress(Collections.singletonList(source.getPath()), zip);
+
+        Map<String, byte[]> actual = read(zip);
+        assertTrue(actual.containsKey("source/folder/empty/"));
+        actual.keySet().removeAll(Arrays.asList("source/", "source/nested/", "source/folder/", "source/folder/empty/"));
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void linksInsideFoldersAreSkipped() throws Exception {
+        File source = new File(root, "source");
+        byte[] content = TestFiles.randomBytes(100, 3);
+        File file = TestFiles.write(new File(source, "a.txt"), content);
+        Os.symlink(file.getPath(), new File(source, "link.txt").getPath());
+        // Would be a loop if followed
+        Os.symlink(source.getPath(), new File(source, "self").getPath());
+        File zip = new File(root, "out.zip");
+
+        compress(Collections.singletonList(source.getPath()), zip);
+
+        Map<String, byte[]> actual = read(zip);
+        assertEquals(2, actual.size());
+        assertArrayEquals(content, actual.get("source/a.txt"));
+        assertFalse(actual.containsKey("source/link.txt"));
+    }
+
+    @Test(expected = IOException.class)
+    public void existingDestinationIsNotReplaced() throws Exception {
+        File source = TestFiles.write(new File(root, "a.txt"), TestFiles.randomBytes(10, 4));
+        File zip = TestFiles.write(new File(root, "out.zip"), new byte[0]);
+
+        compress(Collections.singletonList(source.getPath()), zip);
+    }
+
+    private void compress(List<String> sources, File zip) throws Exception {
+        new ZipCompressor(sources, zip.getPath(), Deflater.DEFAULT_COMPRESSION, pool, THREADS, new OperationControl(),
+                (bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond) -> {
+                }).run();
+    }
+
+    // Entry name -> content, read back with the platform zip reader
+    private static Map<String, byte[]> read(File zip) throws IOException {
+        Map<String, byte[]> result = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = input.read(buffer)) > 0) {
+                        content.write(buffer, 0, read);
+                    }
+                }
+                result.put(entry.getName(), content.toByteArray());
+            }
+        }
+        return result;
+    }
+
+    // Repeating runs of random bytes, so deflate has something to find across chunk borders
+    private static byte[] compressible(int size) {
+        byte[] pattern = TestFiles.randomBytes(4096, 5);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = pattern[(i / 3) % pattern.length];
+        }
+        return data;
+    }
+}
@@ -0,0 +1,158 @@
+package com.telenko.filemanager.operations;
+
+import android.system.Os;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.telenko.filemanager.TestFiles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class DuplicateFinderTest {
+
+    // Above two hash blocks, so groups go through the full hash stage
+    private static final int LARGE = 300 * 1024;
+    private static final int SMALL = 1000;
+
+    private File root;
+    private ForkJoinPool walkPool;
+    private ExecutorService workers;
+    private HashCache hashCache;
+
+    @Before
+    public void setUp() {
+        // HashCache keys on path, size and mtime, a fresh path per test keeps hashes of earlier runs out
+        root = TestFiles.directory("duplicate-finder-test-" + System.nanoTime());
+        walkPool = new ForkJoinPool(2);
+        workers = Executors.newFixedThreadPool(2);
+        hashCache = new HashCache(InstrumentationRegistry.getInstrumentation().getTargetContext());
+    }
+
+    @After
+    public void tearDown() {
+        walkPool.shutdownNow();
+        workers.shutdownNow();
+        hashCache.close();
+        TestFiles.delete(root);
+    }
+
+    @Test
+    public void groupsFilesWithEqualContent() throws Exception {
+        byte[] content = TestFiles.randomBytes(LARGE, 1);
+        File a = TestFiles.write(new File(root, "a.bin"), content);
+        File b = TestFiles.write(new File(root, "nested/b.bin"), content);
+        // Same size, head and tail, only the middle differs
+        byte[] middleChanged = content.clone();
+        middleChanged[LARGE / 2] ^= 1;
+        TestFiles.write(new File(root, "c.bin"), middleChanged);
+        TestFiles.write(new File(root, "d.bin"), TestFiles.randomBytes(LARGE, 2));
+
+        List<List<String>> groups = find(root.getPath());
+
+        assertEquals(Collections.singletonList(paths(a, b)), groups);
+    }
+
+    @Test
+    public void groupsSmallFilesByPartialHash() throws Exception {
+        byte[] content = TestFiles.randomBytes(SMALL, 3);
+        File a = TestFiles.write(new File(root, "a.txt"), content);
+        File b = TestFiles.write(new File(root, "b.txt"), content);
+        TestFiles.write(new File(root, "c.txt"), TestFiles.randomBytes(SMALL, 4));
+
+        assertEquals(Collections.singletonList(paths(a, b)), find(root.getPath()));
+    }
+
+    @Test
+    public void overlappingRootsDoNotMatchAFileWithItself() throws Exception {
+        File nested = new File(root, "nested");
+        TestFiles.write(new File(nested, "only.bin"), TestFiles.randomBytes(LARGE, 5));
+
+        assertTrue(find(root.getPath(), nested.getPath(), root.getPath()).isEmpty());
+    }
+
+    @Test
+    public void linkedFoldersAreNotFollowed() throws Exception {
+        File nested = new File(root, "nested");
+        TestFiles.write(new File(nested, "only.bin"), TestFiles.randomBytes(LARGE, 6));
+        Os.symlink(nested.getPath(), new File(root, "alias").getPath());
+
+        assertTrue(find(root.getPath()).isEmpty());
+        // A selected root which is a link is followed, but still only once
+        assertTrue(find(root.getPath(), new File(root, "alias").getPath()).isEmpty());
+    }
+
+    @Test
+    public void hardLinksAreOneFile() throws Exception {
+        File a = TestFiles.write(new File(root, "a.bin"), TestFiles.randomBytes(LARGE, 7));
+        Os.link(a.getPath(), new File(root, "b.bin").getPath());
+
+        assertTrue(find(root.getPath()).isEmpty());
+    }
+
+    @Test
+    public void skipsHiddenFoldersButNotHiddenFiles() throws Exception {
+        byte[] content = TestFiles.randomBytes(SMALL, 8);
+        File visible = TestFiles.write(new File(root, "photo.jpg"), content);
+        File hidden = TestFiles.write(new File(root, ".photo.jpg"), content);
+        TestFiles.write(new File(root, ".thumbnails/photo.jpg"), content);
+
+        assertEquals(Collections.singletonList(paths(hidden, visible)), find(root.getPath()));
+    }
+
+    @Test
+    public void respectsMinSize() throws Exception {
+        byte[] content = TestFiles.randomBytes(SMALL, 9);
+        TestFiles.write(new File(root, "a.txt"), content);
+        TestFiles.write(new File(root, "b.txt"), content);
+
+        assertTrue(find(SMALL + 1, root.getPath()).isEmpty());
+    }
+
+    private List<List<String>> find(String... roots) throws Exception {
+        return find(1, roots);
+    }
+
+    private List<List<String>> find(long minSize, String... roots) throws Exception {
+        List<List<String>> groups = Collections.synchronizedList(new ArrayList<>());
+        new DuplicateFinder(Arrays.asList(roots), minSize, walkPool, workers, new OperationControl(), hashCache,
+                new DuplicateFinder.Listener() {
+                    @Override
+                    public void onProgress(int stage, long filesScanned, long candidates, long hashedBytes) {
+                    }
+
+                    @Override
+                    public void onGroup(long size, List<String> groupPaths) {
+                        List<String> sorted = new ArrayList<>(groupPaths);
+                        Collections.sort(sorted);
+                        groups.add(sorted);
+                    }
+                }).run();
+        return groups;
+    }
+
+    private static List<String> paths(File... files) {
+        List<String> result = new ArrayList<>();
+        for (File file : files) {
+            result.add(file.getAbsolutePath());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package com.telenko.filemanager.operations;
+
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.telenko.filemanager.TestFiles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TransferEngineTest {
+
+    private File root;
+    private File destination;
+    private ExecutorService workers;
+
+    @Before
+    public void setUp() {
+        root = TestFiles.directory("transfer-engine-test-" + System.nanoTime());
+        destination = new File(root, "destination");
+        destination.mkdirs();
+        workers = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        workers.shutdownNow();
+        TestFiles.delete(root);
+    }
+
+    @Test
+    public void copyRecreatesLinksWithoutFollowing() throws Exception {
+        File folder = new File(root, "folder");
+        byte[] content = TestFiles.randomBytes(1000, 1);
+        TestFiles.write(new File(folder, "a.txt"), content);
+        // Would be a loop if followed
+        Os.symlink(folder.getPath(), new File(folder, "self").getPath());
+        Os.symlink("a.txt", new File(folder, "relative.txt").getPath());
+
+        transfer(folder, false);
+
+        File target = new File(destination, "folder");
+        assertArrayEquals(content, TestFiles.read(new File(target, "a.txt")));
+        assertLink(folder.getPath(), new File(target, "self"));
+        assertLink("a.txt", new File(target, "relative.txt"));
+    }
+
+    @Test
+    public void moveAcrossVolumesLeavesLinkedFoldersAlone() throws Exception {
+        File outside = new File(root, "outside");
+        byte[] kept = TestFiles.randomBytes(1000, 2);
+        File keptFile = TestFiles.write(new File(outside, "kept.txt"), kept);
+        File folder = new File(root, "folder");
+        byte[] content = TestFiles.randomBytes(1000, 3);
+        TestFiles.write(new File(folder, "a.txt"), content);
+        Os.symlink(outside.getPath(), new File(folder, "outside").getPath());
+
+        transfer(folder, true);
+
+        File target = new File(destination, "folder");
+        assertArrayEquals(content, TestFiles.read(new File(target, "a.txt")));
+        assertLink(outside.getPath(), new File(target, "outside"));
+        assertFalse(folder.exists());
+        // Only the link moved, what it points to is untouched
+        assertArrayEquals(kept, TestFiles.read(keptFile));
+        assertEquals(1, outside.list().length);
+    }
+
+    @Test
+    public void movedLinkIsNotFollowed() throws Exception {
+        File outside = new File(root, "outside");
+        File keptFile = TestFiles.write(new File(outside, "kept.txt"), TestFiles.randomBytes(100, 4));
+        File link = new File(root, "link");
+        Os.symlink(outside.getPath(), link.getPath());
+
+        transfer(link, true);
+
+        assertLink(outside.getPath(), new File(destination, "link"));
+        assertTrue(keptFile.exists());
+        assertFalse(link.exists());
+    }
+
+    // No volume roots, so moves take the copy and delete path
+    private void transfer(File source, boolean move) throws Exception {
+        new TransferEngine(Collections.singletonList(source.getPath()), destination.getPath(), move, false, null,
+                Collections.emptyList(), workers, new OperationControl(),
+                (bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond) -> {
+                }, null).run();
+    }
+
+    private static void assertLink(String expectedTarget, File link) throws Exception {
+        assertTrue(OsConstants.S_ISLNK(Os.lstat(link.getPath()).st_mode));
+        assertEquals(expectedTarget, Os.readlink(link.getPath()));
+    }
+}
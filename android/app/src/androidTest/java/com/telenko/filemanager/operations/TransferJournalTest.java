@@ -0,0 +1,234 @@
+package com.telenko.filemanager.operations;
+
+import android.system.Os;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.telenko.filemanager.TestFiles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TransferJournalTest {
+
+    private static final int LARGE = 2 * 1024 * 1024;
+
+    private File root;
+    private File journals;
+    private File source;
+    private File destination;
+    private ExecutorService workers;
+    private TransferJournal journal;
+
+    @Before
+    public void setUp() {
+        root = TestFiles.directory("transfer-journal-test-" + System.nanoTime());
+        journals = new File(root, "journals");
+        source = new File(root, "source");
+        destination = new File(root, "destination");
+        source.mkdirs();
+        destination.mkdirs();
+        workers = Executors.newFixedThreadPool(2);
+        journal = TransferJournal.create(journals);
+    }
+
+    @After
+    public void tearDown() {
+        journal.delete();
+        workers.shutdownNow();
+        TestFiles.delete(root);
+    }
+
+    @Test
+    public void resumeSkipsDoneJobsAndContinuesAfterOffset() throws Exception {
+        byte[] a = TestFiles.randomBytes(1000, 1);
+        byte[] b = TestFiles.randomBytes(LARGE, 2);
+        File sourceA = TestFiles.write(new File(source, "a.txt"), a);
+        File sourceB = TestFiles.write(new File(source, "b.bin"), b);
+        File targetA = new File(destination, "a.txt");
+        File targetB = new File(destination, "b.bin");
+        TransferJournal.Plan plan = new TransferJournal.Plan(false);
+        plan.jobs.add(job(sourceA, targetA, a.length));
+        plan.jobs.add(job(sourceB, targetB, b.length));
+        journal.writePlan(plan);
+        // Done before the kill
+        TestFiles.write(targetA, a);
+        journal.markDone(0);
+        // Half journaled, and some bytes past the offset which may be garbage
+        int offset = LARGE / 2;
+        byte[] written = TestFiles.randomBytes(offset + 1000, 3);
+        TestFiles.write(targetB, written);
+        journal.markOffset(1, offset);
+
+        TransferEngine.resume(journal, workers, new OperationControl(), TransferJournalTest::ignoreProgress).run();
+
+        assertArrayEquals(a, TestFiles.read(targetA));
+        // Journaled part is kept as is, the rest comes from the source
+        byte[] expected = b.clone();
+        System.arraycopy(written, 0, expected, 0, offset);
+        assertArrayEquals(expected, TestFiles.read(targetB));
+        assertTrue(sourceA.exists() && sourceB.exists());
+    }
+
+    @Test
+    public void resumeFinishesJournaledRenames() throws Exception {
+        byte[] content = TestFiles.randomBytes(100, 4);
+        // Killed before this one was renamed
+        File pendingSource = TestFiles.write(new File(source, "pending.txt"), content);
+        File pendingTarget = new File(destination, "pending.txt");
+        // And after this one
+        File renamedSource = new File(source, "renamed.txt");
+        File renamedTarget = TestFiles.write(new File(destination, "renamed.txt"), content);
+        TransferJournal.Plan plan = new TransferJournal.Plan(true);
+        plan.atomicMoves.add(pair(pendingSource, pendingTarget));
+        plan.atomicMoves.add(pair(renamedSource, renamedTarget));
+        journal.writePlan(plan);
+
+        TransferEngine.resume(journal, workers, new OperationControl(), TransferJournalTest::ignoreProgress).run();
+
+        assertFalse(pendingSource.exists());
+        assertArrayEquals(content, TestFiles.read(pendingTarget));
+        assertFalse(renamedSource.exists());
+        assertArrayEquals(content, TestFiles.read(renamedTarget));
+    }
+
+    @Test
+    public void resumeFailsWhenRenameTargetIsTaken() throws Exception {
+        File movedSource = TestFiles.write(new File(source, "a.txt"), TestFiles.randomBytes(100, 5));
+        byte[] other = TestFiles.randomBytes(100, 6);
+        File movedTarget = TestFiles.write(new File(destination, "a.txt"), other);
+        TransferJournal.Plan plan = new TransferJournal.Plan(true);
+        plan.atomicMoves.add(pair(movedSource, movedTarget));
+        journal.writePlan(plan);
+
+        try {
+            TransferEngine.resume(journal, workers, new OperationControl(), TransferJournalTest::ignoreProgress).run();
+            fail("Rename over an existing file");
+        } catch (IOException expected) {
+        }
+        assertTrue(movedSource.exists());
+        assertArrayEquals(other, TestFiles.read(movedTarget));
+    }
+
+    @Test
+    public void rollbackRemovesCopies() throws Exception {
+        byte[] content = TestFiles.randomBytes(1000, 7);
+        File sourceFile = TestFiles.write(new File(source, "folder/a.txt"), content);
+        File targetFolder = new File(destination, "folder");
+        File targetFile = TestFiles.write(new File(targetFolder, "a.txt"), TestFiles.randomBytes(500, 8));
+        TransferJournal.Plan plan = new TransferJournal.Plan(false);
+        plan.directoriesToCreate.add(targetFolder.getAbsolutePath());
+        plan.jobs.add(job(sourceFile, targetFile, content.length));
+        journal.writePlan(plan);
+
+        TransferRollback.run(journal);
+
+        assertFalse(targetFolder.exists());
+        assertArrayEquals(content, TestFiles.read(sourceFile));
+    }
+
+    @Test
+    public void rollbackMovesFilesBack() throws Exception {
+        byte[] a = TestFiles.randomBytes(1000, 9);
+        byte[] b = TestFiles.randomBytes(1000, 10);
+        byte[] c = TestFiles.randomBytes(1000, 11);
+        byte[] d = TestFiles.randomBytes(1000, 12);
+        File sourceFolder = new File(source, "folder");
+        File targetFolder = new File(destination, "folder");
+        // Moved before the kill
+        File sourceA = new File(sourceFolder, "a.txt");
+        File targetA = TestFiles.write(new File(targetFolder, "a.txt"), a);
+        // Not started
+        File sourceB = TestFiles.write(new File(sourceFolder, "b.txt"), b);
+        File targetB = new File(targetFolder, "b.txt");
+        // Renamed, and journaled but not renamed yet
+        File sourceC = new File(source, "c.txt");
+        File targetC = TestFiles.write(new File(destination, "c.txt"), c);
+        File sourceD = TestFiles.write(new File(source, "d.txt"), d);
+        File targetD = new File(destination, "d.txt");
+        TransferJournal.Plan plan = new TransferJournal.Plan(true);
+        plan.directoriesToCreate.add(targetFolder.getAbsolutePath());
+        plan.sourceDirectories.add(sourceFolder.getAbsolutePath());
+        plan.jobs.add(job(sourceA, targetA, a.length));
+        plan.jobs.add(job(sourceB, targetB, b.length));
+        plan.atomicMoves.add(pair(sourceC, targetC));
+        plan.atomicMoves.add(pair(sourceD, targetD));
+        journal.writePlan(plan);
+        journal.markDone(0);
+
+        TransferRollback.run(journal);
+
+        assertArrayEquals(a, TestFiles.read(sourceA));
+        assertArrayEquals(b, TestFiles.read(sourceB));
+        assertArrayEquals(c, TestFiles.read(sourceC));
+        assertArrayEquals(d, TestFiles.read(sourceD));
+        assertFalse(targetFolder.exists());
+        assertFalse(targetC.exists());
+        assertFalse(targetD.exists());
+    }
+
+    @Test
+    public void rollbackMovesLinksBack() throws Exception {
+        File outside = TestFiles.write(new File(root, "outside.txt"), TestFiles.randomBytes(100, 13));
+        File sourceLink = new File(source, "link.txt");
+        File targetLink = new File(destination, "link.txt");
+        Os.symlink(outside.getPath(), targetLink.getPath());
+        TransferJournal.Plan plan = new TransferJournal.Plan(true);
+        plan.links.add(pair(sourceLink, targetLink));
+        journal.writePlan(plan);
+
+        TransferRollback.run(journal);
+
+        assertEquals(outside.getPath(), Os.readlink(sourceLink.getPath()));
+        assertFalse(targetLink.exists());
+        assertTrue(outside.exists());
+    }
+
+    @Test
+    public void liveJournalsAreNotInterrupted() throws Exception {
+        journal.writePlan(new TransferJournal.Plan(false));
+        assertTrue(TransferJournal.listInterrupted(journals).isEmpty());
+
+        // Left behind by a previous process
+        File leftoverPlan = new File(journals, "leftover.plan");
+        TestFiles.write(leftoverPlan, TestFiles.read(new File(journals, journal.id + ".plan")));
+
+        List<TransferJournal> claimed = TransferJournal.claimInterrupted(journals);
+        assertEquals(1, claimed.size());
+        assertEquals("leftover", claimed.get(0).id);
+        // Claimed journals are not listed again until deleted
+        assertTrue(TransferJournal.claimInterrupted(journals).isEmpty());
+        assertEquals(Collections.emptyList(), TransferJournal.listInterrupted(journals));
+
+        claimed.get(0).delete();
+        assertFalse(leftoverPlan.exists());
+        assertTrue(TransferJournal.listInterrupted(journals).isEmpty());
+    }
+
+    private static TransferJournal.Job job(File source, File target, long size) {
+        return new TransferJournal.Job(source.getAbsolutePath(), target.getAbsolutePath(), size);
+    }
+
+    private static String[] pair(File source, File target) {
+        return new String[]{source.getAbsolutePath(), target.getAbsolutePath()};
+    }
+
+    private static void ignoreProgress(long bytesDone, long bytesTotal, int filesDone, int filesTotal, long bytesPerSecond) {
+    }
+}
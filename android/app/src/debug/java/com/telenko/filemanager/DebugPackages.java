@@ -0,0 +1,18 @@
+package com.telenko.filemanager;
+
+import com.facebook.react.ReactPackage;
+import com.telenko.filemanager.benchmark.BenchmarkPackage;
+
+import java.util.Collections;
+import java.util.List;
+
+// Packages of debug builds only, the release source set has an empty twin
+public class DebugPackages {
+
+    private DebugPackages() {
+    }
+
+    public static List<ReactPackage> get() {
+        return Collections.singletonList(new BenchmarkPackage());
+    }
+}
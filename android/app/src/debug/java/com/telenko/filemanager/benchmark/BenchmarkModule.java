@@ -0,0 +1,186 @@
+package com.telenko.filemanager.benchmark;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.telenko.filemanager.BuildConfig;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+// Debug builds only, see DebugPackages. Runs BenchmarkSuite and keeps one
+// report per app version in files/benchmarks, so a release can be compared
+// with the previous one on the same device.
+public class BenchmarkModule extends ReactContextBaseJavaModule {
+
+    private static final String PROGRESS_EVENT = "BenchmarkProgress";
+    private static final String CANCELLED_CODE = "Cancelled";
+    private static final String REPORT_EXTENSION = ".json";
+    private static final double REGRESSION_THRESHOLD = 0.1;
+
+    private final ReactApplicationContext reactContext;
+    private final ExecutorService executorService;
+    private final ExecutorService workersExecutor;
+    private final ForkJoinPool walkPool;
+    private final File reportsDirectory;
+    private volatile BenchmarkSuite running;
+
+    public BenchmarkModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.reactContext = reactContext;
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Same pool sizes as FileOperationsModule, so numbers match what the app does
+        this.executorService = Executors.newSingleThreadExecutor();
+        this.workersExecutor = Executors.newFixedThreadPool(Math.max(2, Math.min(4, cores)));
+        this.walkPool = new ForkJoinPool(cores);
+        this.reportsDirectory = new File(reactContext.getFilesDir(), "benchmarks");
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "Benchmark";
+    }
+
+    // Resolves the report as JSON, with "regressions" against the newest report of another version
+    @ReactMethod
+    public void run(ReadableMap options, Promise promise) {
+        BenchmarkSuite.Config config = new BenchmarkSuite.Config();
+        if (options.hasKey("iterations")) {
+            config.iterations = Math.max(1, options.getInt("iterations"));
+        }
+        if (options.hasKey("flatFiles")) {
+            config.flatFiles = options.getInt("flatFiles");
+        }
+        if (options.hasKey("mixedFiles")) {
+            config.mixedFiles = options.getInt("mixedFiles");
+        }
+
+        executorService.execute(() -> {
+            BenchmarkSuite suite = new BenchmarkSuite(reactContext, workersExecutor, walkPool, config,
+                    (name, index, total) -> {
+                        WritableMap params = Arguments.createMap();
+                        params.putString("name", name);
+                        params.putInt("index", index);
+                        params.putInt("total", total);
+                        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                                .emit(PROGRESS_EVENT, params);
+                    });
+            running = suite;
+            try {
+                JSONObject report = suite.run();
+                report.put("version", BuildConfig.VERSION_NAME);
+                File baselineFile = findBaseline();
+                if (baselineFile != null) {
+                    JSONObject baseline = readReport(baselineFile);
+                    report.put("baseline", baseline.optString("version"));
+                    report.put("regressions", BenchmarkSuite.compare(report, baseline, REGRESSION_THRESHOLD));
+                }
+                writeReport(report);
+                promise.resolve(report.toString());
+            } catch (CancellationException e) {
+                promise.reject(CANCELLED_CODE, e.getMessage());
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                running = null;
+            }
+        });
+    }
+
+    @ReactMethod
+    public void cancel() {
+        BenchmarkSuite suite = running;
+        if (suite != null) {
+            suite.cancel();
+        }
+    }
+
+    // Stored reports as JSON strings, oldest first
+    @ReactMethod
+    public void getReports(Promise promise) {
+        executorService.execute(() -> {
+            try {
+                WritableArray reports = Arguments.createArray();
+                File[] files = listReports();
+                for (File file : files) {
+                    reports.pushString(readReport(file).toString());
+                }
+                promise.resolve(reports);
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            }
+        });
+    }
+
+    private File[] listReports() {
+        File[] files = reportsDirectory.listFiles((dir, name) -> name.endsWith(REPORT_EXTENSION));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        return files;
+    }
+
+    private File findBaseline() {
+        File current = reportFile(BuildConfig.VERSION_NAME);
+        File[] files = listReports();
+        for (int i = files.length - 1; i >= 0; i--) {
+            if (!files[i].equals(current)) {
+                return files[i];
+            }
+        }
+        return null;
+    }
+
+    private File reportFile(String version) {
+        return new File(reportsDirectory, version.replaceAll("[^A-Za-z0-9._-]", "_") + REPORT_EXTENSION);
+    }
+
+    private static JSONObject readReport(File file) throws Exception {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (FileInputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+        }
+        return new JSONObject(content.toString("UTF-8"));
+    }
+
+    // One report per version, a rerun replaces it
+    private void writeReport(JSONObject report) throws Exception {
+        if (!reportsDirectory.isDirectory() && !reportsDirectory.mkdirs()) {
+            throw new IOException("Failed to create folder " + reportsDirectory.getAbsolutePath());
+        }
+        try (FileOutputStream output = new FileOutputStream(reportFile(BuildConfig.VERSION_NAME))) {
+            output.write(report.toString(2).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @ReactMethod
+    public void addListener(String eventName) { }
+
+    @ReactMethod
+    public void removeListeners(Integer count) { }
+}
@@ -0,0 +1,254 @@
+package com.telenko.filemanager.benchmark;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import com.telenko.filemanager.directory.DirectoryListing;
+import com.telenko.filemanager.operations.OperationControl;
+import com.telenko.filemanager.operations.SizeCalculator;
+import com.telenko.filemanager.operations.TransferEngine;
+import com.telenko.filemanager.storage.StorageRoots;
+import com.telenko.filemanager.storage.StorageVolumes;
+import com.telenko.filemanager.thumbnail.ThumbnailHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+// Measures the native file paths on synthetic trees generated under the app
+// cache on shared storage, the volume user files live on. Each case is warmed
+// up first, then timed per iteration, and the report keeps median/p90/min so
+// single GC pauses do not skew the result.
+public class BenchmarkSuite {
+
+    public interface Listener {
+        void onCase(String name, int index, int total);
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    public static class Config {
+        public int warmup = 2;
+        public int iterations = 7;
+        public int flatFiles = 100000;
+        public int flatDirectories = 1000;
+        public int deepDepth = 5;
+        public int deepFanout = 4;
+        public int mixedFiles = 300;
+        public int images = 20;
+        public int thumbnailWidth = 256;
+    }
+
+    private static final long SEED = 20240501L;
+    private static final int IMAGE_WIDTH = 4000;
+    private static final int IMAGE_HEIGHT = 3000;
+    private static final int MAX_VIDEOS = 5;
+    private static final String[] CASES = {
+            "storageRoots", "listFlat", "listDeep", "sizeDeep", "sizeMixed",
+            "copyMixed", "moveMixed", "imageThumbnail", "videoThumbnail",
+    };
+
+    private final Context context;
+    private final ExecutorService workers;
+    private final ForkJoinPool walkPool;
+    private final Config config;
+    private final Listener listener;
+    private final OperationControl control = new OperationControl();
+    private final JSONObject results = new JSONObject();
+    private int caseIndex = 0;
+    private int caseTotal = CASES.length;
+
+    public BenchmarkSuite(Context context, ExecutorService workers, ForkJoinPool walkPool, Config config,
+                          Listener listener) {
+        this.context = context;
+        this.workers = workers;
+        this.walkPool = walkPool;
+        this.config = config;
+        this.listener = listener;
+    }
+
+    public JSONObject run() throws Exception {
+        File cacheDir = context.getExternalCacheDir();
+        if (cacheDir == null) {
+            throw new IOException("Shared storage is not available");
+        }
+        File root = new File(cacheDir, "benchmark");
+        SyntheticTree.delete(root);
+        SyntheticTree tree = new SyntheticTree(SEED);
+        File flat = new File(root, "flat");
+        File deep = new File(root, "deep");
+        File mixed = new File(root, "mixed");
+        File images = new File(root, "images");
+        File target = new File(root, "target");
+        // Encoding synthetic video needs a MediaCodec pipeline, device videos are used instead
+        List<String> videos = deviceVideos();
+        if (videos.isEmpty()) {
+            caseTotal--;
+        }
+        try {
+            tree.flat(flat, config.flatFiles, config.flatDirectories);
+            tree.deep(deep, config.deepDepth, config.deepFanout, 4);
+            long mixedBytes = tree.mixed(mixed, config.mixedFiles);
+            tree.images(images, config.images, IMAGE_WIDTH, IMAGE_HEIGHT);
+
+            // What a refresh costs, StorageMetaReader itself only hands out the cached list
+            StorageVolumes storageVolumes = StorageVolumes.getInstance(context);
+            measure("storageRoots", 0, null, storageVolumes::readVolumes, null);
+            measure("listFlat", config.flatFiles + config.flatDirectories, null,
+                    () -> DirectoryListing.list(flat.getAbsolutePath(), false, DirectoryListing.SORT_NAME, true, 0, 0),
+                    null);
+            measure("listDeep", 0, null, () -> listRecursively(deep), null);
+            measure("sizeDeep", 0, null, () -> size(deep), null);
+            measure("sizeMixed", config.mixedFiles, null, () -> size(mixed), null);
+            measureBytes("copyMixed", mixedBytes, () -> target.mkdirs(),
+                    () -> transfer(mixed, target, false), () -> SyntheticTree.delete(target));
+            // Same volume, so this is the rename path; the tree is moved back untimed
+            File moved = new File(target, mixed.getName());
+            measure("moveMixed", config.mixedFiles, () -> target.mkdirs(),
+                    () -> transfer(mixed, target, true), () -> {
+                        if (!moved.renameTo(mixed)) {
+                            throw new IllegalStateException("Failed to restore benchmark tree");
+                        }
+                        SyntheticTree.delete(target);
+                    });
+            File[] imageFiles = images.listFiles();
+            measure("imageThumbnail", imageFiles.length, null, () -> {
+                for (File image : imageFiles) {
+                    ThumbnailHelper.createImageThumbnail(image.getAbsolutePath(), config.thumbnailWidth);
+                }
+            }, null);
+            if (!videos.isEmpty()) {
+                measure("videoThumbnail", videos.size(), null, () -> {
+                    for (String video : videos) {
+                        ThumbnailHelper.createVideoThumbnailJpeg(context, video, config.thumbnailWidth);
+                    }
+                }, null);
+            }
+        } finally {
+            SyntheticTree.delete(root);
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        report.put("sdk", Build.VERSION.SDK_INT);
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("results", results);
+        return report;
+    }
+
+    public void cancel() {
+        control.cancel();
+    }
+
+    private void measure(String name, long items, Step before, Step body, Step after) throws Exception {
+        measureCase(name, items, 0, before, body, after);
+    }
+
+    private void measureBytes(String name, long bytes, Step before, Step body, Step after) throws Exception {
+        measureCase(name, 0, bytes, before, body, after);
+    }
+
+    private void measureCase(String name, long items, long bytes, Step before, Step body, Step after)
+            throws Exception {
+        listener.onCase(name, caseIndex++, caseTotal);
+        long[] times = new long[config.iterations];
+        for (int i = 0; i < config.warmup + config.iterations; i++) {
+            control.checkpoint();
+            if (before != null) {
+                before.run();
+            }
+            long start = System.nanoTime();
+            body.run();
+            long elapsed = System.nanoTime() - start;
+            if (after != null) {
+                after.run();
+            }
+            if (i >= config.warmup) {
+                times[i - config.warmup] = elapsed;
+            }
+        }
+        Arrays.sort(times);
+        double median = times[times.length / 2] / 1e6;
+        JSONObject result = new JSONObject();
+        result.put("medianMs", median);
+        result.put("p90Ms", times[(int) Math.min(times.length - 1, Math.ceil(times.length * 0.9) - 1)] / 1e6);
+        result.put("minMs", times[0] / 1e6);
+        result.put("iterations", times.length);
+        if (items > 0 && median > 0) {
+            result.put("itemsPerSecond", items * 1000 / median);
+        }
+        if (bytes > 0 && median > 0) {
+            result.put("bytesPerSecond", bytes * 1000 / median);
+        }
+        results.put(name, result);
+    }
+
+    private void listRecursively(File directory) throws Exception {
+        for (DirectoryListing.Entry entry : DirectoryListing.list(directory.getAbsolutePath(), false,
+                DirectoryListing.SORT_NAME, true, 0, 0).entries) {
+            if (entry.isDirectory) {
+                listRecursively(new File(directory, entry.name));
+            }
+        }
+    }
+
+    private void size(File directory) {
+        new SizeCalculator(Collections.singletonList(directory.getAbsolutePath()), walkPool, control,
+                (bytes, files, directories) -> {
+                }).run();
+    }
+
+    private void transfer(File source, File destination, boolean move) throws Exception {
+        new TransferEngine(Collections.singletonList(source.getAbsolutePath()), destination.getAbsolutePath(), move,
+                false, null, StorageRoots.list(context), workers, control,
+                (bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond) -> {
+                }, null).run();
+    }
+
+    private List<String> deviceVideos() {
+        List<String> paths = new ArrayList<>();
+        String[] projection = {MediaStore.Video.Media.DATA};
+        try (Cursor cursor = context.getContentResolver().query(MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
+                projection, null, null, MediaStore.Video.Media.DATE_ADDED + " DESC")) {
+            while (cursor != null && cursor.moveToNext() && paths.size() < MAX_VIDEOS) {
+                String path = cursor.getString(0);
+                if (path != null && new File(path).canRead()) {
+                    paths.add(path);
+                }
+            }
+        } catch (SecurityException e) {
+            // No media permission, the case is left out of the report
+        }
+        return paths;
+    }
+
+    // Cases whose median got slower than the baseline by more than threshold (0.1 = 10%)
+    public static JSONObject compare(JSONObject report, JSONObject baseline, double threshold) throws JSONException {
+        JSONObject regressions = new JSONObject();
+        JSONObject current = report.getJSONObject("results");
+        JSONObject previous = baseline.getJSONObject("results");
+        for (String name : CASES) {
+            if (!current.has(name) || !previous.has(name)) {
+                continue;
+            }
+            double now = current.getJSONObject(name).getDouble("medianMs");
+            double before = previous.getJSONObject(name).getDouble("medianMs");
+            if (before > 0 && now > before * (1 + threshold)) {
+                regressions.put(name, now / before - 1);
+            }
+        }
+        return regressions;
+    }
+}
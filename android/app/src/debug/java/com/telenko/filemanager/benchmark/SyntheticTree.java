@@ -0,0 +1,121 @@
+package com.telenko.filemanager.benchmark;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+// Generates file trees of known shape for the benchmarks. Content is
+// pseudo-random with a fixed seed, so every run measures the same tree.
+public class SyntheticTree {
+
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final int JPEG_QUALITY = 90;
+
+    private final Random random;
+    private final byte[] buffer = new byte[WRITE_BUFFER_BYTES];
+
+    public SyntheticTree(long seed) {
+        this.random = new Random(seed);
+        random.nextBytes(buffer);
+    }
+
+    // Single folder with many empty entries, the worst case for listing and sorting
+    public void flat(File root, int files, int directories) throws IOException {
+        mkdirs(root);
+        for (int i = 0; i < directories; i++) {
+            mkdirs(new File(root, "dir_" + i));
+        }
+        for (int i = 0; i < files; i++) {
+            write(new File(root, "file_" + i + ".txt"), 0);
+        }
+    }
+
+    // depth levels of fanout folders each, with filesPerDirectory small files in every folder
+    public void deep(File root, int depth, int fanout, int filesPerDirectory) throws IOException {
+        mkdirs(root);
+        for (int i = 0; i < filesPerDirectory; i++) {
+            write(new File(root, "file_" + i + ".bin"), 4096);
+        }
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < fanout; i++) {
+            deep(new File(root, "level" + depth + "_" + i), depth - 1, fanout, filesPerDirectory);
+        }
+    }
+
+    // Sizes roughly as found on phones: mostly small files, a few large ones
+    public long mixed(File root, int files) throws IOException {
+        mkdirs(root);
+        long total = 0;
+        for (int i = 0; i < files; i++) {
+            long size;
+            int bucket = random.nextInt(100);
+            if (bucket < 70) {
+                size = random.nextInt(64 * 1024);
+            } else if (bucket < 95) {
+                size = 64 * 1024 + random.nextInt(4 * 1024 * 1024);
+            } else {
+                size = 16L * 1024 * 1024 + random.nextInt(48 * 1024 * 1024);
+            }
+            File directory = new File(root, "group_" + i % 16);
+            mkdirs(directory);
+            write(new File(directory, "item_" + i + ".bin"), size);
+            total += size;
+        }
+        return total;
+    }
+
+    // Noisy gradients so the encoder does real work, flat colors compress to nothing
+    public void images(File root, int count, int width, int height) throws IOException {
+        mkdirs(root);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        for (int i = 0; i < count; i++) {
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            canvas.drawColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            for (int shape = 0; shape < 200; shape++) {
+                paint.setColor(Color.argb(160, random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+                canvas.drawCircle(random.nextInt(width), random.nextInt(height), 10 + random.nextInt(width / 4), paint);
+            }
+            try (FileOutputStream output = new FileOutputStream(new File(root, "image_" + i + ".jpg"))) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, output);
+            } finally {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    private void write(File file, long size) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            long remaining = size;
+            while (remaining > 0) {
+                int length = (int) Math.min(buffer.length, remaining);
+                output.write(buffer, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    private static void mkdirs(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create folder " + directory.getAbsolutePath());
+        }
+    }
+
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
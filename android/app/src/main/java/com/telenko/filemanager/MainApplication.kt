@@ -14,6 +14,11 @@ import com.telenko.filemanager.viewer.LocalFileViewerPackage
 import com.telenko.filemanager.thumbnail.ThumbnailPackage
 import com.telenko.filemanager.storage.StorageMetaReaderPackage
 import com.telenko.filemanager.picker.PickerActivityPackage
+import com.telenko.filemanager.directory.DirectoryListerPackage
+import com.telenko.filemanager.operations.FileOperationsPackage
+import com.telenko.filemanager.search.SearchIndexPackage
+import com.telenko.filemanager.archive.ArchivePackage
+import com.telenko.filemanager.metrics.MetricsPackage
  
 class MainApplication : Application(), ReactApplication {
  
@@ -28,6 +33,12 @@ class MainApplication : Application(), ReactApplication {
               add(ThumbnailPackage());
               add(StorageMetaReaderPackage());
               add(PickerActivityPackage());
+              add(DirectoryListerPackage());
+              add(FileOperationsPackage());
+              add(SearchIndexPackage());
+              add(ArchivePackage());
+              add(MetricsPackage());
+              addAll(DebugPackages.get());
             }
  
         override fun getJSMainModuleName(): String = "index"
@@ -0,0 +1,42 @@
+package com.telenko.filemanager.archive;
+
+public class ArchiveEntry {
+    // Path inside the archive, without leading "./" or "/" and trailing "/"
+    public final String path;
+    public final String name;
+    // -1 when the archive does not store it
+    public final long size;
+    public final long mtime;
+    public final boolean isDirectory;
+
+    ArchiveEntry(String path, long size, long mtime, boolean isDirectory) {
+        this.path = path;
+        this.name = path.substring(path.lastIndexOf('/') + 1);
+        this.size = size;
+        this.mtime = mtime;
+        this.isDirectory = isDirectory;
+    }
+
+    static String normalize(String path) {
+        int start = 0;
+        int end = path.length();
+        while (true) {
+            if (path.startsWith("./", start)) {
+                start += 2;
+            } else if (start < end && path.charAt(start) == '/') {
+                start++;
+            } else {
+                break;
+            }
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
+    static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+}
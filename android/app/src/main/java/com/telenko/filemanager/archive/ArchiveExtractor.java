@@ -0,0 +1,221 @@
+package com.telenko.filemanager.archive;
+
+import com.telenko.filemanager.media.MediaStoreSync;
+import com.telenko.filemanager.operations.OperationControl;
+import com.telenko.filemanager.operations.TransferEngine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Extracts selected entries of an archive into a folder in one pass over the
+// archive, streaming every entry through a single reused buffer. A selected
+// folder is extracted with its contents, under its own name. Names taken at
+// the destination are handled like TransferEngine does: an error, or with
+// resolveConflicts the item goes under a numbered name. Nothing is replaced.
+public class ArchiveExtractor {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private final String archivePath;
+    private final List<String> entryPaths;
+    private final String destination;
+    private final boolean resolveConflicts;
+    private final String conflictTemplate;
+    private final OperationControl control;
+    private final TransferEngine.Listener listener;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    // Entry path -> file it is extracted to
+    private final Map<String, File> targets = new HashMap<>();
+    // Folders are only created once every entry passed the checks
+    private final List<File> folders = new ArrayList<>();
+    private final Set<String> reservedTargets = new HashSet<>();
+    private long bytesTotal = 0;
+    private long bytesDone = 0;
+    private int filesDone = 0;
+    private long lastReportAt = 0;
+    private long lastReportBytes = 0;
+
+    public ArchiveExtractor(String archivePath, List<String> entryPaths, String destination, boolean resolveConflicts,
+                            String conflictTemplate, OperationControl control, TransferEngine.Listener listener) {
+        this.archivePath = archivePath;
+        this.entryPaths = entryPaths;
+        this.destination = destination;
+        this.resolveConflicts = resolveConflicts;
+        this.conflictTemplate = conflictTemplate;
+        this.control = control;
+        this.listener = listener;
+    }
+
+    public void run() throws IOException {
+        ArchiveIndex index = ArchiveIndex.get(archivePath);
+        plan(index);
+        lastReportAt = System.currentTimeMillis();
+        reportProgress(true);
+        if (!targets.isEmpty()) {
+            switch (index.format) {
+                case ZIP:
+                    extractZip(index.file);
+                    break;
+                case TAR:
+                case TAR_GZ:
+                    extractTar(index);
+                    break;
+                case GZ:
+                    for (File target : targets.values()) {
+                        extractEntry(new GZIPInputStream(new FileInputStream(index.file)), target, index.file.lastModified());
+                    }
+                    break;
+            }
+        }
+        reportProgress(true);
+    }
+
+    // Extracted files for MediaStore, those not written yet are skipped by the scan
+    public void syncMediaStore(MediaStoreSync sync) {
+        List<String> paths = new ArrayList<>();
+        for (File target : targets.values()) {
+            paths.add(target.getAbsolutePath());
+        }
+        sync.scan(paths);
+    }
+
+    private void plan(ArchiveIndex index) throws IOException {
+        File destinationFile = new File(destination);
+        if (!destinationFile.isDirectory()) {
+            throw new IOException("Destination folder is not valid");
+        }
+        String destinationCanonical = destinationFile.getCanonicalPath() + File.separator;
+        // Whole archive is its top level entries, each one checked for conflicts like a selected one
+        Set<String> roots = new LinkedHashSet<>();
+        if (entryPaths.isEmpty()) {
+            for (ArchiveEntry entry : index.list("")) {
+                roots.add(entry.path);
+            }
+        } else {
+            for (String path : entryPaths) {
+                roots.add(ArchiveEntry.normalize(path));
+            }
+        }
+        for (String root : roots) {
+            List<ArchiveEntry> selected = index.select(Collections.singletonList(root));
+            if (selected.isEmpty()) {
+                continue;
+            }
+            String parent = ArchiveEntry.parentOf(root);
+            File rootTarget = new File(destinationFile, parent.isEmpty() ? root : root.substring(parent.length() + 1));
+            checkInside(rootTarget, destinationCanonical, root);
+            if (TransferEngine.isTaken(rootTarget, reservedTargets)) {
+                if (!resolveConflicts) {
+                    throw new IOException("Destination already exists: " + rootTarget.getAbsolutePath());
+                }
+                rootTarget = TransferEngine.resolveConflict(rootTarget, conflictTemplate, reservedTargets);
+            }
+            reservedTargets.add(rootTarget.getAbsolutePath());
+            for (ArchiveEntry entry : selected) {
+                control.checkpoint();
+                File target = entry.path.equals(root) ? rootTarget : new File(rootTarget, entry.path.substring(root.length() + 1));
+                checkInside(target, destinationCanonical, entry.path);
+                if (entry.isDirectory) {
+                    folders.add(target);
+                } else if (targets.put(entry.path, target) == null) {
+                    bytesTotal += Math.max(entry.size, 0);
+                }
+            }
+        }
+        for (File folder : folders) {
+            if (!folder.mkdirs() && !folder.isDirectory()) {
+                throw new IOException("Failed to create folder " + folder.getAbsolutePath());
+            }
+        }
+    }
+
+    // Entries like "../../x" must not escape the destination
+    private static void checkInside(File target, String destinationCanonical, String entryPath) throws IOException {
+        if (!target.getCanonicalPath().startsWith(destinationCanonical)) {
+            throw new IOException("Archive entry is outside of destination: " + entryPath);
+        }
+    }
+
+    private void extractZip(File file) throws IOException {
+        try (ZipFile zip = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements() && filesDone < targets.size()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                File target = zipEntry.isDirectory() ? null : targets.get(ArchiveEntry.normalize(zipEntry.getName()));
+                if (target != null) {
+                    extractEntry(zip.getInputStream(zipEntry), target, zipEntry.getTime());
+                }
+            }
+        }
+    }
+
+    // Stops reading once every selected entry is out
+    private void extractTar(ArchiveIndex index) throws IOException {
+        try (InputStream input = index.openTarStream()) {
+            TarReader reader = new TarReader(input);
+            ArchiveEntry entry;
+            while (filesDone < targets.size() && (entry = reader.next()) != null) {
+                control.checkpoint();
+                File target = entry.isDirectory ? null : targets.get(entry.path);
+                if (target != null) {
+                    extractEntry(reader.data(), target, entry.mtime);
+                }
+            }
+        }
+    }
+
+    private void extractEntry(InputStream input, File target, long mtime) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create folder " + parent.getAbsolutePath());
+        }
+        try (InputStream entryInput = input;
+             FileOutputStream output = new FileOutputStream(target)) {
+            int read;
+            while ((read = entryInput.read(buffer)) > 0) {
+                control.checkpoint();
+                output.write(buffer, 0, read);
+                bytesDone += read;
+                reportProgress(false);
+            }
+        } catch (IOException | CancellationException e) {
+            target.delete();
+            throw e;
+        }
+        if (mtime > 0) {
+            target.setLastModified(mtime);
+        }
+        filesDone++;
+    }
+
+    private void reportProgress(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastReportAt < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        long elapsed = Math.max(now - lastReportAt, 1);
+        long bytesPerSecond = (bytesDone - lastReportBytes) * 1000 / elapsed;
+        lastReportAt = now;
+        lastReportBytes = bytesDone;
+        // Sizes unknown to the archive make the total an estimate
+        listener.onProgress(bytesDone, Math.max(bytesTotal, bytesDone), filesDone, targets.size(), bytesPerSecond);
+    }
+}
@@ -0,0 +1,225 @@
+package com.telenko.filemanager.archive;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Entries of an archive grouped by folder, built without extracting anything:
+// zip from its central directory, tar by streaming headers past the contents.
+// Last few indexes are cached, so browsing folders of one archive is instant.
+public class ArchiveIndex {
+
+    public enum Format { ZIP, TAR, TAR_GZ, GZ }
+
+    private static final int CACHE_SIZE = 4;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<String, ArchiveIndex> cache = new LinkedHashMap<String, ArchiveIndex>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ArchiveIndex> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public final File file;
+    public final Format format;
+    private final long length;
+    private final long lastModified;
+    private final List<ArchiveEntry> entries = new ArrayList<>();
+    private final Map<String, List<ArchiveEntry>> children = new HashMap<>();
+    private final Map<String, ArchiveEntry> byPath = new HashMap<>();
+
+    private ArchiveIndex(File file, Format format) {
+        this.file = file;
+        this.format = format;
+        this.length = file.length();
+        this.lastModified = file.lastModified();
+    }
+
+    public static ArchiveIndex get(String path) throws IOException {
+        File file = new File(path);
+        synchronized (cache) {
+            ArchiveIndex index = cache.get(path);
+            if (index != null && index.length == file.length() && index.lastModified == file.lastModified()) {
+                return index;
+            }
+        }
+        // Built outside the lock, a large tar.gz must not block browsing other archives
+        ArchiveIndex index = build(file);
+        synchronized (cache) {
+            cache.put(path, index);
+        }
+        return index;
+    }
+
+    public static Format detectFormat(File file) throws IOException {
+        byte[] head = new byte[512];
+        int read = readFully(new FileInputStream(file), head);
+        if (read >= 4 && head[0] == 'P' && head[1] == 'K' && (head[2] == 3 || head[2] == 5)) {
+            return Format.ZIP;
+        }
+        if (read >= 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b) {
+            byte[] inner = new byte[512];
+            int innerRead = readFully(new GZIPInputStream(new FileInputStream(file)), inner);
+            boolean tarName = file.getName().matches("(?i).*\\.(tar\\.gz|tgz)$");
+            return innerRead == inner.length && (TarReader.isUstar(inner) || tarName) ? Format.TAR_GZ : Format.GZ;
+        }
+        if (read == head.length && (TarReader.isUstar(head) || file.getName().toLowerCase().endsWith(".tar"))) {
+            return Format.TAR;
+        }
+        throw new IOException("Unsupported archive format: " + file.getName());
+    }
+
+    public List<ArchiveEntry> getEntries() {
+        return entries;
+    }
+
+    // Direct children of a folder inside the archive, "" is the archive root
+    public List<ArchiveEntry> list(String directory) {
+        List<ArchiveEntry> result = children.get(ArchiveEntry.normalize(directory));
+        return result != null ? result : Collections.emptyList();
+    }
+
+    // Entries with the given paths together with everything inside of them,
+    // walked through the folder map so only the selected subtrees are visited
+    public List<ArchiveEntry> select(List<String> paths) {
+        if (paths.isEmpty()) {
+            return entries;
+        }
+        List<ArchiveEntry> result = new ArrayList<>();
+        ArrayDeque<ArchiveEntry> pending = new ArrayDeque<>();
+        for (String path : paths) {
+            ArchiveEntry selected = byPath.get(ArchiveEntry.normalize(path));
+            if (selected != null) {
+                pending.push(selected);
+            }
+            while (!pending.isEmpty()) {
+                ArchiveEntry entry = pending.pop();
+                result.add(entry);
+                if (entry.isDirectory) {
+                    pending.addAll(list(entry.path));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Opens the tar stream of TAR and TAR_GZ archives, buffered for header reads
+    InputStream openTarStream() throws IOException {
+        InputStream input = new FileInputStream(file);
+        if (format == Format.TAR_GZ) {
+            return new GZIPInputStream(input, STREAM_BUFFER_SIZE);
+        }
+        // Not buffered, so skipping contents stays a seek of FileInputStream
+        return input;
+    }
+
+    private static ArchiveIndex build(File file) throws IOException {
+        ArchiveIndex index = new ArchiveIndex(file, detectFormat(file));
+        switch (index.format) {
+            case ZIP:
+                try (ZipFile zip = new ZipFile(file)) {
+                    Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+                    while (zipEntries.hasMoreElements()) {
+                        ZipEntry zipEntry = zipEntries.nextElement();
+                        String path = ArchiveEntry.normalize(zipEntry.getName());
+                        if (!path.isEmpty()) {
+                            index.add(new ArchiveEntry(path, zipEntry.isDirectory() ? 0 : zipEntry.getSize(),
+                                    zipEntry.getTime(), zipEntry.isDirectory()));
+                        }
+                    }
+                }
+                break;
+            case TAR:
+            case TAR_GZ:
+                try (InputStream input = index.openTarStream()) {
+                    TarReader reader = new TarReader(input);
+                    ArchiveEntry entry;
+                    while ((entry = reader.next()) != null) {
+                        index.add(entry);
+                    }
+                }
+                break;
+            case GZ:
+                index.add(new ArchiveEntry(gzipEntryName(file), gzipSize(file), file.lastModified(), false));
+                break;
+        }
+        for (List<ArchiveEntry> list : index.children.values()) {
+            Collections.sort(list, (a, b) -> a.isDirectory != b.isDirectory
+                    ? (a.isDirectory ? -1 : 1)
+                    : a.name.compareToIgnoreCase(b.name));
+        }
+        return index;
+    }
+
+    // Archives often omit folder entries, those are added for every parent path
+    private void add(ArchiveEntry entry) {
+        if (entry.isDirectory && children.containsKey(entry.path)) {
+            // Already added as implicit parent, or listed twice
+            return;
+        }
+        String parent = ArchiveEntry.parentOf(entry.path);
+        if (!parent.isEmpty() && !children.containsKey(parent)) {
+            add(new ArchiveEntry(parent, 0, entry.mtime, true));
+        }
+        if (entry.isDirectory) {
+            children.put(entry.path, new ArrayList<>());
+        }
+        List<ArchiveEntry> siblings = children.get(parent);
+        if (siblings == null) {
+            siblings = new ArrayList<>();
+            children.put(parent, siblings);
+        }
+        siblings.add(entry);
+        entries.add(entry);
+        if (!byPath.containsKey(entry.path)) {
+            byPath.put(entry.path, entry);
+        }
+    }
+
+    static String gzipEntryName(File file) {
+        String name = file.getName();
+        return name.toLowerCase().endsWith(".gz") && name.length() > 3 ? name.substring(0, name.length() - 3) : name;
+    }
+
+    // gzip trailer keeps the uncompressed size modulo 2^32
+    private static long gzipSize(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            if (input.length() < 4) {
+                return -1;
+            }
+            input.seek(input.length() - 4);
+            byte[] trailer = new byte[4];
+            input.readFully(trailer);
+            return (trailer[0] & 0xffL) | (trailer[1] & 0xffL) << 8 | (trailer[2] & 0xffL) << 16 | (trailer[3] & 0xffL) << 24;
+        }
+    }
+
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        try (InputStream stream = new BufferedInputStream(input)) {
+            int read = 0;
+            while (read < buffer.length) {
+                int count = stream.read(buffer, read, buffer.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return read;
+        }
+    }
+}
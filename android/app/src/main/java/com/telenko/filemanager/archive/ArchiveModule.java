@@ -0,0 +1,73 @@
+package com.telenko.filemanager.archive;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Browsing inside zip/tar/tar.gz/gz archives. Extraction runs as a file
+// operation, see FileOperationsModule.extractArchive.
+public class ArchiveModule extends ReactContextBaseJavaModule {
+
+    private static final String OFFSET = "offset";
+    private static final String LIMIT = "limit";
+
+    private final ExecutorService executorService;
+
+    public ArchiveModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.executorService = Executors.newFixedThreadPool(2);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "Archive";
+    }
+
+    // One page of a folder inside the archive, "" is the archive root.
+    // The archive is indexed once, following pages and folders come from the cached index.
+    @ReactMethod
+    public void list(String archivePath, String directory, ReadableMap options, Promise promise) {
+        int offset = options.hasKey(OFFSET) ? options.getInt(OFFSET) : 0;
+        int limit = options.hasKey(LIMIT) ? options.getInt(LIMIT) : 0;
+
+        executorService.execute(() -> {
+            try {
+                List<ArchiveEntry> entries = ArchiveIndex.get(archivePath).list(directory);
+                int from = Math.min(Math.max(offset, 0), entries.size());
+                int to = limit > 0 ? Math.min(from + limit, entries.size()) : entries.size();
+                WritableArray paths = new WritableNativeArray();
+                WritableArray sizes = new WritableNativeArray();
+                WritableArray mtimes = new WritableNativeArray();
+                WritableArray directories = new WritableNativeArray();
+                for (ArchiveEntry entry : entries.subList(from, to)) {
+                    paths.pushString(entry.path);
+                    sizes.pushDouble((double) entry.size);
+                    mtimes.pushDouble((double) entry.mtime);
+                    directories.pushBoolean(entry.isDirectory);
+                }
+                WritableMap result = new WritableNativeMap();
+                result.putArray("paths", paths);
+                result.putArray("sizes", sizes);
+                result.putArray("mtimes", mtimes);
+                result.putArray("directories", directories);
+                result.putInt("total", entries.size());
+                promise.resolve(result);
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,234 @@
+package com.telenko.filemanager.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Streams tar headers one by one. Data of entries nobody reads is skipped,
+// which for a plain tar file is a seek, so listing never touches the contents.
+// Understands ustar prefixes, GNU long names and pax path/size/mtime records.
+class TarReader {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final InputStream input;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    // Data bytes of the current entry not read yet, and the padding after them
+    private long remaining = 0;
+    private long padding = 0;
+
+    TarReader(InputStream input) {
+        this.input = input;
+    }
+
+    // Next file or folder, null at the end of the archive. Links and special files are skipped.
+    ArchiveEntry next() throws IOException {
+        skipFully(remaining + padding);
+        remaining = 0;
+        padding = 0;
+        String longName = null;
+        String paxPath = null;
+        long paxSize = -1;
+        long paxMtime = -1;
+        while (true) {
+            if (!readHeader()) {
+                return null;
+            }
+            char type = (char) header[156];
+            long size = parseNumber(124, 12);
+            if (type == 'L') {
+                longName = readString(size);
+                continue;
+            }
+            if (type == 'x') {
+                String[] records = readString(size).split("\n");
+                for (String record : records) {
+                    // "<length> <key>=<value>"
+                    int space = record.indexOf(' ');
+                    int equals = record.indexOf('=', space + 1);
+                    if (space < 0 || equals < 0) {
+                        continue;
+                    }
+                    String key = record.substring(space + 1, equals);
+                    String value = record.substring(equals + 1);
+                    try {
+                        if ("path".equals(key)) {
+                            paxPath = value;
+                        } else if ("size".equals(key)) {
+                            paxSize = Long.parseLong(value);
+                        } else if ("mtime".equals(key)) {
+                            paxMtime = (long) (Double.parseDouble(value) * 1000);
+                        }
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                continue;
+            }
+            if (paxSize >= 0) {
+                size = paxSize;
+            }
+            remaining = size;
+            padding = paddingOf(size);
+            if (type == 'g' || (type != '0' && type != '\0' && type != '7' && type != '5')) {
+                // Global pax headers, links, devices and fifos carry nothing to browse
+                skipFully(remaining + padding);
+                remaining = 0;
+                padding = 0;
+                longName = null;
+                paxPath = null;
+                paxSize = -1;
+                paxMtime = -1;
+                continue;
+            }
+
+            String name;
+            if (paxPath != null) {
+                name = paxPath;
+            } else if (longName != null) {
+                name = longName;
+            } else {
+                name = parseString(0, 100);
+                // Old GNU headers keep other fields where POSIX has the prefix
+                String prefix = isUstar(header) && header[262] == 0 ? parseString(345, 155) : "";
+                if (!prefix.isEmpty()) {
+                    name = prefix + "/" + name;
+                }
+            }
+            boolean directory = type == '5' || name.endsWith("/");
+            long mtime = paxMtime >= 0 ? paxMtime : parseNumber(136, 12) * 1000;
+            String path = ArchiveEntry.normalize(name);
+            if (path.isEmpty()) {
+                // "./" entry of the archive root
+                skipFully(remaining + padding);
+                remaining = 0;
+                padding = 0;
+                continue;
+            }
+            return new ArchiveEntry(path, directory ? 0 : size, mtime, directory);
+        }
+    }
+
+    // Data of the entry returned by the last next() call
+    InputStream data() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = input.read();
+                if (b < 0) {
+                    throw new EOFException("Archive is truncated");
+                }
+                remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = input.read(buffer, offset, (int) Math.min(length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Archive is truncated");
+                }
+                remaining -= read;
+                return read;
+            }
+        };
+    }
+
+    static boolean isUstar(byte[] block) {
+        return block.length >= 262 && block[257] == 'u' && block[258] == 's' && block[259] == 't'
+                && block[260] == 'a' && block[261] == 'r';
+    }
+
+    // False on the end of archive marker or a clean end of stream
+    private boolean readHeader() throws IOException {
+        int read = 0;
+        while (read < BLOCK_SIZE) {
+            int count = input.read(header, read, BLOCK_SIZE - read);
+            if (count < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("Archive is truncated");
+            }
+            read += count;
+        }
+        for (byte b : header) {
+            if (b != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String readString(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Archive header is too large");
+        }
+        byte[] bytes = new byte[(int) size];
+        int read = 0;
+        while (read < bytes.length) {
+            int count = input.read(bytes, read, bytes.length - read);
+            if (count < 0) {
+                throw new EOFException("Archive is truncated");
+            }
+            read += count;
+        }
+        skipFully(paddingOf(size));
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == 0) {
+            end--;
+        }
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private String parseString(int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    // Octal, or big-endian binary when the high bit of the first byte is set (GNU extension for large files)
+    private long parseNumber(int offset, int length) {
+        long value = 0;
+        if ((header[offset] & 0x80) != 0) {
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        int i = offset;
+        while (i < offset + length && (header[i] == ' ' || header[i] == 0)) {
+            i++;
+        }
+        for (; i < offset + length && header[i] >= '0' && header[i] <= '7'; i++) {
+            value = (value << 3) | (header[i] - '0');
+        }
+        return value;
+    }
+
+    private void skipFully(long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException("Archive is truncated");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static long paddingOf(long size) {
+        long rest = size % BLOCK_SIZE;
+        return rest == 0 ? 0 : BLOCK_SIZE - rest;
+    }
+}
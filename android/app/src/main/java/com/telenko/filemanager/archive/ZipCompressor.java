@@ -0,0 +1,458 @@
+package com.telenko.filemanager.archive;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import com.telenko.filemanager.operations.OperationControl;
+import com.telenko.filemanager.operations.TransferEngine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Zips files and folders the way pigz compresses: every file is cut into
+// chunks which are deflated independently on the pool, primed with the last
+// 32KB of the previous chunk, and joined into one deflate stream by the single
+// writer in order. Already compressed media is stored as is. Output goes
+// straight to the target file, sizes are patched into local headers afterwards.
+public class ZipCompressor {
+
+    private static final int CHUNK_SIZE = 512 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    // Deflate may grow incompressible data slightly, such files get zip64 headers up front
+    private static final long ZIP64_SIZE_MARGIN = 1024 * 1024;
+
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif",
+            "mp4", "m4v", "mkv", "webm", "mov", "3gp", "avi",
+            "mp3", "m4a", "aac", "ogg", "opus", "flac",
+            "zip", "gz", "tgz", "7z", "rar", "xz", "bz2", "apk", "jar"));
+
+    private static class Item {
+        final File file;
+        final String name;
+        final boolean directory;
+        final long size;
+        final boolean stored;
+        final boolean zip64;
+        long headerOffset;
+        // Actual sizes, the file may change while being compressed
+        long uncompressedSize;
+        long compressedSize;
+        long crc;
+
+        Item(File file, String name, boolean directory, long size) {
+            this.file = file;
+            this.name = directory ? name + "/" : name;
+            this.directory = directory;
+            this.size = size;
+            this.stored = directory || size == 0 || STORED_EXTENSIONS.contains(extensionOf(name));
+            this.zip64 = size >= ZIP64_LIMIT - ZIP64_SIZE_MARGIN;
+        }
+    }
+
+    private static class Chunk {
+        final Item item;
+        final boolean first;
+        final boolean last;
+        final Future<byte[][]> result;
+
+        Chunk(Item item, boolean first, boolean last, Future<byte[][]> result) {
+            this.item = item;
+            this.first = first;
+            this.last = last;
+            this.result = result;
+        }
+    }
+
+    private final List<String> sources;
+    private final String destination;
+    private final int level;
+    private final ExecutorService pool;
+    private final int window;
+    private final OperationControl control;
+    private final TransferEngine.Listener listener;
+
+    private final List<Item> items = new ArrayList<>();
+    private final ByteBuffer header = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private FileChannel output;
+    private long position = 0;
+    private long bytesTotal = 0;
+    private long bytesDone = 0;
+    private int filesTotal = 0;
+    private int filesDone = 0;
+    private long lastReportAt = 0;
+    private long lastReportBytes = 0;
+
+    public ZipCompressor(List<String> sources, String destination, int level, ExecutorService pool, int threads,
+                         OperationControl control, TransferEngine.Listener listener) {
+        this.sources = sources;
+        this.destination = destination;
+        this.level = level;
+        this.pool = pool;
+        // Enough chunks in flight to keep every thread busy while the writer waits on the oldest one
+        this.window = threads * 2;
+        this.control = control;
+        this.listener = listener;
+    }
+
+    public void run() throws Exception {
+        File target = new File(destination);
+        if (target.exists()) {
+            throw new IOException("Destination already exists: " + destination);
+        }
+        for (String source : sources) {
+            File file = new File(source);
+            // A selected link is followed, links inside of folders are not
+            StructStat stat;
+            try {
+                stat = Os.stat(source);
+            } catch (ErrnoException e) {
+                throw new IOException("Source does not exist: " + source);
+            }
+            plan(file, file.getName(), stat);
+        }
+        lastReportAt = System.currentTimeMillis();
+        reportProgress(true);
+
+        try (FileOutputStream outputStream = new FileOutputStream(target)) {
+            output = outputStream.getChannel();
+            writeEntries();
+            writeCentralDirectory();
+        } catch (Exception e) {
+            target.delete();
+            throw e;
+        }
+        reportProgress(true);
+    }
+
+    // Links and special files such as pipes are skipped, only folders and regular files go in
+    private void plan(File file, String name, StructStat stat) {
+        control.checkpoint();
+        if (OsConstants.S_ISDIR(stat.st_mode)) {
+            items.add(new Item(file, name, true, 0));
+            String[] children = file.list();
+            if (children != null) {
+                for (String childName : children) {
+                    File child = new File(file, childName);
+                    StructStat childStat = lstat(child);
+                    if (childStat != null && !OsConstants.S_ISLNK(childStat.st_mode)) {
+                        plan(child, name + "/" + childName, childStat);
+                    }
+                }
+            }
+            return;
+        }
+        if (!OsConstants.S_ISREG(stat.st_mode)) {
+            return;
+        }
+        long size = stat.st_size;
+        items.add(new Item(file, name, false, size));
+        bytesTotal += size;
+        filesTotal++;
+    }
+
+    private void writeEntries() throws Exception {
+        ArrayDeque<Chunk> inFlight = new ArrayDeque<>();
+        int itemIndex = 0;
+        long nextOffset = 0;
+        try {
+            while (itemIndex < items.size() || !inFlight.isEmpty()) {
+                // Keep submitting chunks ahead of the writer, in archive order
+                while (itemIndex < items.size() && inFlight.size() < window) {
+                    control.checkpoint();
+                    Item item = items.get(itemIndex);
+                    long offset = nextOffset;
+                    long length = Math.min(CHUNK_SIZE, item.size - offset);
+                    boolean last = offset + length >= item.size;
+                    Future<byte[][]> result = pool.submit(() -> processChunk(item, offset, (int) length, last));
+                    inFlight.add(new Chunk(item, offset == 0, last, result));
+                    if (last) {
+                        itemIndex++;
+                        nextOffset = 0;
+                    } else {
+                        nextOffset += length;
+                    }
+                }
+                Chunk chunk = inFlight.poll();
+                byte[][] result = chunk.result.get();
+                writeChunk(chunk, result[0], result[1]);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            for (Chunk chunk : inFlight) {
+                chunk.result.cancel(false);
+            }
+        }
+    }
+
+    // Raw bytes of the chunk and their deflated form, the latter is null for stored items
+    private byte[][] processChunk(Item item, long offset, int length, boolean last) throws IOException {
+        control.checkpoint();
+        if (item.directory || length == 0) {
+            return new byte[][]{new byte[0], null};
+        }
+        int dictionaryLength = item.stored ? 0 : (int) Math.min(DICTIONARY_SIZE, offset);
+        byte[] data = new byte[dictionaryLength + length];
+        int read = 0;
+        try (FileInputStream inputStream = new FileInputStream(item.file)) {
+            FileChannel input = inputStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                int count = input.read(buffer, offset - dictionaryLength + buffer.position());
+                if (count < 0) {
+                    // File got truncated while compressing
+                    break;
+                }
+            }
+            read = buffer.position() - dictionaryLength;
+        }
+        byte[] raw = Arrays.copyOfRange(data, dictionaryLength, dictionaryLength + Math.max(read, 0));
+        if (item.stored) {
+            return new byte[][]{raw, null};
+        }
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionaryLength > 0) {
+                deflater.setDictionary(data, 0, dictionaryLength);
+            }
+            deflater.setInput(raw);
+            if (last) {
+                deflater.finish();
+            }
+            byte[] compressed = new byte[raw.length + raw.length / 1000 + 64];
+            int size = 0;
+            while (true) {
+                if (size == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                // Sync flush ends the chunk on a byte boundary, so chunks can be concatenated
+                int count = deflater.deflate(compressed, size, compressed.length - size,
+                        last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                size += count;
+                if (last ? deflater.finished() : size < compressed.length) {
+                    break;
+                }
+            }
+            return new byte[][]{raw, Arrays.copyOf(compressed, size)};
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeChunk(Chunk chunk, byte[] raw, byte[] compressed) throws IOException {
+        Item item = chunk.item;
+        if (chunk.first) {
+            item.headerOffset = position;
+            writeLocalHeader(item);
+            crc.reset();
+        }
+        crc.update(raw, 0, raw.length);
+        byte[] data = compressed != null ? compressed : raw;
+        writeFully(ByteBuffer.wrap(data));
+        item.uncompressedSize += raw.length;
+        item.compressedSize += data.length;
+        bytesDone += raw.length;
+        if (chunk.last) {
+            item.crc = crc.getValue();
+            patchLocalHeader(item);
+            if (!item.directory) {
+                filesDone++;
+            }
+        }
+        reportProgress(false);
+    }
+
+    private void writeLocalHeader(Item item) throws IOException {
+        byte[] name = item.name.getBytes(StandardCharsets.UTF_8);
+        header.clear();
+        header.putInt(0x04034b50);
+        header.putShort((short) (item.zip64 ? 45 : 20));
+        // UTF-8 names
+        header.putShort((short) 0x0800);
+        header.putShort((short) (item.stored ? 0 : 8));
+        putDosTime(item.file.lastModified());
+        // CRC and sizes are patched once the data is written
+        header.putInt(0);
+        header.putInt(item.zip64 ? -1 : 0);
+        header.putInt(item.zip64 ? -1 : 0);
+        header.putShort((short) name.length);
+        header.putShort((short) (item.zip64 ? 20 : 0));
+        header.put(name);
+        if (item.zip64) {
+            header.putShort((short) 0x0001);
+            header.putShort((short) 16);
+            header.putLong(0);
+            header.putLong(0);
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    private void patchLocalHeader(Item item) throws IOException {
+        if (!item.zip64 && item.compressedSize >= ZIP64_LIMIT) {
+            throw new IOException("File is too large to compress: " + item.file.getAbsolutePath());
+        }
+        ByteBuffer patch = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        patch.putInt((int) item.crc);
+        if (item.zip64) {
+            patch.flip();
+            output.write(patch, item.headerOffset + 14);
+            int nameLength = item.name.getBytes(StandardCharsets.UTF_8).length;
+            ByteBuffer sizes = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            sizes.putLong(item.uncompressedSize);
+            sizes.putLong(item.compressedSize);
+            sizes.flip();
+            output.write(sizes, item.headerOffset + 30 + nameLength + 4);
+            return;
+        }
+        patch.putInt((int) item.compressedSize);
+        patch.putInt((int) item.uncompressedSize);
+        patch.flip();
+        output.write(patch, item.headerOffset + 14);
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long directoryOffset = position;
+        for (Item item : items) {
+            control.checkpoint();
+            byte[] name = item.name.getBytes(StandardCharsets.UTF_8);
+            boolean sizesOverflow = item.zip64;
+            boolean offsetOverflow = item.headerOffset >= ZIP64_LIMIT;
+            int extraLength = (sizesOverflow ? 16 : 0) + (offsetOverflow ? 8 : 0);
+            header.clear();
+            header.putInt(0x02014b50);
+            // Made by unix, so external attributes carry file modes
+            header.putShort((short) (3 << 8 | 45));
+            header.putShort((short) (item.zip64 || offsetOverflow ? 45 : 20));
+            header.putShort((short) 0x0800);
+            header.putShort((short) (item.stored ? 0 : 8));
+            putDosTime(item.file.lastModified());
+            header.putInt((int) item.crc);
+            header.putInt(sizesOverflow ? -1 : (int) item.compressedSize);
+            header.putInt(sizesOverflow ? -1 : (int) item.uncompressedSize);
+            header.putShort((short) name.length);
+            header.putShort((short) (extraLength > 0 ? extraLength + 4 : 0));
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(item.directory ? (040755 << 16) | 0x10 : 0100644 << 16);
+            header.putInt(offsetOverflow ? -1 : (int) item.headerOffset);
+            header.put(name);
+            if (extraLength > 0) {
+                header.putShort((short) 0x0001);
+                header.putShort((short) extraLength);
+                if (sizesOverflow) {
+                    header.putLong(item.uncompressedSize);
+                    header.putLong(item.compressedSize);
+                }
+                if (offsetOverflow) {
+                    header.putLong(item.headerOffset);
+                }
+            }
+            header.flip();
+            writeFully(header);
+        }
+        long directorySize = position - directoryOffset;
+
+        boolean zip64 = items.size() >= 0xFFFF || directoryOffset >= ZIP64_LIMIT || directorySize >= ZIP64_LIMIT;
+        header.clear();
+        if (zip64) {
+            long recordOffset = position;
+            header.putInt(0x06064b50);
+            header.putLong(44);
+            header.putShort((short) (3 << 8 | 45));
+            header.putShort((short) 45);
+            header.putInt(0);
+            header.putInt(0);
+            header.putLong(items.size());
+            header.putLong(items.size());
+            header.putLong(directorySize);
+            header.putLong(directoryOffset);
+            // Locator of the zip64 record
+            header.putInt(0x07064b50);
+            header.putInt(0);
+            header.putLong(recordOffset);
+            header.putInt(1);
+        }
+        header.putInt(0x06054b50);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) Math.min(items.size(), 0xFFFF));
+        header.putShort((short) Math.min(items.size(), 0xFFFF));
+        header.putInt((int) Math.min(directorySize, ZIP64_LIMIT));
+        header.putInt((int) Math.min(directoryOffset, ZIP64_LIMIT));
+        header.putShort((short) 0);
+        header.flip();
+        writeFully(header);
+    }
+
+    private void putDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = Math.max(calendar.get(Calendar.YEAR), 1980);
+        header.putShort((short) (calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1));
+        header.putShort((short) ((year - 1980) << 9
+                | (calendar.get(Calendar.MONTH) + 1) << 5
+                | calendar.get(Calendar.DAY_OF_MONTH)));
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += output.write(buffer);
+        }
+    }
+
+    private void reportProgress(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastReportAt < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        long elapsed = Math.max(now - lastReportAt, 1);
+        long bytesPerSecond = (bytesDone - lastReportBytes) * 1000 / elapsed;
+        lastReportAt = now;
+        lastReportBytes = bytesDone;
+        listener.onProgress(bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond);
+    }
+
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static StructStat lstat(File file) {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.telenko.filemanager.directory;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class DirectoryListerModule extends ReactContextBaseJavaModule {
+
+    private static final String SHOW_HIDDEN = "showHidden";
+    private static final String SORT_BY = "sortBy";
+    private static final String SORT_DIRECTION = "sortDirection";
+    private static final String OFFSET = "offset";
+    private static final String LIMIT = "limit";
+
+    // '/' can never be part of a file name, so names travel as one joined string
+    private static final String NAMES_SEPARATOR = "/";
+
+    private static final String CHANGE_EVENT = "DirectoryChanged";
+
+    private final ReactApplicationContext reactContext;
+    private final ExecutorService executorService;
+    // Flushes coalesced change windows of all watchers
+    private final ScheduledExecutorService watchScheduler;
+    private final Map<Integer, DirectoryWatcher> watchers = new ConcurrentHashMap<>();
+
+    public DirectoryListerModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.reactContext = reactContext;
+        this.executorService = Executors.newFixedThreadPool(2);
+        this.watchScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "DirectoryLister";
+    }
+
+    @ReactMethod
+    public void list(String path, ReadableMap options, Promise promise) {
+        boolean showHidden = options.hasKey(SHOW_HIDDEN) && options.getBoolean(SHOW_HIDDEN);
+        String sortBy = options.hasKey(SORT_BY) ? options.getString(SORT_BY) : DirectoryListing.SORT_DATE;
+        boolean ascending = !options.hasKey(SORT_DIRECTION) || !"desc".equals(options.getString(SORT_DIRECTION));
+        int offset = options.hasKey(OFFSET) ? options.getInt(OFFSET) : 0;
+        int limit = options.hasKey(LIMIT) ? options.getInt(LIMIT) : 0;
+
+        executorService.execute(() -> {
+            try {
+                DirectoryListing.Result listing = DirectoryListing.list(path, showHidden, sortBy, ascending, offset, limit);
+                WritableMap result = entriesToMap(listing.entries);
+                result.putString("path", path);
+                result.putInt("total", listing.total);
+                promise.resolve(result);
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            }
+        });
+    }
+
+    // Changes of the directory are pushed as DirectoryChanged events until unwatch is called
+    @ReactMethod
+    public void watch(Integer id, String path, ReadableMap options, Promise promise) {
+        boolean showHidden = options.hasKey(SHOW_HIDDEN) && options.getBoolean(SHOW_HIDDEN);
+        if (!new File(path).isDirectory()) {
+            promise.reject("Error", "Folder does not exist or cannot be read: " + path);
+            return;
+        }
+        DirectoryWatcher watcher = new DirectoryWatcher(path, showHidden, watchScheduler, new DirectoryWatcher.Listener() {
+            @Override
+            public void onChange(List<DirectoryListing.Entry> added, List<DirectoryListing.Entry> modified, List<String> removed) {
+                WritableMap params = new WritableNativeMap();
+                params.putMap("added", entriesToMap(added));
+                params.putMap("modified", entriesToMap(modified));
+                params.putString("removed", TextUtils.join(NAMES_SEPARATOR, removed));
+                params.putBoolean("reset", false);
+                sendChange(id, path, params);
+            }
+
+            @Override
+            public void onReset() {
+                WritableMap params = new WritableNativeMap();
+                params.putBoolean("reset", true);
+                sendChange(id, path, params);
+            }
+        });
+        DirectoryWatcher previous = watchers.put(id, watcher);
+        if (previous != null) {
+            previous.stop();
+        }
+        watcher.start();
+        promise.resolve(null);
+    }
+
+    @ReactMethod
+    public void unwatch(Integer id) {
+        DirectoryWatcher watcher = watchers.remove(id);
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    private void sendChange(Integer id, String path, WritableMap params) {
+        params.putInt("id", id);
+        params.putString("path", path);
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(CHANGE_EVENT, params);
+    }
+
+    private static WritableMap entriesToMap(List<DirectoryListing.Entry> entries) {
+        StringBuilder names = new StringBuilder();
+        WritableArray directories = new WritableNativeArray();
+        WritableArray sizes = new WritableNativeArray();
+        WritableArray mtimes = new WritableNativeArray();
+        for (int i = 0; i < entries.size(); i++) {
+            DirectoryListing.Entry entry = entries.get(i);
+            if (i > 0) {
+                names.append(NAMES_SEPARATOR);
+            }
+            names.append(entry.name);
+            directories.pushBoolean(entry.isDirectory);
+            sizes.pushDouble((double) entry.size);
+            mtimes.pushDouble((double) entry.mtime);
+        }
+
+        WritableMap result = new WritableNativeMap();
+        result.putString("names", names.toString());
+        result.putArray("directories", directories);
+        result.putArray("sizes", sizes);
+        result.putArray("mtimes", mtimes);
+        return result;
+    }
+
+    @ReactMethod
+    public void addListener(String eventName) { }
+
+    @ReactMethod
+    public void removeListeners(Integer count) { }
+}
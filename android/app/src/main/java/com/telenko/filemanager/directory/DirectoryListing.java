@@ -0,0 +1,139 @@
+package com.telenko.filemanager.directory;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class DirectoryListing {
+
+    public static final String SORT_NAME = "name";
+    public static final String SORT_DATE = "date";
+    public static final String SORT_SIZE = "size";
+    public static final String SORT_TYPE = "type";
+
+    public static class Entry {
+        public final String name;
+        public final boolean isDirectory;
+        // Described by its target, walkers must not descend into linked folders
+        public final boolean isLink;
+        public final long size;
+        public final long mtime;
+
+        Entry(String name, boolean isDirectory, boolean isLink, long size, long mtime) {
+            this.name = name;
+            this.isDirectory = isDirectory;
+            this.isLink = isLink;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    public static class Result {
+        public final List<Entry> entries;
+        // Count of visible entries before paging was applied
+        public final int total;
+
+        Result(List<Entry> entries, int total) {
+            this.entries = entries;
+            this.total = total;
+        }
+    }
+
+    public static Result list(String path, boolean showHidden, String sortBy, boolean ascending, int offset, int limit) throws IOException {
+        File dir = new File(path);
+        String[] names = dir.list();
+        if (names == null) {
+            throw new IOException("Folder does not exist or cannot be read: " + path);
+        }
+
+        ArrayList<Entry> entries = new ArrayList<>(names.length);
+        for (String name : names) {
+            if (!showHidden && name.startsWith(".")) {
+                continue;
+            }
+            Entry entry = readEntry(new File(dir, name));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        Arrays.sort(sorted, comparator(sortBy, ascending));
+
+        int total = sorted.length;
+        int from = Math.min(Math.max(offset, 0), total);
+        int to = limit > 0 ? Math.min(from + limit, total) : total;
+        return new Result(Arrays.asList(sorted).subList(from, to), total);
+    }
+
+    // One stat per entry where java.nio is available, instead of separate
+    // isDirectory/length/lastModified syscalls; links take a second one for their target
+    static Entry readEntry(File file) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                boolean isLink = attrs.isSymbolicLink();
+                if (isLink) {
+                    attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                }
+                return new Entry(file.getName(), attrs.isDirectory(), isLink, attrs.size(), attrs.lastModifiedTime().toMillis());
+            } catch (IOException | SecurityException e) {
+                // Broken symlink or entry removed while listing
+                return null;
+            }
+        }
+        if (!file.exists()) {
+            return null;
+        }
+        return new Entry(file.getName(), file.isDirectory(), isLink(file), file.length(), file.lastModified());
+    }
+
+    private static boolean isLink(File file) {
+        try {
+            return OsConstants.S_ISLNK(Os.lstat(file.getPath()).st_mode);
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    // Directories always go first and are ordered by name, matching FileApi.sortDirItems
+    static Comparator<Entry> comparator(String sortBy, boolean ascending) {
+        final int koef = ascending ? 1 : -1;
+        return (a, b) -> {
+            if (a.isDirectory != b.isDirectory) {
+                return a.isDirectory ? -1 : 1;
+            }
+            if (a.isDirectory) {
+                return SORT_NAME.equals(sortBy) ? koef * a.name.compareTo(b.name) : a.name.compareTo(b.name);
+            }
+            int result = 0;
+            if (SORT_SIZE.equals(sortBy)) {
+                result = Long.compare(a.size, b.size);
+            } else if (SORT_TYPE.equals(sortBy)) {
+                result = extension(a.name).compareTo(extension(b.name));
+            } else if (!SORT_NAME.equals(sortBy)) {
+                result = Long.compare(a.mtime, b.mtime);
+            }
+            if (result == 0) {
+                result = a.name.compareTo(b.name);
+            }
+            return koef * result;
+        };
+    }
+
+    private static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot + 1).toLowerCase() : "";
+    }
+}
@@ -0,0 +1,127 @@
+package com.telenko.filemanager.directory;
+
+import android.os.Build;
+import android.os.FileObserver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Watches one directory with FileObserver and reports what changed in it.
+// Events are collected for a short window, then every touched name is stat'ed
+// once, so a copy writing thousands of chunks results in a single diff.
+public class DirectoryWatcher {
+
+    public interface Listener {
+        void onChange(List<DirectoryListing.Entry> added, List<DirectoryListing.Entry> modified, List<String> removed);
+
+        // Watched directory is gone or events were lost, listing has to be read again
+        void onReset();
+    }
+
+    private static final long COALESCE_WINDOW_MS = 250;
+    private static final int EVENTS_MASK = FileObserver.CREATE | FileObserver.DELETE | FileObserver.MOVED_FROM
+            | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE | FileObserver.ATTRIB
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private final File directory;
+    private final boolean showHidden;
+    private final ScheduledExecutorService scheduler;
+    private final Listener listener;
+    private final FileObserver observer;
+
+    // Touched names, true when the entry did not exist before the window
+    private final Map<String, Boolean> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+    private boolean resetPending = false;
+
+    public DirectoryWatcher(String path, boolean showHidden, ScheduledExecutorService scheduler, Listener listener) {
+        this.directory = new File(path);
+        this.showHidden = showHidden;
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.observer = createObserver();
+    }
+
+    public void start() {
+        observer.startWatching();
+    }
+
+    public void stop() {
+        observer.stopWatching();
+    }
+
+    @SuppressWarnings("deprecation")
+    private FileObserver createObserver() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new FileObserver(directory, EVENTS_MASK) {
+                @Override
+                public void onEvent(int event, String name) {
+                    onFileEvent(event, name);
+                }
+            };
+        }
+        return new FileObserver(directory.getAbsolutePath(), EVENTS_MASK) {
+            @Override
+            public void onEvent(int event, String name) {
+                onFileEvent(event, name);
+            }
+        };
+    }
+
+    private synchronized void onFileEvent(int event, String name) {
+        int type = event & FileObserver.ALL_EVENTS;
+        if (type == FileObserver.DELETE_SELF || type == FileObserver.MOVE_SELF || name == null) {
+            // Queue overflow comes without a name, the diff would be incomplete
+            resetPending = true;
+        } else if (showHidden || !name.startsWith(".")) {
+            // Only the first event tells whether the entry existed before the window
+            pending.putIfAbsent(name, type == FileObserver.CREATE || type == FileObserver.MOVED_TO);
+        } else {
+            return;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(this::flush, COALESCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        Map<String, Boolean> touched;
+        boolean reset;
+        synchronized (this) {
+            touched = new LinkedHashMap<>(pending);
+            reset = resetPending;
+            pending.clear();
+            resetPending = false;
+            flushScheduled = false;
+        }
+        if (reset) {
+            listener.onReset();
+            return;
+        }
+        List<DirectoryListing.Entry> added = new ArrayList<>();
+        List<DirectoryListing.Entry> modified = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, Boolean> item : touched.entrySet()) {
+            DirectoryListing.Entry entry = DirectoryListing.readEntry(new File(directory, item.getKey()));
+            if (entry == null) {
+                // Created and removed within one window, e.g. temp files, are not reported at all
+                if (!item.getValue()) {
+                    removed.add(item.getKey());
+                }
+            } else if (item.getValue()) {
+                added.add(entry);
+            } else {
+                modified.add(entry);
+            }
+        }
+        if (!added.isEmpty() || !modified.isEmpty() || !removed.isEmpty()) {
+            listener.onChange(added, modified, removed);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.telenko.filemanager.directory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// Native mirror of FileApi.isFileImage/isFileVideo/isFileMusical/isFileArchive
+// and the document icons of the grid, keep the extension lists in sync
+public class FileCategories {
+
+    public static final String IMAGE = "image";
+    public static final String VIDEO = "video";
+    public static final String AUDIO = "audio";
+    public static final String DOCUMENT = "document";
+    public static final String ARCHIVE = "archive";
+    public static final String OTHER = "other";
+
+    public static final String[] ALL = {IMAGE, VIDEO, AUDIO, DOCUMENT, ARCHIVE, OTHER};
+
+    private static final Set<String> IMAGE_EXTENSIONS = new HashSet<>(Arrays.asList("gif", "jpg", "jpeg", "png"));
+    private static final Set<String> VIDEO_EXTENSIONS = new HashSet<>(Arrays.asList("mp4", "avi", "mov"));
+    private static final Set<String> AUDIO_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "mp3", "wav", "aac", "flac", "ogg", "m4a", "wma", "aiff", "alac"));
+    private static final Set<String> DOCUMENT_EXTENSIONS = new HashSet<>(Arrays.asList("pdf", "doc", "docx", "xls", "xlsx"));
+    private static final Set<String> ARCHIVE_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "zip", "rar", "tar", "gz", "bz2", "7z", "xz", "iso", "tgz"));
+
+    public static String of(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return OTHER;
+        }
+        String extension = name.substring(dot + 1).toLowerCase();
+        if (IMAGE_EXTENSIONS.contains(extension)) {
+            return IMAGE;
+        } else if (VIDEO_EXTENSIONS.contains(extension)) {
+            return VIDEO;
+        } else if (AUDIO_EXTENSIONS.contains(extension)) {
+            return AUDIO;
+        } else if (DOCUMENT_EXTENSIONS.contains(extension)) {
+            return DOCUMENT;
+        } else if (ARCHIVE_EXTENSIONS.contains(extension)) {
+            return ARCHIVE;
+        }
+        return OTHER;
+    }
+}
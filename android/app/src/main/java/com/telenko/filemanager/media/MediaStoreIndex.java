@@ -0,0 +1,272 @@
+package com.telenko.filemanager.media;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// In-memory map of file path to MediaStore content URI for images, videos and audio.
+// Built with one query per collection and volume, then kept current from MediaStore
+// change notifications, so resolving a URI is a map lookup instead of a DATA scan.
+// Files scanned after the last notification are missing, those cost a query.
+public class MediaStoreIndex {
+
+    private static final String TYPE_IMAGES = "images";
+    private static final String TYPE_VIDEO = "video";
+    private static final String TYPE_AUDIO = "audio";
+    private static final String[] TYPES = {TYPE_IMAGES, TYPE_VIDEO, TYPE_AUDIO};
+    // Scans notify for every file, collapse a burst into one volume rebuild
+    private static final long REBUILD_DELAY_MS = 1000;
+
+    private static MediaStoreIndex instance;
+
+    private static class Entry {
+        final Uri uri;
+        final String volume;
+
+        Entry(Uri uri, String volume) {
+            this.uri = uri;
+            this.volume = volume;
+        }
+    }
+
+    private final Context context;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Uri, String> paths = new ConcurrentHashMap<>();
+    private final Set<String> pendingVolumes = ConcurrentHashMap.newKeySet();
+    // Single thread, so bulk builds and item updates never interleave
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private final ContentObserver observer = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onMediaChanged(uri);
+        }
+    };
+
+    public static synchronized MediaStoreIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaStoreIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MediaStoreIndex(Context context) {
+        this.context = context;
+        context.getContentResolver().registerContentObserver(Uri.parse("content://" + MediaStore.AUTHORITY), true, observer);
+        executor.execute(this::buildAll);
+    }
+
+    // Content URI of the media file or null when MediaStore does not know it.
+    // Misses fall back to a direct query, the file may be newer than the index.
+    public Uri getUri(String path, String mimeType) {
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            return entry.uri;
+        }
+        String type = typeOf(mimeType);
+        return type != null ? queryUri(path, type) : null;
+    }
+
+    // Stops following MediaStore changes, the next getInstance builds a new index
+    public void release() {
+        synchronized (MediaStoreIndex.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        context.getContentResolver().unregisterContentObserver(observer);
+        executor.shutdownNow();
+    }
+
+    private void buildAll() {
+        for (String volume : volumeNames()) {
+            buildVolume(volume);
+        }
+    }
+
+    private void buildVolume(String volume) {
+        Set<Uri> seen = new HashSet<>();
+        for (String type : TYPES) {
+            Uri collection = collectionUri(type, volume);
+            try (Cursor cursor = context.getContentResolver().query(collection,
+                    new String[]{MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA}, null, null, null)) {
+                if (cursor == null) {
+                    continue;
+                }
+                while (cursor.moveToNext()) {
+                    String path = cursor.getString(1);
+                    if (path != null) {
+                        Uri uri = ContentUris.withAppendedId(collection, cursor.getLong(0));
+                        put(path, uri, volume);
+                        seen.add(uri);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Volume got unmounted in the middle of the query
+            }
+        }
+        List<Uri> removed = new ArrayList<>();
+        for (Map.Entry<Uri, String> item : paths.entrySet()) {
+            Entry entry = entries.get(item.getValue());
+            if (entry != null && entry.volume.equals(volume) && !seen.contains(item.getKey())) {
+                removed.add(item.getKey());
+            }
+        }
+        for (Uri uri : removed) {
+            remove(uri);
+        }
+    }
+
+    // content://media/<volume>/<type>/media/<id>, or a shorter URI for bulk changes
+    private void onMediaChanged(Uri uri) {
+        if (executor.isShutdown()) {
+            // Notification already dispatched when the index was released
+            return;
+        }
+        List<String> segments = uri != null ? uri.getPathSegments() : null;
+        if (segments == null || segments.isEmpty()) {
+            scheduleRebuild(null);
+            return;
+        }
+        String volume = segments.get(0);
+        String type = segments.size() > 1 ? segments.get(1) : null;
+        Long id = segments.size() > 3 ? parseId(segments.get(3)) : null;
+        boolean aliasVolume = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && MediaStore.VOLUME_EXTERNAL.equals(volume);
+        if (aliasVolume && id != null) {
+            // Since Q item changes are also notified with the real volume name
+            return;
+        }
+        if (id == null || type == null) {
+            scheduleRebuild(aliasVolume ? null : volume);
+            return;
+        }
+        if (!Arrays.asList(TYPES).contains(type)) {
+            // Non-media files are not indexed
+            return;
+        }
+        executor.execute(() -> refreshItem(volume, type, id));
+    }
+
+    private void refreshItem(String volume, String type, long id) {
+        Uri uri = ContentUris.withAppendedId(collectionUri(type, volume), id);
+        String path = null;
+        try (Cursor cursor = context.getContentResolver().query(uri,
+                new String[]{MediaStore.MediaColumns.DATA}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                path = cursor.getString(0);
+            }
+        } catch (RuntimeException e) {
+            // Treated as removed
+        }
+        if (path == null) {
+            remove(uri);
+        } else {
+            put(path, uri, volume);
+        }
+    }
+
+    private void scheduleRebuild(String volume) {
+        String key = volume != null ? volume : "";
+        if (!pendingVolumes.add(key)) {
+            return;
+        }
+        executor.schedule(() -> {
+            pendingVolumes.remove(key);
+            if (volume == null) {
+                buildAll();
+            } else {
+                buildVolume(volume);
+            }
+        }, REBUILD_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void put(String path, Uri uri, String volume) {
+        // Renamed item keeps its id, drop the old path
+        String previousPath = paths.put(uri, path);
+        if (previousPath != null && !previousPath.equals(path)) {
+            entries.remove(previousPath);
+        }
+        entries.put(path, new Entry(uri, volume));
+    }
+
+    private void remove(Uri uri) {
+        String path = paths.remove(uri);
+        if (path != null) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.uri.equals(uri)) {
+                entries.remove(path);
+            }
+        }
+    }
+
+    private Uri queryUri(String path, String type) {
+        Uri collection = collectionUri(type, MediaStore.VOLUME_EXTERNAL);
+        try (Cursor cursor = context.getContentResolver().query(collection,
+                new String[]{MediaStore.MediaColumns._ID}, MediaStore.MediaColumns.DATA + "=?", new String[]{path}, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return ContentUris.withAppendedId(collection, cursor.getLong(0));
+            }
+        } catch (RuntimeException e) {
+            // Provider is not available, same as not found
+        }
+        return null;
+    }
+
+    private List<String> volumeNames() {
+        List<String> volumes = new ArrayList<>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            volumes.addAll(MediaStore.getExternalVolumeNames(context));
+        } else {
+            volumes.add(MediaStore.VOLUME_EXTERNAL);
+        }
+        return volumes;
+    }
+
+    private static Uri collectionUri(String type, String volume) {
+        switch (type) {
+            case TYPE_IMAGES:
+                return MediaStore.Images.Media.getContentUri(volume);
+            case TYPE_VIDEO:
+                return MediaStore.Video.Media.getContentUri(volume);
+            default:
+                return MediaStore.Audio.Media.getContentUri(volume);
+        }
+    }
+
+    private static String typeOf(String mimeType) {
+        if (mimeType == null) {
+            return null;
+        }
+        if (mimeType.startsWith("image/")) {
+            return TYPE_IMAGES;
+        } else if (mimeType.startsWith("video/")) {
+            return TYPE_VIDEO;
+        } else if (mimeType.startsWith("audio/")) {
+            return TYPE_AUDIO;
+        }
+        return null;
+    }
+
+    private static Long parseId(String segment) {
+        try {
+            return Long.parseLong(segment);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.telenko.filemanager.media;
+
+import android.content.ContentProviderOperation;
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Keeps MediaStore in step with file operations. Paths written and removed by
+// operations are collected and flushed together after a short quiet period:
+// stale rows go in one applyBatch, new files in one multi-path scan, instead
+// of a scanner connection per file. MediaStoreIndex follows the resulting
+// change notifications by itself.
+public class MediaStoreSync {
+
+    private static final String TAG = "MediaStoreSync";
+    private static final long FLUSH_DELAY_MS = 1000;
+    // A steady stream of small operations is flushed at least this often
+    private static final long MAX_FLUSH_DELAY_MS = 5000;
+    // Stays below the SQLite limit of 999 bound arguments
+    private static final int DELETE_BATCH = 500;
+
+    private static MediaStoreSync instance;
+
+    private final Context context;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Set<String> scanPaths = new LinkedHashSet<>();
+    private final Set<String> scanTrees = new LinkedHashSet<>();
+    private final Set<String> removedPaths = new LinkedHashSet<>();
+    private final Set<String> removedTrees = new LinkedHashSet<>();
+    private ScheduledFuture<?> flushTask;
+    private long firstPendingAt;
+
+    public static synchronized MediaStoreSync getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaStoreSync(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MediaStoreSync(Context context) {
+        this.context = context;
+    }
+
+    // Files created or changed
+    public synchronized void scan(Collection<String> paths) {
+        scanPaths.addAll(paths);
+        schedule();
+    }
+
+    // Folder moved or extracted as a whole, its files are listed at flush time
+    public synchronized void scanTree(String path) {
+        scanTrees.add(path);
+        schedule();
+    }
+
+    // Files which no longer exist at these paths
+    public synchronized void remove(Collection<String> paths) {
+        removedPaths.addAll(paths);
+        schedule();
+    }
+
+    // Rows of the path and everything below it
+    public synchronized void removeTree(String path) {
+        removedTrees.add(path);
+        schedule();
+    }
+
+    private void schedule() {
+        long now = SystemClock.uptimeMillis();
+        if (flushTask == null) {
+            firstPendingAt = now;
+        } else {
+            flushTask.cancel(false);
+        }
+        long delay = Math.min(FLUSH_DELAY_MS, Math.max(0, firstPendingAt + MAX_FLUSH_DELAY_MS - now));
+        flushTask = executor.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        List<String> scans;
+        List<String> trees;
+        List<String> removed;
+        List<String> removedDirectories;
+        synchronized (this) {
+            flushTask = null;
+            scans = new ArrayList<>(scanPaths);
+            trees = new ArrayList<>(scanTrees);
+            removed = new ArrayList<>(removedPaths);
+            removedDirectories = new ArrayList<>(removedTrees);
+            scanPaths.clear();
+            scanTrees.clear();
+            removedPaths.clear();
+            removedTrees.clear();
+        }
+        // Removals first, a path moved away and back within one flush ends up scanned
+        removeRows(removed, removedDirectories);
+
+        Set<String> paths = new LinkedHashSet<>();
+        for (String path : scans) {
+            if (new File(path).isFile()) {
+                paths.add(path);
+            }
+        }
+        for (String tree : trees) {
+            collectFiles(new File(tree), paths);
+        }
+        if (!paths.isEmpty()) {
+            MediaScannerConnection.scanFile(context, paths.toArray(new String[0]), null, null);
+        }
+    }
+
+    private void removeRows(List<String> paths, List<String> trees) {
+        if (paths.isEmpty() && trees.isEmpty()) {
+            return;
+        }
+        Uri filesUri = MediaStore.Files.getContentUri("external");
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int from = 0; from < paths.size(); from += DELETE_BATCH) {
+            List<String> chunk = paths.subList(from, Math.min(from + DELETE_BATCH, paths.size()));
+            String[] placeholders = new String[chunk.size()];
+            Arrays.fill(placeholders, "?");
+            operations.add(ContentProviderOperation.newDelete(filesUri)
+                    .withSelection(MediaStore.MediaColumns.DATA + " IN (" + TextUtils.join(",", placeholders) + ")",
+                            chunk.toArray(new String[0]))
+                    .build());
+        }
+        for (String tree : trees) {
+            operations.add(ContentProviderOperation.newDelete(filesUri)
+                    .withSelection(MediaStore.MediaColumns.DATA + " = ? OR " + MediaStore.MediaColumns.DATA + " LIKE ? ESCAPE '\\'",
+                            new String[]{tree, escapeLike(tree) + "/%"})
+                    .build());
+        }
+        try {
+            context.getContentResolver().applyBatch(MediaStore.AUTHORITY, operations);
+        } catch (Exception e) {
+            // Stale rows are dropped by the next full media scan
+            Log.w(TAG, "Failed to remove rows from MediaStore", e);
+        }
+    }
+
+    // Links are skipped, a linked folder would be scanned twice or loop forever
+    private static void collectFiles(File file, Set<String> paths) {
+        StructStat stat = lstat(file);
+        if (stat == null) {
+            return;
+        }
+        if (OsConstants.S_ISREG(stat.st_mode)) {
+            paths.add(file.getAbsolutePath());
+            return;
+        }
+        if (!OsConstants.S_ISDIR(stat.st_mode)) {
+            return;
+        }
+        String[] names = file.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            collectFiles(new File(file, name), paths);
+        }
+    }
+
+    private static StructStat lstat(File file) {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
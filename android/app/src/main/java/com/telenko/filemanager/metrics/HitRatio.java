@@ -0,0 +1,35 @@
+package com.telenko.filemanager.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class HitRatio {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public void record(boolean hit) {
+        if (hit) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+    }
+
+    public void reset() {
+        hits.reset();
+        misses.reset();
+    }
+
+    public JSONObject toJson() throws JSONException {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        JSONObject json = new JSONObject();
+        json.put("hits", hitCount);
+        json.put("misses", total - hitCount);
+        json.put("ratio", total > 0 ? hitCount / (double) total : 0);
+        return json;
+    }
+}
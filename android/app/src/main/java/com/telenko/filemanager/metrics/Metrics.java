@@ -0,0 +1,130 @@
+package com.telenko.filemanager.metrics;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Process wide registry of native metrics. Modules look their meters up once
+// and keep them in fields, recording then costs a few atomic adds.
+// Names are "<module>.<what>", e.g. "thumbnail.decodeImage".
+public class Metrics {
+
+    private static final String TAG = "Metrics";
+    // Dump file is rotated once it grows past this, keeping one previous file
+    private static final long MAX_DUMP_BYTES = 512 * 1024;
+
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, Throughput> throughputs = new ConcurrentHashMap<>();
+    private static final Map<String, HitRatio> hitRatios = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static final long startedAt = System.currentTimeMillis();
+
+    private static ScheduledExecutorService dumpExecutor;
+    private static ScheduledFuture<?> dumpTask;
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public static Throughput throughput(String name) {
+        return throughputs.computeIfAbsent(name, key -> new Throughput());
+    }
+
+    public static HitRatio hitRatio(String name) {
+        return hitRatios.computeIfAbsent(name, key -> new HitRatio());
+    }
+
+    // Sampled when metrics are read, replaces a gauge registered by a previous module instance
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (Throughput throughput : throughputs.values()) {
+            throughput.reset();
+        }
+        for (HitRatio hitRatio : hitRatios.values()) {
+            hitRatio.reset();
+        }
+    }
+
+    public static JSONObject snapshot() throws JSONException {
+        JSONObject latencies = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().toJson());
+        }
+        JSONObject throughput = new JSONObject();
+        for (Map.Entry<String, Throughput> entry : throughputs.entrySet()) {
+            throughput.put(entry.getKey(), entry.getValue().toJson());
+        }
+        JSONObject caches = new JSONObject();
+        for (Map.Entry<String, HitRatio> entry : hitRatios.entrySet()) {
+            caches.put(entry.getKey(), entry.getValue().toJson());
+        }
+        JSONObject gaugeValues = new JSONObject();
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            gaugeValues.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        JSONObject json = new JSONObject();
+        json.put("timestamp", System.currentTimeMillis());
+        json.put("uptimeMs", System.currentTimeMillis() - startedAt);
+        json.put("latencies", latencies);
+        json.put("throughput", throughput);
+        json.put("caches", caches);
+        json.put("gauges", gaugeValues);
+        return json;
+    }
+
+    // Appends a snapshot per line to file every intervalMs, 0 stops dumping
+    public static synchronized void setDump(File file, long intervalMs) {
+        if (dumpTask != null) {
+            dumpTask.cancel(false);
+            dumpTask = null;
+        }
+        if (intervalMs <= 0) {
+            return;
+        }
+        if (dumpExecutor == null) {
+            dumpExecutor = Executors.newSingleThreadScheduledExecutor();
+        }
+        dumpTask = dumpExecutor.scheduleWithFixedDelay(() -> dump(file), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void dump(File file) {
+        try {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create folder " + directory.getAbsolutePath());
+            }
+            if (file.length() > MAX_DUMP_BYTES) {
+                File previous = new File(file.getPath() + ".1");
+                previous.delete();
+                file.renameTo(previous);
+            }
+            try (FileOutputStream output = new FileOutputStream(file, true)) {
+                output.write((snapshot().toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Failed to dump metrics", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.telenko.filemanager.metrics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+
+import java.io.File;
+
+// Read side of Metrics. The periodic dump survives restarts, so it can be
+// switched on for a slow device and collected later with a support bundle.
+public class MetricsModule extends ReactContextBaseJavaModule {
+
+    private static final String PREFERENCES = "metrics";
+    private static final String DUMP_INTERVAL = "dumpIntervalSeconds";
+
+    private final SharedPreferences preferences;
+    private final File dumpFile;
+
+    public MetricsModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.preferences = reactContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        this.dumpFile = new File(reactContext.getFilesDir(), "metrics/metrics.jsonl");
+        Metrics.setDump(dumpFile, preferences.getInt(DUMP_INTERVAL, 0) * 1000L);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "Metrics";
+    }
+
+    // Snapshot of every meter as JSON, see Metrics.snapshot
+    @ReactMethod
+    public void getMetrics(Promise promise) {
+        try {
+            promise.resolve(Metrics.snapshot().toString());
+        } catch (Exception e) {
+            promise.reject("Error", e);
+        }
+    }
+
+    @ReactMethod
+    public void resetMetrics() {
+        Metrics.reset();
+    }
+
+    // 0 stops dumping, resolves the path of the dump file
+    @ReactMethod
+    public void setDumpInterval(Integer seconds, Promise promise) {
+        try {
+            int interval = Math.max(0, seconds);
+            preferences.edit().putInt(DUMP_INTERVAL, interval).apply();
+            Metrics.setDump(dumpFile, interval * 1000L);
+            promise.resolve(dumpFile.getAbsolutePath());
+        } catch (Exception e) {
+            promise.reject("Error", e);
+        }
+    }
+}
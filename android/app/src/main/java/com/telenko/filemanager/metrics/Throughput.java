@@ -0,0 +1,37 @@
+package com.telenko.filemanager.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Bytes moved and time spent moving them, bytes/sec is over busy time only,
+// so idle periods between operations do not dilute it
+public class Throughput {
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+
+    public void record(long byteCount, long elapsedNanos) {
+        bytes.add(byteCount);
+        nanos.add(elapsedNanos);
+        operations.increment();
+    }
+
+    public void reset() {
+        bytes.reset();
+        nanos.reset();
+        operations.reset();
+    }
+
+    public JSONObject toJson() throws JSONException {
+        long totalBytes = bytes.sum();
+        long totalNanos = nanos.sum();
+        JSONObject json = new JSONObject();
+        json.put("operations", operations.sum());
+        json.put("bytes", totalBytes);
+        json.put("bytesPerSecond", totalNanos > 0 ? totalBytes * 1e9 / totalNanos : 0);
+        return json;
+    }
+}
@@ -0,0 +1,244 @@
+package com.telenko.filemanager.operations;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import com.telenko.filemanager.media.MediaStoreSync;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Deletes files and folders in two fork-join passes: the trees are walked in
+// parallel to know the totals, then every folder deletes its files in chunks
+// and its subfolders concurrently before removing itself. Links are deleted,
+// never followed. Failures do not stop the rest and are reported at the end.
+public class DeleteEngine {
+
+    private static final int FILES_PER_TASK = 256;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private static class Leaf {
+        final File file;
+        final long size;
+
+        Leaf(File file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    private static class Node {
+        // null for the pseudo root holding the selected items
+        final File directory;
+        final List<Leaf> leaves = new ArrayList<>();
+        final List<Node> children = new ArrayList<>();
+
+        Node(File directory) {
+            this.directory = directory;
+        }
+    }
+
+    private final List<String> paths;
+    private final ForkJoinPool pool;
+    private final OperationControl control;
+    private final TransferEngine.Listener listener;
+    private final MediaStoreSync mediaStoreSync;
+
+    private final LongAdder bytesTotal = new LongAdder();
+    private final LongAdder filesTotal = new LongAdder();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong lastReportAt = new AtomicLong();
+    private final AtomicLong lastReportBytes = new AtomicLong();
+    private final Queue<String> deletedPaths = new ConcurrentLinkedQueue<>();
+    private volatile String firstFailure;
+
+    public DeleteEngine(List<String> paths, ForkJoinPool pool, OperationControl control,
+                        TransferEngine.Listener listener, MediaStoreSync mediaStoreSync) {
+        this.paths = paths;
+        this.pool = pool;
+        this.control = control;
+        this.listener = listener;
+        this.mediaStoreSync = mediaStoreSync;
+    }
+
+    public void run() throws IOException {
+        Node root = new Node(null);
+        List<ScanTask> scans = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            StructStat stat = lstat(file);
+            if (stat == null) {
+                // Already gone
+                continue;
+            }
+            if (OsConstants.S_ISDIR(stat.st_mode)) {
+                scans.add(new ScanTask(file));
+            } else {
+                root.leaves.add(new Leaf(file, stat.st_size));
+                bytesTotal.add(stat.st_size);
+                filesTotal.increment();
+            }
+        }
+        for (Node node : pool.invoke(new RecursiveTask<List<Node>>() {
+            @Override
+            protected List<Node> compute() {
+                invokeAll(scans);
+                List<Node> nodes = new ArrayList<>(scans.size());
+                for (ScanTask scan : scans) {
+                    nodes.add(scan.join());
+                }
+                return nodes;
+            }
+        })) {
+            root.children.add(node);
+        }
+
+        lastReportAt.set(System.currentTimeMillis());
+        reportProgress(true);
+        try {
+            pool.invoke(new DeleteTask(root));
+        } finally {
+            // Also after cancel, rows of what is already gone have to go as well
+            mediaStoreSync.remove(deletedPaths);
+        }
+        reportProgress(true);
+        int failures = failed.get();
+        if (failures > 0) {
+            throw new IOException("Failed to delete " + firstFailure + (failures > 1 ? " and " + (failures - 1) + " more" : ""));
+        }
+    }
+
+    private class ScanTask extends RecursiveTask<Node> {
+        private final File directory;
+
+        ScanTask(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected Node compute() {
+            control.checkpoint();
+            Node node = new Node(directory);
+            String[] names = directory.list();
+            if (names == null) {
+                return node;
+            }
+            List<ScanTask> subdirectories = new ArrayList<>();
+            for (String name : names) {
+                File child = new File(directory, name);
+                StructStat stat = lstat(child);
+                if (stat != null && OsConstants.S_ISDIR(stat.st_mode)) {
+                    subdirectories.add(new ScanTask(child));
+                } else {
+                    long size = stat != null ? stat.st_size : 0;
+                    node.leaves.add(new Leaf(child, size));
+                    bytesTotal.add(size);
+                    filesTotal.increment();
+                }
+            }
+            if (!subdirectories.isEmpty()) {
+                invokeAll(subdirectories);
+                for (ScanTask subdirectory : subdirectories) {
+                    node.children.add(subdirectory.join());
+                }
+            }
+            return node;
+        }
+    }
+
+    private class DeleteTask extends RecursiveAction {
+        private final Node node;
+
+        DeleteTask(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (int from = 0; from < node.leaves.size(); from += FILES_PER_TASK) {
+                tasks.add(new LeavesTask(node.leaves.subList(from, Math.min(from + FILES_PER_TASK, node.leaves.size()))));
+            }
+            for (Node child : node.children) {
+                tasks.add(new DeleteTask(child));
+            }
+            invokeAll(tasks);
+            if (node.directory == null) {
+                return;
+            }
+            control.checkpoint();
+            if (node.directory.delete()) {
+                deletedPaths.add(node.directory.getPath());
+            } else if (node.directory.exists()) {
+                fail(node.directory);
+            }
+        }
+    }
+
+    private class LeavesTask extends RecursiveAction {
+        private final List<Leaf> leaves;
+
+        LeavesTask(List<Leaf> leaves) {
+            this.leaves = leaves;
+        }
+
+        @Override
+        protected void compute() {
+            for (Leaf leaf : leaves) {
+                control.checkpoint();
+                if (leaf.file.delete()) {
+                    deletedPaths.add(leaf.file.getPath());
+                } else if (lstat(leaf.file) != null) {
+                    fail(leaf.file);
+                    continue;
+                }
+                bytesDone.addAndGet(leaf.size);
+                filesDone.incrementAndGet();
+                reportProgress(false);
+            }
+        }
+    }
+
+    private void fail(File file) {
+        if (failed.getAndIncrement() == 0) {
+            firstFailure = file.getAbsolutePath();
+        }
+    }
+
+    private static StructStat lstat(File file) {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private void reportProgress(boolean force) {
+        long now = System.currentTimeMillis();
+        long last = lastReportAt.get();
+        if (!force && (now - last < PROGRESS_INTERVAL_MS || !lastReportAt.compareAndSet(last, now))) {
+            return;
+        }
+        if (force) {
+            lastReportAt.set(now);
+        }
+        long done = bytesDone.get();
+        long elapsed = Math.max(now - last, 1);
+        long bytesPerSecond = (done - lastReportBytes.getAndSet(done)) * 1000 / elapsed;
+        listener.onProgress(done, bytesTotal.sum(), filesDone.get(), (int) filesTotal.sum(), bytesPerSecond);
+    }
+}
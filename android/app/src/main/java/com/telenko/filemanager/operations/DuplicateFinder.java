@@ -0,0 +1,406 @@
+package com.telenko.filemanager.operations;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Finds files with equal content in three narrowing stages: same size, same
+// hash of head and tail blocks, same hash of the whole content. Only files
+// which still collide get fully read, and hashes are reused from HashCache
+// while size and mtime match. Every file is taken once by device and inode,
+// so overlapping roots, path aliases or hard links never make a file its own
+// duplicate; links are not followed and hidden folders are skipped.
+public class DuplicateFinder {
+
+    public interface Listener {
+        void onProgress(int stage, long filesScanned, long candidates, long hashedBytes);
+
+        void onGroup(long size, List<String> paths);
+    }
+
+    public static final int STAGE_SCAN = 0;
+    public static final int STAGE_PARTIAL_HASH = 1;
+    public static final int STAGE_FULL_HASH = 2;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final long MAP_CHUNK_SIZE = 32L * 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private static class Candidate {
+        final String path;
+        final long size;
+        final long mtime;
+        final HashCache.Entry cached;
+        String partialHash;
+        String fullHash;
+
+        Candidate(File file, HashCache.Entry cached) {
+            this.path = file.getAbsolutePath();
+            this.size = file.length();
+            this.mtime = file.lastModified();
+            this.cached = cached;
+        }
+    }
+
+    private final List<String> paths;
+    private final long minSize;
+    private final ForkJoinPool walkPool;
+    private final ExecutorService workers;
+    private final OperationControl control;
+    private final HashCache hashCache;
+    private final Listener listener;
+
+    private final Map<Long, Queue<File>> filesBySize = new ConcurrentHashMap<>();
+    // "<st_dev>:<st_ino>" of visited folders and bucketed files
+    private final Set<String> seenDirectories = ConcurrentHashMap.newKeySet();
+    private final Set<String> seenFiles = ConcurrentHashMap.newKeySet();
+    private final LongAdder filesScanned = new LongAdder();
+    private final LongAdder hashedBytes = new LongAdder();
+    private final AtomicLong lastReportAt = new AtomicLong();
+    private final AtomicInteger groups = new AtomicInteger();
+    private final LongAdder wastedBytes = new LongAdder();
+    private volatile int stage = STAGE_SCAN;
+    private volatile long candidates = 0;
+
+    public DuplicateFinder(List<String> paths, long minSize, ForkJoinPool walkPool, ExecutorService workers,
+                           OperationControl control, HashCache hashCache, Listener listener) {
+        this.paths = paths;
+        this.minSize = Math.max(1, minSize);
+        this.walkPool = walkPool;
+        this.workers = workers;
+        this.control = control;
+        this.hashCache = hashCache;
+        this.listener = listener;
+    }
+
+    public int getGroups() {
+        return groups.get();
+    }
+
+    // Bytes which would be freed by keeping one file of every group
+    public long getWastedBytes() {
+        return wastedBytes.sum();
+    }
+
+    public void run() throws Exception {
+        lastReportAt.set(System.currentTimeMillis());
+        List<WalkTask> tasks = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            // Selected roots are followed, e.g. /sdcard is itself a link
+            StructStat stat = stat(path);
+            if (stat != null && OsConstants.S_ISDIR(stat.st_mode) && seenDirectories.add(inodeKey(stat))) {
+                tasks.add(new WalkTask(new File(path)));
+            }
+        }
+        walkPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        // Largest sizes first, they free the most space
+        List<Long> sizes = new ArrayList<>();
+        for (Map.Entry<Long, Queue<File>> bucket : filesBySize.entrySet()) {
+            if (bucket.getValue().size() > 1) {
+                sizes.add(bucket.getKey());
+            }
+        }
+        sizes.sort((a, b) -> Long.compare(b, a));
+        List<Candidate> all = new ArrayList<>();
+        List<List<Candidate>> sizeBuckets = new ArrayList<>();
+        for (Long size : sizes) {
+            List<Candidate> bucket = new ArrayList<>();
+            for (File file : filesBySize.get(size)) {
+                Candidate candidate = new Candidate(file, hashCache.get(file.getAbsolutePath(), size, file.lastModified()));
+                bucket.add(candidate);
+                all.add(candidate);
+            }
+            sizeBuckets.add(bucket);
+        }
+        filesBySize.clear();
+        candidates = all.size();
+
+        stage = STAGE_PARTIAL_HASH;
+        runAll(all, candidate -> candidate.partialHash = candidate.cached != null && candidate.cached.partialHash != null
+                ? candidate.cached.partialHash
+                : partialHash(candidate));
+
+        stage = STAGE_FULL_HASH;
+        List<Future<?>> fullHashes = new ArrayList<>();
+        for (List<Candidate> bucket : sizeBuckets) {
+            for (List<Candidate> group : groupBy(bucket, false)) {
+                if (group.get(0).size <= 2L * BLOCK_SIZE) {
+                    // Head and tail blocks already covered the whole content
+                    for (Candidate candidate : group) {
+                        candidate.fullHash = candidate.partialHash;
+                    }
+                    confirm(group);
+                    continue;
+                }
+                AtomicInteger remaining = new AtomicInteger(group.size());
+                for (Candidate candidate : group) {
+                    fullHashes.add(workers.submit(() -> {
+                        try {
+                            candidate.fullHash = candidate.cached != null && candidate.cached.fullHash != null
+                                    ? candidate.cached.fullHash
+                                    : fullHash(candidate);
+                        } finally {
+                            // The last hashed file of a group confirms it, so groups stream as they finish
+                            if (remaining.decrementAndGet() == 0 && !control.isCancelled()) {
+                                confirm(group);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+            }
+        }
+        awaitAll(fullHashes);
+        storeHashes(all);
+        listener.onProgress(stage, filesScanned.sum(), candidates, hashedBytes.sum());
+    }
+
+    private interface CandidateJob {
+        void run(Candidate candidate) throws IOException;
+    }
+
+    private void runAll(List<Candidate> candidates, CandidateJob job) throws Exception {
+        List<Future<?>> futures = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            futures.add(workers.submit(() -> {
+                job.run(candidate);
+                return null;
+            }));
+        }
+        awaitAll(futures);
+    }
+
+    private void awaitAll(List<Future<?>> futures) throws Exception {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    // Unreadable files get no hash and never join a group
+    private List<List<Candidate>> groupBy(List<Candidate> bucket, boolean full) {
+        Map<String, List<Candidate>> byHash = new HashMap<>();
+        for (Candidate candidate : bucket) {
+            String hash = full ? candidate.fullHash : candidate.partialHash;
+            if (hash != null) {
+                byHash.computeIfAbsent(hash, key -> new ArrayList<>()).add(candidate);
+            }
+        }
+        List<List<Candidate>> result = new ArrayList<>();
+        for (List<Candidate> group : byHash.values()) {
+            if (group.size() > 1) {
+                result.add(group);
+            }
+        }
+        return result;
+    }
+
+    private void confirm(List<Candidate> partialGroup) {
+        for (List<Candidate> group : groupBy(partialGroup, true)) {
+            List<String> groupPaths = new ArrayList<>(group.size());
+            for (Candidate candidate : group) {
+                groupPaths.add(candidate.path);
+            }
+            long size = group.get(0).size;
+            groups.incrementAndGet();
+            wastedBytes.add(size * (group.size() - 1));
+            listener.onGroup(size, groupPaths);
+        }
+    }
+
+    private void storeHashes(List<Candidate> all) {
+        List<HashCache.Entry> entries = new ArrayList<>();
+        for (Candidate candidate : all) {
+            if (candidate.partialHash == null) {
+                continue;
+            }
+            boolean changed = candidate.cached == null
+                    || !candidate.partialHash.equals(candidate.cached.partialHash)
+                    || (candidate.fullHash != null && !candidate.fullHash.equals(candidate.cached.fullHash));
+            if (changed) {
+                entries.add(new HashCache.Entry(candidate.path, candidate.size, candidate.mtime,
+                        candidate.partialHash, candidate.fullHash));
+            }
+        }
+        hashCache.putAll(entries);
+    }
+
+    private String partialHash(Candidate candidate) {
+        control.checkpoint();
+        try (FileInputStream inputStream = new FileInputStream(candidate.path);
+             FileChannel channel = inputStream.getChannel()) {
+            MessageDigest digest = newDigest();
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+            readBlock(channel, 0, buffer, digest);
+            if (candidate.size > BLOCK_SIZE) {
+                readBlock(channel, Math.max(BLOCK_SIZE, candidate.size - BLOCK_SIZE), buffer, digest);
+            }
+            if (candidate.size > 2L * BLOCK_SIZE) {
+                // Not the content hash, keep it apart from full hashes of small files
+                digest.update((byte) 1);
+            }
+            reportProgress();
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void readBlock(FileChannel channel, long position, ByteBuffer buffer, MessageDigest digest) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        hashedBytes.add(buffer.remaining());
+        digest.update(buffer);
+    }
+
+    // Mapped in chunks, so page cache is read without copying into Java heap
+    private String fullHash(Candidate candidate) {
+        try (FileInputStream inputStream = new FileInputStream(candidate.path);
+             FileChannel channel = inputStream.getChannel()) {
+            MessageDigest digest = newDigest();
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_CHUNK_SIZE) {
+                control.checkpoint();
+                long length = Math.min(MAP_CHUNK_SIZE, size - position);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                digest.update(mapped);
+                hashedBytes.add(length);
+                reportProgress();
+            }
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private class WalkTask extends RecursiveAction {
+        private final File directory;
+
+        WalkTask(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            control.checkpoint();
+            String[] names = directory.list();
+            if (names == null) {
+                return;
+            }
+            List<WalkTask> subdirectories = new ArrayList<>();
+            for (String name : names) {
+                File child = new File(directory, name);
+                StructStat stat = lstat(child);
+                if (stat == null || OsConstants.S_ISLNK(stat.st_mode)) {
+                    continue;
+                }
+                if (OsConstants.S_ISDIR(stat.st_mode)) {
+                    // Hidden folders are mostly caches and thumbnails of other apps
+                    if (!name.startsWith(".") && seenDirectories.add(inodeKey(stat))) {
+                        subdirectories.add(new WalkTask(child));
+                    }
+                    continue;
+                }
+                if (!OsConstants.S_ISREG(stat.st_mode)) {
+                    continue;
+                }
+                filesScanned.increment();
+                if (stat.st_size >= minSize && seenFiles.add(inodeKey(stat))) {
+                    filesBySize.computeIfAbsent(stat.st_size, key -> new ConcurrentLinkedQueue<>()).add(child);
+                }
+            }
+            reportProgress();
+            if (!subdirectories.isEmpty()) {
+                invokeAll(subdirectories);
+            }
+        }
+    }
+
+    private static StructStat lstat(File file) {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private static StructStat stat(String path) {
+        try {
+            return Os.stat(path);
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private static String inodeKey(StructStat stat) {
+        return stat.st_dev + ":" + stat.st_ino;
+    }
+
+    private void reportProgress() {
+        long now = System.currentTimeMillis();
+        long last = lastReportAt.get();
+        if (now - last >= PROGRESS_INTERVAL_MS && lastReportAt.compareAndSet(last, now)) {
+            listener.onProgress(stage, filesScanned.sum(), candidates, hashedBytes.sum());
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder result = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,477 @@
+package com.telenko.filemanager.operations;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.telenko.filemanager.archive.ArchiveExtractor;
+import com.telenko.filemanager.archive.ZipCompressor;
+import com.telenko.filemanager.directory.FileCategories;
+import com.telenko.filemanager.media.MediaStoreSync;
+import com.telenko.filemanager.storage.StorageRoots;
+import com.telenko.filemanager.storage.StorageVolumes;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+public class FileOperationsModule extends ReactContextBaseJavaModule {
+
+    private static final String PROGRESS_EVENT = "FileOperationProgress";
+    private static final String SIZE_PROGRESS_EVENT = "FileSizeProgress";
+    private static final String ANALYSIS_PROGRESS_EVENT = "StorageAnalysisProgress";
+    private static final String DUPLICATE_PROGRESS_EVENT = "DuplicateProgress";
+    private static final String DUPLICATE_GROUP_EVENT = "DuplicateGroupFound";
+    private static final String MIN_SIZE = "minSize";
+    private static final String LEVEL = "level";
+    private static final String TOP_COUNT = "topCount";
+    private static final int DEFAULT_TOP_COUNT = 20;
+    private static final String RESOLVE_CONFLICTS = "resolveConflicts";
+    private static final String CONFLICT_TEMPLATE = "conflictTemplate";
+    private static final String DEFAULT_CONFLICT_TEMPLATE = "({n})";
+    private static final String CANCELLED_CODE = "Cancelled";
+
+    private final ReactApplicationContext reactContext;
+    // Runs operation coordinators, which then fan out file work to the workers pool
+    private final ExecutorService operationsExecutor;
+    private final ExecutorService workersExecutor;
+    private final ForkJoinPool walkPool;
+    // CPU bound deflate of zip chunks, one thread per core
+    private final ExecutorService compressionExecutor;
+    private final int cores;
+    private final Map<Integer, OperationControl> operations = new ConcurrentHashMap<>();
+    private final HashCache hashCache;
+    private final File journalsDirectory;
+    // Written bytes change free space, refreshed once the operation is over
+    private final StorageVolumes storageVolumes;
+    // Written and removed paths are handed over once an operation is over, flushed in batches
+    private final MediaStoreSync mediaStoreSync;
+
+    public FileOperationsModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.reactContext = reactContext;
+        this.operationsExecutor = Executors.newCachedThreadPool();
+        this.cores = Runtime.getRuntime().availableProcessors();
+        this.workersExecutor = Executors.newFixedThreadPool(Math.max(2, Math.min(4, cores)));
+        this.walkPool = new ForkJoinPool(cores);
+        this.compressionExecutor = Executors.newFixedThreadPool(cores);
+        this.hashCache = new HashCache(reactContext);
+        this.journalsDirectory = new File(reactContext.getFilesDir(), "transfer_journals");
+        this.storageVolumes = StorageVolumes.getInstance(reactContext);
+        this.mediaStoreSync = MediaStoreSync.getInstance(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "FileOperations";
+    }
+
+    // A bridge reload creates a new module, whatever this one still runs is cancelled with it
+    @Override
+    public void invalidate() {
+        for (OperationControl control : operations.values()) {
+            control.cancel();
+        }
+        operationsExecutor.shutdown();
+        workersExecutor.shutdown();
+        walkPool.shutdown();
+        compressionExecutor.shutdown();
+        hashCache.close();
+        super.invalidate();
+    }
+
+    @ReactMethod
+    public void copy(Integer id, ReadableArray sources, String destination, ReadableMap options, Promise promise) {
+        startTransfer(id, sources, destination, options, false, promise);
+    }
+
+    @ReactMethod
+    public void move(Integer id, ReadableArray sources, String destination, ReadableMap options, Promise promise) {
+        startTransfer(id, sources, destination, options, true, promise);
+    }
+
+    // Files, links and whole folders, progress goes as FileOperationProgress
+    @ReactMethod
+    public void delete(Integer id, ReadableArray paths, Promise promise) {
+        List<String> itemPaths = toStringList(paths);
+        OperationControl control = new OperationControl();
+        operations.put(id, control);
+
+        operationsExecutor.execute(() -> {
+            try {
+                DeleteEngine engine = new DeleteEngine(itemPaths, walkPool, control,
+                        (bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond) ->
+                                sendEvent(PROGRESS_EVENT, id, transferProgressToMap(bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond)),
+                        mediaStoreSync);
+                engine.run();
+                promise.resolve(null);
+            } catch (CancellationException e) {
+                promise.reject(CANCELLED_CODE, e.getMessage());
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                storageVolumes.refreshSoon();
+                operations.remove(id);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void calculateSize(Integer id, ReadableArray paths, Promise promise) {
+        List<String> itemPaths = toStringList(paths);
+        OperationControl control = new OperationControl();
+        operations.put(id, control);
+
+        operationsExecutor.execute(() -> {
+            try {
+                SizeCalculator calculator = new SizeCalculator(itemPaths, walkPool, control,
+                        (bytes, files, directories) -> sendEvent(SIZE_PROGRESS_EVENT, id, sizeToMap(bytes, files, directories)));
+                calculator.run();
+                promise.resolve(sizeToMap(calculator.getBytes(), calculator.getFiles(), calculator.getDirectories()));
+            } catch (CancellationException e) {
+                promise.reject(CANCELLED_CODE, e.getMessage());
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                operations.remove(id);
+            }
+        });
+    }
+
+    // Largest files/folders and bytes per category, partial results are streamed as progress
+    @ReactMethod
+    public void analyzeStorage(Integer id, String path, ReadableMap options, Promise promise) {
+        int topCount = options.hasKey(TOP_COUNT) ? options.getInt(TOP_COUNT) : DEFAULT_TOP_COUNT;
+        OperationControl control = new OperationControl();
+        operations.put(id, control);
+
+        operationsExecutor.execute(() -> {
+            try {
+                StorageAnalyzer analyzer = new StorageAnalyzer(path, topCount, walkPool, control,
+                        progress -> sendEvent(ANALYSIS_PROGRESS_EVENT, id, analysisToMap(progress)));
+                analyzer.run();
+                promise.resolve(analysisToMap(analyzer));
+            } catch (CancellationException e) {
+                promise.reject(CANCELLED_CODE, e.getMessage());
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                operations.remove(id);
+            }
+        });
+    }
+
+    // Zips files and folders into a new archive, progress goes as FileOperationProgress
+    @ReactMethod
+    public void compress(Integer id, ReadableArray sources, String destination, ReadableMap options, Promise promise) {
+        int level = options.hasKey(LEVEL) ? options.getInt(LEVEL) : Deflater.DEFAULT_COMPRESSION;
+        List<String> sourcePaths = toStringList(sources);
+        OperationControl control = new OperationControl();
+        operations.put(id, control);
+
+        operationsExecutor.execute(() -> {
+            try {
+                ZipCompressor compressor = new ZipCompressor(sourcePaths, destination, level, compressionExecutor, cores, control,
+                        (bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond) ->
+                                sendEvent(PROGRESS_EVENT, id, transferProgressToMap(bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond)));
+                compressor.run();
+                mediaStoreSync.scan(Collections.singletonList(destination));
+                promise.resolve(null);
+            } catch (CancellationException e) {
+                promise.reject(CANCELLED_CODE, e.getMessage());
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                storageVolumes.refreshSoon();
+                operations.remove(id);
+            }
+        });
+    }
+
+    // Empty entries list extracts the whole archive, progress goes as FileOperationProgress
+    @ReactMethod
+    public void extractArchive(Integer id, String archivePath, ReadableArray entries, String destination, ReadableMap options, Promise promise) {
+        boolean resolveConflicts = options.hasKey(RESOLVE_CONFLICTS) && options.getBoolean(RESOLVE_CONFLICTS);
+        String conflictTemplate = options.hasKey(CONFLICT_TEMPLATE) ? options.getString(CONFLICT_TEMPLATE) : DEFAULT_CONFLICT_TEMPLATE;
+        List<String> entryPaths = toStringList(entries);
+        OperationControl control = new OperationControl();
+        operations.put(id, control);
+
+        operationsExecutor.execute(() -> {
+            ArchiveExtractor extractor = null;
+            try {
+                extractor = new ArchiveExtractor(archivePath, entryPaths, destination, resolveConflicts,
+                        conflictTemplate, control,
+                        (bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond) ->
+                                sendEvent(PROGRESS_EVENT, id, transferProgressToMap(bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond)));
+                extractor.run();
+                promise.resolve(null);
+            } catch (CancellationException e) {
+                promise.reject(CANCELLED_CODE, e.getMessage());
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                if (extractor != null) {
+                    extractor.syncMediaStore(mediaStoreSync);
+                }
+                storageVolumes.refreshSoon();
+                operations.remove(id);
+            }
+        });
+    }
+
+    // Groups are sent as DuplicateGroupFound events once confirmed, largest sizes first
+    @ReactMethod
+    public void findDuplicates(Integer id, ReadableArray paths, ReadableMap options, Promise promise) {
+        long minSize = options.hasKey(MIN_SIZE) ? (long) options.getDouble(MIN_SIZE) : 1;
+        List<String> itemPaths = toStringList(paths);
+        OperationControl control = new OperationControl();
+        operations.put(id, control);
+
+        operationsExecutor.execute(() -> {
+            try {
+                DuplicateFinder finder = new DuplicateFinder(itemPaths, minSize, walkPool, workersExecutor, control, hashCache,
+                        new DuplicateFinder.Listener() {
+                            @Override
+                            public void onProgress(int stage, long filesScanned, long candidates, long hashedBytes) {
+                                WritableMap params = Arguments.createMap();
+                                params.putInt("stage", stage);
+                                params.putDouble("filesScanned", (double) filesScanned);
+                                params.putDouble("candidates", (double) candidates);
+                                params.putDouble("hashedBytes", (double) hashedBytes);
+                                sendEvent(DUPLICATE_PROGRESS_EVENT, id, params);
+                            }
+
+                            @Override
+                            public void onGroup(long size, List<String> groupPaths) {
+                                WritableMap params = Arguments.createMap();
+                                params.putDouble("size", (double) size);
+                                params.putArray("paths", Arguments.fromList(groupPaths));
+                                sendEvent(DUPLICATE_GROUP_EVENT, id, params);
+                            }
+                        });
+                finder.run();
+                WritableMap result = Arguments.createMap();
+                result.putInt("groups", finder.getGroups());
+                result.putDouble("wastedBytes", (double) finder.getWastedBytes());
+                promise.resolve(result);
+            } catch (CancellationException e) {
+                promise.reject(CANCELLED_CODE, e.getMessage());
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                operations.remove(id);
+            }
+        });
+    }
+
+    // Number of transfers the process died in the middle of
+    @ReactMethod
+    public void getInterruptedTransfers(Promise promise) {
+        promise.resolve(TransferJournal.listInterrupted(journalsDirectory).size());
+    }
+
+    // Resumes interrupted transfers one by one. Those which cannot continue,
+    // e.g. a source is gone, or which are cancelled, are rolled back instead.
+    @ReactMethod
+    public void recoverTransfers(Integer id, Promise promise) {
+        OperationControl control = new OperationControl();
+        operations.put(id, control);
+
+        operationsExecutor.execute(() -> {
+            int resumed = 0;
+            int rolledBack = 0;
+            TransferService.begin(reactContext);
+            try {
+                for (TransferJournal journal : TransferJournal.claimInterrupted(journalsDirectory)) {
+                    try {
+                        TransferEngine engine = TransferEngine.resume(journal, workersExecutor, control, transferListener(id));
+                        engine.run();
+                        // Rolled back transfers leave the files where MediaStore already has them
+                        engine.syncMediaStore(mediaStoreSync);
+                        resumed++;
+                    } catch (Exception e) {
+                        Log.w("FileOperations", "Rolling back interrupted transfer " + journal.id, e);
+                        try {
+                            TransferRollback.run(journal);
+                        } catch (Exception rollbackError) {
+                            Log.e("FileOperations", "Failed to roll back transfer " + journal.id, rollbackError);
+                        }
+                        rolledBack++;
+                    } finally {
+                        journal.delete();
+                    }
+                }
+                WritableMap result = Arguments.createMap();
+                result.putInt("resumed", resumed);
+                result.putInt("rolledBack", rolledBack);
+                promise.resolve(result);
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                TransferService.end();
+                storageVolumes.refreshSoon();
+                operations.remove(id);
+            }
+        });
+    }
+
+    // For changes made outside these operations, e.g. a delete through RNFS.
+    // Removed paths drop their rows and those below, written ones are scanned with their content.
+    @ReactMethod
+    public void notifyMediaChanged(ReadableArray removedPaths, ReadableArray writtenPaths) {
+        for (String path : toStringList(removedPaths)) {
+            mediaStoreSync.removeTree(path);
+        }
+        for (String path : toStringList(writtenPaths)) {
+            mediaStoreSync.scanTree(path);
+        }
+    }
+
+    @ReactMethod
+    public void cancel(Integer id) {
+        OperationControl control = operations.get(id);
+        if (control != null) {
+            control.cancel();
+        }
+    }
+
+    @ReactMethod
+    public void pause(Integer id) {
+        OperationControl control = operations.get(id);
+        if (control != null) {
+            control.pause();
+        }
+    }
+
+    @ReactMethod
+    public void resume(Integer id) {
+        OperationControl control = operations.get(id);
+        if (control != null) {
+            control.resume();
+        }
+    }
+
+    private void startTransfer(Integer id, ReadableArray sources, String destination, ReadableMap options, boolean move, Promise promise) {
+        boolean resolveConflicts = options.hasKey(RESOLVE_CONFLICTS) && options.getBoolean(RESOLVE_CONFLICTS);
+        String conflictTemplate = options.hasKey(CONFLICT_TEMPLATE) ? options.getString(CONFLICT_TEMPLATE) : DEFAULT_CONFLICT_TEMPLATE;
+        List<String> sourcePaths = toStringList(sources);
+        List<String> volumeRoots = StorageRoots.list(reactContext);
+        OperationControl control = new OperationControl();
+        operations.put(id, control);
+
+        operationsExecutor.execute(() -> {
+            // Left on disk only when the process dies, see recoverTransfers
+            TransferJournal journal = TransferJournal.create(journalsDirectory);
+            TransferService.begin(reactContext);
+            TransferEngine engine = null;
+            try {
+                engine = new TransferEngine(sourcePaths, destination, move, resolveConflicts, conflictTemplate,
+                        volumeRoots, workersExecutor, control, transferListener(id), journal);
+                engine.run();
+                promise.resolve(null);
+            } catch (CancellationException e) {
+                promise.reject(CANCELLED_CODE, e.getMessage());
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                if (engine != null) {
+                    engine.syncMediaStore(mediaStoreSync);
+                }
+                journal.delete();
+                TransferService.end();
+                storageVolumes.refreshSoon();
+                operations.remove(id);
+            }
+        });
+    }
+
+    private TransferEngine.Listener transferListener(Integer id) {
+        return (bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond) -> {
+            TransferService.updateProgress(reactContext, bytesDone, bytesTotal);
+            sendEvent(PROGRESS_EVENT, id, transferProgressToMap(bytesDone, bytesTotal, filesDone, filesTotal, bytesPerSecond));
+        };
+    }
+
+    private WritableMap transferProgressToMap(long bytesDone, long bytesTotal, int filesDone, int filesTotal, long bytesPerSecond) {
+        WritableMap params = Arguments.createMap();
+        params.putDouble("bytesDone", (double) bytesDone);
+        params.putDouble("bytesTotal", (double) bytesTotal);
+        params.putInt("filesDone", filesDone);
+        params.putInt("filesTotal", filesTotal);
+        params.putDouble("bytesPerSecond", (double) bytesPerSecond);
+        return params;
+    }
+
+    private WritableMap sizeToMap(long bytes, long files, long directories) {
+        WritableMap result = Arguments.createMap();
+        result.putDouble("bytes", (double) bytes);
+        result.putDouble("files", (double) files);
+        result.putDouble("directories", (double) directories);
+        return result;
+    }
+
+    private WritableMap analysisToMap(StorageAnalyzer analyzer) {
+        WritableMap result = Arguments.createMap();
+        result.putDouble("bytes", (double) analyzer.getBytes());
+        result.putDouble("files", (double) analyzer.getFiles());
+        WritableMap categories = Arguments.createMap();
+        for (int i = 0; i < FileCategories.ALL.length; i++) {
+            categories.putDouble(FileCategories.ALL[i], (double) analyzer.getCategoryBytes(i));
+        }
+        result.putMap("categories", categories);
+        result.putArray("largestFiles", itemsToArray(analyzer.getLargestFiles()));
+        result.putArray("largestDirectories", itemsToArray(analyzer.getLargestDirectories()));
+        return result;
+    }
+
+    private WritableArray itemsToArray(List<StorageAnalyzer.Item> items) {
+        WritableArray result = Arguments.createArray();
+        for (StorageAnalyzer.Item item : items) {
+            WritableMap map = Arguments.createMap();
+            map.putString("path", item.path);
+            map.putDouble("size", (double) item.size);
+            result.pushMap(map);
+        }
+        return result;
+    }
+
+    private List<String> toStringList(ReadableArray array) {
+        List<String> result = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            result.add(array.getString(i));
+        }
+        return result;
+    }
+
+    private void sendEvent(String eventName, Integer id, WritableMap params) {
+        params.putInt("id", id);
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(eventName, params);
+    }
+
+    @ReactMethod
+    public void addListener(String eventName) { }
+
+    @ReactMethod
+    public void removeListeners(Integer count) { }
+}
@@ -0,0 +1,90 @@
+package com.telenko.filemanager.operations;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.List;
+
+// Persistent hashes of files keyed by path, size and mtime, so rescans of
+// unchanged files read nothing from storage. Partial hash covers head and
+// tail blocks only, full hash the whole content.
+public class HashCache extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "hash_cache.db";
+    private static final int DATABASE_VERSION = 1;
+
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final long mtime;
+        public final String partialHash;
+        public final String fullHash;
+
+        public Entry(String path, long size, long mtime, String partialHash, String fullHash) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.partialHash = partialHash;
+            this.fullHash = fullHash;
+        }
+    }
+
+    public HashCache(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE hashes ("
+                + "path TEXT PRIMARY KEY, "
+                + "size INTEGER NOT NULL, "
+                + "mtime INTEGER NOT NULL, "
+                + "partial_hash TEXT, "
+                + "full_hash TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS hashes");
+        onCreate(db);
+    }
+
+    // Cached hashes, or null when the file changed since they were computed
+    public Entry get(String path, long size, long mtime) {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT partial_hash, full_hash FROM hashes WHERE path = ? AND size = ? AND mtime = ?",
+                new String[]{path, String.valueOf(size), String.valueOf(mtime)})) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new Entry(path, size, mtime, cursor.getString(0), cursor.getString(1));
+        }
+    }
+
+    // One transaction for a whole stage instead of a commit per file
+    public void putAll(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Entry entry : entries) {
+                ContentValues values = new ContentValues();
+                values.put("path", entry.path);
+                values.put("size", entry.size);
+                values.put("mtime", entry.mtime);
+                values.put("partial_hash", entry.partialHash);
+                values.put("full_hash", entry.fullHash);
+                db.insertWithOnConflict("hashes", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.telenko.filemanager.operations;
+
+import java.util.concurrent.CancellationException;
+
+// Cancel/pause switch shared between an operation and its worker threads
+public class OperationControl {
+
+    private volatile boolean cancelled = false;
+    private boolean paused = false;
+
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            paused = false;
+            notifyAll();
+        }
+    }
+
+    public synchronized void pause() {
+        if (!cancelled) {
+            paused = true;
+        }
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    // Called by workers between units of work: blocks while paused, throws once cancelled
+    public void checkpoint() {
+        if (cancelled) {
+            throw new CancellationException("Operation was cancelled");
+        }
+        synchronized (this) {
+            while (paused && !cancelled) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Operation was interrupted");
+                }
+            }
+        }
+        if (cancelled) {
+            throw new CancellationException("Operation was cancelled");
+        }
+    }
+}
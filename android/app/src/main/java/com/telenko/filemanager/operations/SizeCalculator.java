@@ -0,0 +1,141 @@
+package com.telenko.filemanager.operations;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Sums sizes of files/folders with a fork-join walk, one task per folder.
+// Selected paths are followed, links found inside folders are skipped rather than
+// followed, so a link loop cannot keep the walk going and a linked tree is not counted twice.
+public class SizeCalculator {
+
+    public interface Listener {
+        void onProgress(long bytes, long files, long directories);
+    }
+
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private final List<String> paths;
+    private final ForkJoinPool pool;
+    private final OperationControl control;
+    private final Listener listener;
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final AtomicLong lastReportAt = new AtomicLong();
+
+    public SizeCalculator(List<String> paths, ForkJoinPool pool, OperationControl control, Listener listener) {
+        this.paths = paths;
+        this.pool = pool;
+        this.control = control;
+        this.listener = listener;
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getFiles() {
+        return files.sum();
+    }
+
+    public long getDirectories() {
+        return directories.sum();
+    }
+
+    public void run() {
+        lastReportAt.set(System.currentTimeMillis());
+        List<WalkTask> tasks = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            File file = new File(path);
+            StructStat stat = stat(file);
+            if (stat == null) {
+                continue;
+            }
+            if (OsConstants.S_ISDIR(stat.st_mode)) {
+                tasks.add(new WalkTask(file));
+            } else {
+                bytes.add(stat.st_size);
+                files.increment();
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        listener.onProgress(getBytes(), getFiles(), getDirectories());
+    }
+
+    private class WalkTask extends RecursiveAction {
+        private final File directory;
+
+        WalkTask(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            control.checkpoint();
+            directories.increment();
+            String[] names = directory.list();
+            if (names == null) {
+                return;
+            }
+            // Plain files are summed in place, only folders are forked
+            List<WalkTask> subdirectories = new ArrayList<>();
+            for (String name : names) {
+                File child = new File(directory, name);
+                StructStat stat = lstat(child);
+                if (stat == null || OsConstants.S_ISLNK(stat.st_mode)) {
+                    continue;
+                }
+                if (OsConstants.S_ISDIR(stat.st_mode)) {
+                    subdirectories.add(new WalkTask(child));
+                } else {
+                    bytes.add(stat.st_size);
+                    files.increment();
+                }
+            }
+            reportProgress();
+            if (!subdirectories.isEmpty()) {
+                invokeAll(subdirectories);
+            }
+        }
+    }
+
+    private static StructStat stat(File file) {
+        try {
+            return Os.stat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private static StructStat lstat(File file) {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private void reportProgress() {
+        long now = System.currentTimeMillis();
+        long last = lastReportAt.get();
+        if (now - last >= PROGRESS_INTERVAL_MS && lastReportAt.compareAndSet(last, now)) {
+            listener.onProgress(getBytes(), getFiles(), getDirectories());
+        }
+    }
+}
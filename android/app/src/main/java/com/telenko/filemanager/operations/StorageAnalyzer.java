@@ -0,0 +1,202 @@
+package com.telenko.filemanager.operations;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import com.telenko.filemanager.directory.FileCategories;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Walks a storage with fork-join like SizeCalculator, additionally keeping the
+// largest files and folders in bounded heaps and summing bytes per category.
+// A folder enters the ranking once its whole subtree is summed. Links are
+// skipped like in SizeCalculator, so nothing is counted or ranked twice.
+public class StorageAnalyzer {
+
+    public interface Listener {
+        void onProgress(StorageAnalyzer analyzer);
+    }
+
+    public static class Item {
+        public final String path;
+        public final long size;
+
+        Item(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    // Min-heap of at most `capacity` items, smallest one is evicted first
+    private static class TopItems {
+        private final int capacity;
+        private final PriorityQueue<Item> heap;
+        // Size an item has to exceed once the heap is full, read without the lock
+        private volatile long threshold = -1;
+
+        TopItems(int capacity) {
+            this.capacity = capacity;
+            this.heap = new PriorityQueue<>(capacity + 1, (a, b) -> Long.compare(a.size, b.size));
+        }
+
+        void offer(String path, long size) {
+            if (capacity <= 0 || size <= threshold) {
+                return;
+            }
+            synchronized (this) {
+                heap.offer(new Item(path, size));
+                if (heap.size() > capacity) {
+                    heap.poll();
+                }
+                if (heap.size() == capacity) {
+                    threshold = heap.peek().size;
+                }
+            }
+        }
+
+        synchronized List<Item> snapshot() {
+            List<Item> items = new ArrayList<>(heap);
+            Collections.sort(items, (a, b) -> Long.compare(b.size, a.size));
+            return items;
+        }
+    }
+
+    private final String path;
+    private final ForkJoinPool pool;
+    private final OperationControl control;
+    private final Listener listener;
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder[] categoryBytes = new LongAdder[FileCategories.ALL.length];
+    private final TopItems largestFiles;
+    private final TopItems largestDirectories;
+    private final AtomicLong lastReportAt = new AtomicLong();
+
+    public StorageAnalyzer(String path, int topCount, ForkJoinPool pool, OperationControl control, Listener listener) {
+        this.path = path;
+        this.pool = pool;
+        this.control = control;
+        this.listener = listener;
+        this.largestFiles = new TopItems(topCount);
+        this.largestDirectories = new TopItems(topCount);
+        for (int i = 0; i < categoryBytes.length; i++) {
+            categoryBytes[i] = new LongAdder();
+        }
+    }
+
+    public void run() {
+        lastReportAt.set(System.currentTimeMillis());
+        pool.invoke(new WalkTask(new File(path), true));
+        listener.onProgress(this);
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getFiles() {
+        return files.sum();
+    }
+
+    public long getCategoryBytes(int categoryIndex) {
+        return categoryBytes[categoryIndex].sum();
+    }
+
+    public List<Item> getLargestFiles() {
+        return largestFiles.snapshot();
+    }
+
+    public List<Item> getLargestDirectories() {
+        return largestDirectories.snapshot();
+    }
+
+    private class WalkTask extends RecursiveTask<Long> {
+        private final File directory;
+        private final boolean root;
+
+        WalkTask(File directory, boolean root) {
+            this.directory = directory;
+            this.root = root;
+        }
+
+        @Override
+        protected Long compute() {
+            control.checkpoint();
+            String[] names = directory.list();
+            if (names == null) {
+                return 0L;
+            }
+            long total = 0;
+            List<WalkTask> subdirectories = new ArrayList<>();
+            for (String name : names) {
+                File child = new File(directory, name);
+                StructStat stat = lstat(child);
+                if (stat == null || OsConstants.S_ISLNK(stat.st_mode)) {
+                    continue;
+                }
+                if (OsConstants.S_ISDIR(stat.st_mode)) {
+                    subdirectories.add(new WalkTask(child, false));
+                } else {
+                    total += stat.st_size;
+                    addFile(child, stat.st_size);
+                }
+            }
+            reportProgress();
+            if (!subdirectories.isEmpty()) {
+                invokeAll(subdirectories);
+                for (WalkTask subdirectory : subdirectories) {
+                    total += subdirectory.join();
+                }
+            }
+            if (!root) {
+                largestDirectories.offer(directory.getAbsolutePath(), total);
+            }
+            return total;
+        }
+    }
+
+    private void addFile(File file, long size) {
+        bytes.add(size);
+        files.increment();
+        categoryBytes[categoryIndex(FileCategories.of(file.getName()))].add(size);
+        largestFiles.offer(file.getAbsolutePath(), size);
+    }
+
+    private static StructStat lstat(File file) {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private static int categoryIndex(String category) {
+        for (int i = 0; i < FileCategories.ALL.length; i++) {
+            if (FileCategories.ALL[i].equals(category)) {
+                return i;
+            }
+        }
+        return FileCategories.ALL.length - 1;
+    }
+
+    private void reportProgress() {
+        long now = System.currentTimeMillis();
+        long last = lastReportAt.get();
+        if (now - last >= PROGRESS_INTERVAL_MS && lastReportAt.compareAndSet(last, now)) {
+            listener.onProgress(this);
+        }
+    }
+}
@@ -0,0 +1,559 @@
+package com.telenko.filemanager.operations;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import com.telenko.filemanager.media.MediaStoreSync;
+import com.telenko.filemanager.storage.StorageRoots;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Copies or moves a list of files/folders natively: walks the trees once,
+// resolves name conflicts, then streams file contents on a worker pool.
+// Moves within one storage volume are done as a single rename of the whole item.
+// Links inside folders are recreated at the target, never followed.
+// With a journal, the plan and completed work are recorded, so a transfer
+// interrupted by process death can be resumed or rolled back on next launch.
+public class TransferEngine {
+
+    public interface Listener {
+        void onProgress(long bytesDone, long bytesTotal, int filesDone, int filesTotal, long bytesPerSecond);
+    }
+
+    private static final long TRANSFER_CHUNK_BYTES = 8 * 1024 * 1024;
+    // Files at least this large also journal their copied offset after every chunk
+    private static final long JOURNAL_OFFSET_MIN_SIZE = 4 * TRANSFER_CHUNK_BYTES;
+    private static final int COPY_BUFFER_BYTES = 256 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final String COUNTER_PLACEHOLDER = "{n}";
+
+    private static class FileJob {
+        final File source;
+        final File target;
+        final long size;
+        final int index;
+        // Bytes of the target written by an interrupted run
+        long offset = 0;
+        boolean done = false;
+
+        FileJob(File source, File target, long size, int index) {
+            this.source = source;
+            this.target = target;
+            this.size = size;
+            this.index = index;
+        }
+    }
+
+    private final List<String> sources;
+    private final String destination;
+    private final boolean move;
+    private final boolean resolveConflicts;
+    private final String conflictTemplate;
+    private final List<String> volumeRoots;
+    private final ExecutorService workers;
+    private final OperationControl control;
+    private final Listener listener;
+    private final TransferJournal journal;
+
+    private final List<File> directoriesToCreate = new ArrayList<>();
+    private final List<File> sourceDirectories = new ArrayList<>();
+    private final List<FileJob> fileJobs = new ArrayList<>();
+    // Symbolic links as source/target pairs
+    private final List<File[]> links = new ArrayList<>();
+    private final Set<String> reservedTargets = new HashSet<>();
+    // Same volume moves, renamed only once every source is planned and the plan is journaled
+    private final List<File[]> pendingMoves = new ArrayList<>();
+    // Renamed by this run
+    private final List<File[]> atomicMoves = new ArrayList<>();
+    private int movedAtomically = 0;
+    private boolean restored = false;
+
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicLong lastReportAt = new AtomicLong();
+    private final AtomicLong lastReportBytes = new AtomicLong();
+    private long bytesTotal = 0;
+
+    public TransferEngine(List<String> sources, String destination, boolean move, boolean resolveConflicts,
+                          String conflictTemplate, List<String> volumeRoots, ExecutorService workers,
+                          OperationControl control, Listener listener, TransferJournal journal) {
+        this.sources = sources;
+        this.destination = destination;
+        this.move = move;
+        this.resolveConflicts = resolveConflicts;
+        this.conflictTemplate = conflictTemplate;
+        this.volumeRoots = volumeRoots;
+        this.workers = workers;
+        this.control = control;
+        this.listener = listener;
+        this.journal = journal;
+    }
+
+    // Continues a transfer interrupted by process death, skipping what its journal marks as done
+    public static TransferEngine resume(TransferJournal journal, ExecutorService workers, OperationControl control,
+                                        Listener listener) throws IOException {
+        TransferJournal.Plan plan = journal.readPlan();
+        TransferEngine engine = new TransferEngine(Collections.emptyList(), null, plan.move, false, null,
+                Collections.emptyList(), workers, control, listener, journal);
+        engine.restore(plan, journal.readProgress(plan.jobs.size()));
+        return engine;
+    }
+
+    public void run() throws Exception {
+        if (!restored) {
+            plan();
+            // Journaled first, a kill during the renames must find them in the plan
+            if (journal != null) {
+                journal.writePlan(toJournalPlan());
+            }
+            if (renamePendingMoves() && journal != null) {
+                // Renames fell back to copying, their files join the plan
+                journal.writePlan(toJournalPlan());
+            }
+        } else {
+            renameRestoredMoves();
+        }
+        lastReportAt.set(System.currentTimeMillis());
+        reportProgress(true);
+
+        for (File directory : directoriesToCreate) {
+            control.checkpoint();
+            if (!directory.mkdir() && !directory.isDirectory()) {
+                throw new IOException("Failed to create folder " + directory.getAbsolutePath());
+            }
+        }
+
+        transferLinks();
+        transferFiles();
+
+        if (move) {
+            // Children were appended after their parents, so walk backwards
+            for (int i = sourceDirectories.size() - 1; i >= 0; i--) {
+                File directory = sourceDirectories.get(i);
+                if (!directory.delete() && directory.exists()) {
+                    throw new IOException("Failed to remove folder " + directory.getAbsolutePath());
+                }
+            }
+        }
+        reportProgress(true);
+    }
+
+    // Hands what this run wrote and removed to MediaStore, also after it failed half way
+    public void syncMediaStore(MediaStoreSync sync) {
+        List<String> written = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (FileJob job : fileJobs) {
+            if (job.done) {
+                written.add(job.target.getAbsolutePath());
+                if (move) {
+                    removed.add(job.source.getAbsolutePath());
+                }
+            }
+        }
+        if (move) {
+            for (File directory : sourceDirectories) {
+                if (!directory.exists()) {
+                    removed.add(directory.getAbsolutePath());
+                }
+            }
+            sync.remove(removed);
+        }
+        sync.scan(written);
+        for (File[] moved : atomicMoves) {
+            sync.removeTree(moved[0].getAbsolutePath());
+            sync.scanTree(moved[1].getAbsolutePath());
+        }
+    }
+
+    private void plan() throws IOException {
+        File destinationFile = new File(destination);
+        boolean intoDirectory = destinationFile.isDirectory();
+        if (!intoDirectory && sources.size() > 1) {
+            throw new IOException("Destination folder is not valid");
+        }
+
+        for (String sourcePath : sources) {
+            control.checkpoint();
+            File source = new File(sourcePath);
+            if (!source.exists()) {
+                throw new FileNotFoundException("Source does not exist: " + sourcePath);
+            }
+            File target = intoDirectory ? new File(destinationFile, source.getName()) : destinationFile;
+            if (isTaken(target)) {
+                if (!resolveConflicts) {
+                    throw new IOException("Destination already exists: " + target.getAbsolutePath());
+                }
+                target = resolveConflict(target);
+            }
+            String sourceCanonical = source.getCanonicalPath();
+            String targetCanonical = target.getCanonicalPath();
+            if (targetCanonical.equals(sourceCanonical) || targetCanonical.startsWith(sourceCanonical + File.separator)) {
+                throw new IOException("Cannot place a folder inside itself: " + sourcePath);
+            }
+            reservedTargets.add(target.getAbsolutePath());
+            if (move && StorageRoots.isSameVolume(volumeRoots, sourceCanonical, targetCanonical)) {
+                pendingMoves.add(new File[]{source, target});
+                continue;
+            }
+            planRoot(source, target);
+        }
+    }
+
+    // Nothing is renamed before all sources passed the checks, so a bad one leaves the selection untouched.
+    // Returns whether some rename was refused and its item planned for copying instead.
+    private boolean renamePendingMoves() {
+        boolean fellBack = false;
+        Iterator<File[]> iterator = pendingMoves.iterator();
+        while (iterator.hasNext()) {
+            File[] pending = iterator.next();
+            control.checkpoint();
+            if (moveAtomically(pending[0], pending[1])) {
+                movedAtomically++;
+                atomicMoves.add(pending);
+                filesDone.incrementAndGet();
+            } else {
+                iterator.remove();
+                planRoot(pending[0], pending[1]);
+                fellBack = true;
+            }
+        }
+        return fellBack;
+    }
+
+    // Journaled renames the kill may have come before, a rename failing now rolls the transfer back
+    private void renameRestoredMoves() throws IOException {
+        for (File[] pending : pendingMoves) {
+            control.checkpoint();
+            File source = pending[0];
+            File target = pending[1];
+            boolean renamed = !source.exists() && target.exists();
+            if (!renamed && (target.exists() || !moveAtomically(source, target))) {
+                throw new IOException("Failed to move " + source.getAbsolutePath());
+            }
+            atomicMoves.add(pending);
+        }
+    }
+
+    // A selected link is followed when copying, a move moves the link itself and never what it points to
+    private void planRoot(File source, File target) {
+        planItem(source, target, move ? lstat(source) : stat(source));
+    }
+
+    private void planItem(File source, File target, StructStat stat) {
+        if (stat == null) {
+            // Removed since it was listed
+            return;
+        }
+        if (OsConstants.S_ISLNK(stat.st_mode)) {
+            links.add(new File[]{source, target});
+        } else if (OsConstants.S_ISDIR(stat.st_mode)) {
+            directoriesToCreate.add(target);
+            sourceDirectories.add(source);
+            File[] children = source.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                control.checkpoint();
+                planItem(child, new File(target, child.getName()), lstat(child));
+            }
+        } else if (OsConstants.S_ISREG(stat.st_mode)) {
+            bytesTotal += stat.st_size;
+            fileJobs.add(new FileJob(source, target, stat.st_size, fileJobs.size()));
+        }
+        // Pipes, sockets and devices are left where they are
+    }
+
+    private TransferJournal.Plan toJournalPlan() {
+        TransferJournal.Plan plan = new TransferJournal.Plan(move);
+        for (File directory : directoriesToCreate) {
+            plan.directoriesToCreate.add(directory.getAbsolutePath());
+        }
+        for (File directory : sourceDirectories) {
+            plan.sourceDirectories.add(directory.getAbsolutePath());
+        }
+        for (File[] moved : pendingMoves) {
+            plan.atomicMoves.add(new String[]{moved[0].getAbsolutePath(), moved[1].getAbsolutePath()});
+        }
+        for (FileJob job : fileJobs) {
+            plan.jobs.add(new TransferJournal.Job(job.source.getAbsolutePath(), job.target.getAbsolutePath(), job.size));
+        }
+        for (File[] link : links) {
+            plan.links.add(new String[]{link[0].getAbsolutePath(), link[1].getAbsolutePath()});
+        }
+        return plan;
+    }
+
+    private void restore(TransferJournal.Plan plan, long[] offsets) {
+        restored = true;
+        for (String directory : plan.directoriesToCreate) {
+            directoriesToCreate.add(new File(directory));
+        }
+        for (String directory : plan.sourceDirectories) {
+            sourceDirectories.add(new File(directory));
+        }
+        for (String[] moved : plan.atomicMoves) {
+            pendingMoves.add(new File[]{new File(moved[0]), new File(moved[1])});
+        }
+        for (String[] link : plan.links) {
+            links.add(new File[]{new File(link[0]), new File(link[1])});
+        }
+        movedAtomically = plan.atomicMoves.size();
+        filesDone.set(movedAtomically);
+        long done = 0;
+        for (int i = 0; i < plan.jobs.size(); i++) {
+            TransferJournal.Job planned = plan.jobs.get(i);
+            FileJob job = new FileJob(new File(planned.source), new File(planned.target), planned.size, i);
+            fileJobs.add(job);
+            bytesTotal += job.size;
+            // A move killed between removing the source and journaling it is complete as well
+            if (offsets[i] == TransferJournal.DONE || (move && !job.source.exists() && job.target.exists())) {
+                job.done = true;
+                filesDone.incrementAndGet();
+                done += job.size;
+            } else if (offsets[i] > 0 && job.target.length() >= offsets[i]) {
+                job.offset = offsets[i];
+                done += job.offset;
+            }
+        }
+        bytesDone.set(done);
+        lastReportBytes.set(done);
+    }
+
+    // Falls back to copying when rename is refused, e.g. target is a different mount under the same root
+    private boolean moveAtomically(File source, File target) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                return false;
+            }
+        }
+        return source.renameTo(target);
+    }
+
+    private boolean isTaken(File target) {
+        return isTaken(target, reservedTargets);
+    }
+
+    private File resolveConflict(File target) {
+        return resolveConflict(target, conflictTemplate, reservedTargets);
+    }
+
+    // Exists on disk, or already picked as target of an earlier item of the same operation
+    public static boolean isTaken(File target, Set<String> reservedTargets) {
+        return target.exists() || reservedTargets.contains(target.getAbsolutePath());
+    }
+
+    // "photo.jpg" -> "photo (Copy 1).jpg", same format as FileApi's JS conflict resolver
+    public static File resolveConflict(File target, String conflictTemplate, Set<String> reservedTargets) {
+        String name = target.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int n = 1; ; n++) {
+            String suffix = conflictTemplate.replace(COUNTER_PLACEHOLDER, String.valueOf(n));
+            File candidate = new File(target.getParentFile(), base + " " + suffix + extension);
+            if (!isTaken(candidate, reservedTargets)) {
+                return candidate;
+            }
+        }
+    }
+
+    // Recreated with the same, possibly relative, link text. Each step checks first,
+    // so a resumed transfer skips what the killed one already did.
+    private void transferLinks() throws IOException {
+        for (File[] link : links) {
+            control.checkpoint();
+            File source = link[0];
+            File target = link[1];
+            if (lstat(target) == null) {
+                try {
+                    Os.symlink(Os.readlink(source.getPath()), target.getPath());
+                } catch (ErrnoException e) {
+                    throw new IOException("Failed to create link " + target.getAbsolutePath(), e);
+                }
+            }
+            if (move && lstat(source) != null && !source.delete()) {
+                throw new IOException("Failed to remove " + source.getAbsolutePath());
+            }
+        }
+    }
+
+    private void transferFiles() throws Exception {
+        List<Future<?>> futures = new ArrayList<>(fileJobs.size());
+        for (FileJob job : fileJobs) {
+            if (job.done) {
+                continue;
+            }
+            futures.add(workers.submit(() -> {
+                transferFile(job);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // Stop the rest of the batch, the first failure is what gets reported
+            control.cancel();
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void transferFile(FileJob job) throws IOException {
+        control.checkpoint();
+        if (move && job.offset == 0 && job.source.renameTo(job.target)) {
+            onBytesTransferred(job.size);
+            filesDone.incrementAndGet();
+            markDone(job);
+            return;
+        }
+        try {
+            copyFile(job);
+        } catch (IOException | CancellationException e) {
+            job.target.delete();
+            throw e;
+        }
+        if (move && !job.source.delete()) {
+            throw new IOException("Failed to remove " + job.source.getAbsolutePath());
+        }
+        filesDone.incrementAndGet();
+        markDone(job);
+        reportProgress(false);
+    }
+
+    private void markDone(FileJob job) throws IOException {
+        job.done = true;
+        if (journal != null) {
+            journal.markDone(job.index);
+        }
+    }
+
+    private void copyFile(FileJob job) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(job.source);
+             RandomAccessFile outputFile = new RandomAccessFile(job.target, "rw")) {
+            FileChannel input = inputStream.getChannel();
+            FileChannel output = outputFile.getChannel();
+            long size = input.size();
+            // Continues after the journaled offset, anything past it may be partially written
+            long position = Math.min(job.offset, size);
+            output.truncate(position);
+            output.position(position);
+            boolean journalOffsets = journal != null && size >= JOURNAL_OFFSET_MIN_SIZE;
+            copyFully(job.source, input, position, size, output, (transferred, copied) -> {
+                onBytesTransferred(transferred);
+                if (journalOffsets) {
+                    journal.markOffset(job.index, copied);
+                }
+                control.checkpoint();
+            });
+        }
+    }
+
+    interface ChunkListener {
+        void onChunk(long transferred, long position) throws IOException;
+    }
+
+    // Copies input from position up to size into output at its current position. transferTo may stop
+    // short on some file systems, the rest is then read through a buffer. A source which ends before
+    // size fails the copy, callers must not treat a short target as done.
+    static void copyFully(File source, FileChannel input, long position, long size, FileChannel output,
+                          ChunkListener listener) throws IOException {
+        ByteBuffer buffer = null;
+        while (position < size) {
+            long transferred = buffer == null
+                    ? input.transferTo(position, Math.min(TRANSFER_CHUNK_BYTES, size - position), output)
+                    : 0;
+            if (transferred <= 0) {
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate(COPY_BUFFER_BYTES);
+                }
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - position));
+                int read = input.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                transferred = read;
+            }
+            position += transferred;
+            listener.onChunk(transferred, position);
+        }
+        if (position != size) {
+            throw new IOException("Failed to copy " + source.getAbsolutePath() + ", got " + position + " of " + size + " bytes");
+        }
+    }
+
+    private void onBytesTransferred(long bytes) {
+        bytesDone.addAndGet(bytes);
+        reportProgress(false);
+    }
+
+    private void reportProgress(boolean force) {
+        long now = System.currentTimeMillis();
+        long last = lastReportAt.get();
+        if (!force && (now - last < PROGRESS_INTERVAL_MS || !lastReportAt.compareAndSet(last, now))) {
+            return;
+        }
+        if (force) {
+            lastReportAt.set(now);
+        }
+        long done = bytesDone.get();
+        long elapsed = Math.max(now - last, 1);
+        long bytesPerSecond = (done - lastReportBytes.getAndSet(done)) * 1000 / elapsed;
+        listener.onProgress(done, bytesTotal, filesDone.get(), fileJobs.size() + movedAtomically, bytesPerSecond);
+    }
+
+    private static StructStat stat(File file) {
+        try {
+            return Os.stat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    private static StructStat lstat(File file) {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.telenko.filemanager.operations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// On-disk journal of one transfer: the plan is written before anything moves
+// (again if renames fell back to copying), then 12 byte records (job index,
+// copied offset) are appended as files complete or large files advance.
+// Records reach the kernel with every write, so the journal survives the
+// process being killed, which is all it has to survive.
+public class TransferJournal {
+
+    public static class Job {
+        public final String source;
+        public final String target;
+        public final long size;
+
+        public Job(String source, String target, long size) {
+            this.source = source;
+            this.target = target;
+            this.size = size;
+        }
+    }
+
+    public static class Plan {
+        public final boolean move;
+        public final List<String> directoriesToCreate = new ArrayList<>();
+        public final List<String> sourceDirectories = new ArrayList<>();
+        // Items moved by a single rename, as source/target pairs
+        public final List<String[]> atomicMoves = new ArrayList<>();
+        public final List<Job> jobs = new ArrayList<>();
+        // Symbolic links recreated at the target, as source/target pairs
+        public final List<String[]> links = new ArrayList<>();
+
+        public Plan(boolean move) {
+            this.move = move;
+        }
+    }
+
+    // Offset value of a completed job
+    public static final long DONE = -1;
+
+    // Version 1 plans have no links
+    private static final int VERSION = 2;
+    private static final int RECORD_SIZE = 12;
+    private static final String PLAN_EXTENSION = ".plan";
+    private static final String LOG_EXTENSION = ".log";
+
+    // Journals of transfers running in this process, never reported as interrupted
+    private static final Set<String> active = new HashSet<>();
+
+    public final String id;
+    private final File planFile;
+    private final File logFile;
+    private FileOutputStream log;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+    private TransferJournal(File directory, String id) {
+        this.id = id;
+        this.planFile = new File(directory, id + PLAN_EXTENSION);
+        this.logFile = new File(directory, id + LOG_EXTENSION);
+    }
+
+    public static TransferJournal create(File directory) {
+        String id = UUID.randomUUID().toString();
+        synchronized (active) {
+            active.add(id);
+        }
+        return new TransferJournal(directory, id);
+    }
+
+    // Journals left behind by transfers that never finished
+    public static List<TransferJournal> listInterrupted(File directory) {
+        return findInterrupted(directory, false);
+    }
+
+    // Same as listInterrupted, but the journals become active until deleted,
+    // so a second recovery or a count taken meanwhile does not see them again
+    public static List<TransferJournal> claimInterrupted(File directory) {
+        return findInterrupted(directory, true);
+    }
+
+    private static List<TransferJournal> findInterrupted(File directory, boolean claim) {
+        List<TransferJournal> result = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return result;
+        }
+        synchronized (active) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(PLAN_EXTENSION)) {
+                    String id = name.substring(0, name.length() - PLAN_EXTENSION.length());
+                    if (!active.contains(id)) {
+                        result.add(new TransferJournal(directory, id));
+                    }
+                } else if (name.endsWith(LOG_EXTENSION)
+                        && !active.contains(name.substring(0, name.length() - LOG_EXTENSION.length()))
+                        && !new File(directory, name.replace(LOG_EXTENSION, PLAN_EXTENSION)).exists()) {
+                    // Killed before the plan was complete, nothing was transferred yet
+                    file.delete();
+                }
+            }
+            if (claim) {
+                for (TransferJournal journal : result) {
+                    active.add(journal.id);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Written to a temporary file and renamed, so a plan is either complete or absent
+    public void writePlan(Plan plan) throws IOException {
+        File directory = planFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create folder " + directory.getAbsolutePath());
+        }
+        File temporary = new File(directory, id + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            output.writeInt(VERSION);
+            output.writeBoolean(plan.move);
+            writeStrings(output, plan.directoriesToCreate);
+            writeStrings(output, plan.sourceDirectories);
+            writePairs(output, plan.atomicMoves);
+            output.writeInt(plan.jobs.size());
+            for (Job job : plan.jobs) {
+                output.writeUTF(job.source);
+                output.writeUTF(job.target);
+                output.writeLong(job.size);
+            }
+            writePairs(output, plan.links);
+        }
+        if (!temporary.renameTo(planFile)) {
+            temporary.delete();
+            throw new IOException("Failed to write transfer journal");
+        }
+    }
+
+    public Plan readPlan() throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(planFile)))) {
+            int version = input.readInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported transfer journal");
+            }
+            Plan plan = new Plan(input.readBoolean());
+            readStrings(input, plan.directoriesToCreate);
+            readStrings(input, plan.sourceDirectories);
+            readPairs(input, plan.atomicMoves);
+            int jobs = input.readInt();
+            for (int i = 0; i < jobs; i++) {
+                plan.jobs.add(new Job(input.readUTF(), input.readUTF(), input.readLong()));
+            }
+            if (version >= 2) {
+                readPairs(input, plan.links);
+            }
+            return plan;
+        }
+    }
+
+    // Per job: 0 when not started, DONE, or offset up to which the target is written
+    public long[] readProgress(int jobCount) throws IOException {
+        long[] offsets = new long[jobCount];
+        if (!logFile.exists()) {
+            return offsets;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            // A record cut by the kill is shorter than RECORD_SIZE and ignored
+            long records = logFile.length() / RECORD_SIZE;
+            for (long i = 0; i < records; i++) {
+                int index = input.readInt();
+                long offset = input.readLong();
+                if (index >= 0 && index < jobCount && offsets[index] != DONE) {
+                    offsets[index] = offset;
+                }
+            }
+        }
+        return offsets;
+    }
+
+    public void markDone(int index) throws IOException {
+        append(index, DONE);
+    }
+
+    public void markOffset(int index, long offset) throws IOException {
+        append(index, offset);
+    }
+
+    private synchronized void append(int index, long offset) throws IOException {
+        if (log == null) {
+            log = new FileOutputStream(logFile, true);
+        }
+        record.clear();
+        record.putInt(index);
+        record.putLong(offset);
+        log.write(record.array());
+    }
+
+    public synchronized void delete() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException ignored) {
+            }
+            log = null;
+        }
+        planFile.delete();
+        logFile.delete();
+        synchronized (active) {
+            active.remove(id);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream output, List<String> values) throws IOException {
+        output.writeInt(values.size());
+        for (String value : values) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static void readStrings(DataInputStream input, List<String> values) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            values.add(input.readUTF());
+        }
+    }
+
+    private static void writePairs(DataOutputStream output, List<String[]> pairs) throws IOException {
+        output.writeInt(pairs.size());
+        for (String[] pair : pairs) {
+            output.writeUTF(pair[0]);
+            output.writeUTF(pair[1]);
+        }
+    }
+
+    private static void readPairs(DataInputStream input, List<String[]> pairs) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            pairs.add(new String[]{input.readUTF(), input.readUTF()});
+        }
+    }
+}
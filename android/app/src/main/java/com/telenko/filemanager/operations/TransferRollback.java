@@ -0,0 +1,107 @@
+package com.telenko.filemanager.operations;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+// Undoes an interrupted transfer which cannot be resumed: copies lose their
+// targets, moved files go back to their sources. Targets were free when the
+// transfer was planned, so whatever exists there now was written by it.
+public class TransferRollback {
+
+    private TransferRollback() {
+    }
+
+    public static void run(TransferJournal journal) throws IOException {
+        TransferJournal.Plan plan = journal.readPlan();
+        if (plan.move) {
+            // Parents first, moved back files need their folders
+            for (String directory : plan.sourceDirectories) {
+                new File(directory).mkdirs();
+            }
+            for (TransferJournal.Job job : plan.jobs) {
+                moveBack(new File(job.target), new File(job.source));
+            }
+            for (String[] link : plan.links) {
+                moveLinkBack(new File(link[1]), new File(link[0]));
+            }
+            for (String[] moved : plan.atomicMoves) {
+                moveBack(new File(moved[1]), new File(moved[0]));
+            }
+        } else {
+            for (TransferJournal.Job job : plan.jobs) {
+                new File(job.target).delete();
+            }
+            // Removes the links themselves, not what they point to
+            for (String[] link : plan.links) {
+                new File(link[1]).delete();
+            }
+        }
+        removeEmptyDirectories(plan.directoriesToCreate);
+    }
+
+    private static void moveBack(File target, File source) throws IOException {
+        if (!target.exists()) {
+            return;
+        }
+        if (source.exists()) {
+            // Source was never removed, the target is an unfinished copy
+            if (target.isFile()) {
+                target.delete();
+            }
+            return;
+        }
+        if (target.renameTo(source)) {
+            return;
+        }
+        // Different volumes, only a copy can bring it back
+        try (FileInputStream inputStream = new FileInputStream(target);
+             FileOutputStream outputStream = new FileOutputStream(source)) {
+            FileChannel input = inputStream.getChannel();
+            TransferEngine.copyFully(target, input, 0, input.size(), outputStream.getChannel(), (transferred, position) -> {
+            });
+        } catch (IOException e) {
+            source.delete();
+            throw e;
+        }
+        // Only a complete copy back replaces the target
+        target.delete();
+    }
+
+    // Recreated rather than renamed, a rename of a link does not cross volumes either
+    private static void moveLinkBack(File target, File source) throws IOException {
+        if (lstat(target) == null) {
+            return;
+        }
+        if (lstat(source) == null) {
+            try {
+                Os.symlink(Os.readlink(target.getPath()), source.getPath());
+            } catch (ErrnoException e) {
+                throw new IOException("Failed to create link " + source.getAbsolutePath(), e);
+            }
+        }
+        target.delete();
+    }
+
+    private static StructStat lstat(File file) {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    // Children were appended after their parents, so walk backwards
+    private static void removeEmptyDirectories(List<String> directories) {
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            new File(directories.get(i)).delete();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.telenko.filemanager.operations;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+
+import com.telenko.filemanager.R;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Foreground service held while transfers run, so Android keeps the process
+// alive when the app goes to background. Transfers themselves run on the
+// FileOperationsModule executors, the service only owns the notification.
+public class TransferService extends Service {
+
+    private static final String TAG = "TransferService";
+    private static final String CHANNEL_ID = "transfers";
+    private static final int NOTIFICATION_ID = 1001;
+
+    private static final AtomicInteger activeTransfers = new AtomicInteger();
+    private static volatile TransferService instance;
+    private static volatile int lastPercent = -1;
+
+    public static void begin(Context context) {
+        if (activeTransfers.incrementAndGet() != 1) {
+            return;
+        }
+        try {
+            ContextCompat.startForegroundService(context, new Intent(context, TransferService.class));
+        } catch (RuntimeException e) {
+            // Not allowed from background on Android 12+, the transfer runs anyway
+            Log.w(TAG, "Failed to start transfer service", e);
+        }
+    }
+
+    public static void end() {
+        if (activeTransfers.decrementAndGet() == 0) {
+            TransferService service = instance;
+            if (service != null) {
+                service.stopSelf();
+            }
+        }
+    }
+
+    public static void updateProgress(Context context, long bytesDone, long bytesTotal) {
+        int percent = bytesTotal > 0 ? (int) (bytesDone * 100 / bytesTotal) : 0;
+        if (instance == null || percent == lastPercent) {
+            return;
+        }
+        lastPercent = percent;
+        try {
+            NotificationManagerCompat.from(context).notify(NOTIFICATION_ID, buildNotification(context, percent));
+        } catch (SecurityException e) {
+            // POST_NOTIFICATIONS not granted, the service still runs with a hidden notification
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        instance = this;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        createChannel(this);
+        // startForeground is required after startForegroundService, even when all transfers ended meanwhile
+        Notification notification = buildNotification(this, Math.max(lastPercent, 0));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+        if (activeTransfers.get() == 0) {
+            stopSelf();
+        }
+        return START_NOT_STICKY;
+    }
+
+    // Android 15 limits dataSync services in time, the journal resumes the rest on next launch
+    @Override
+    public void onTimeout(int startId, int foregroundServiceType) {
+        stopSelf();
+    }
+
+    @Override
+    public void onDestroy() {
+        instance = null;
+        lastPercent = -1;
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private static void createChannel(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    context.getString(R.string.transfer_channel_name), NotificationManager.IMPORTANCE_LOW);
+            context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+    }
+
+    private static Notification buildNotification(Context context, int percent) {
+        return new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_upload)
+                .setContentTitle(context.getString(R.string.transfer_notification_title))
+                .setProgress(100, percent, false)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .build();
+    }
+}
@@ -1,18 +1,82 @@
 package com.telenko.filemanager.picker
 
+import com.facebook.react.bridge.Arguments
+import com.facebook.react.bridge.Promise
 import com.facebook.react.bridge.ReactApplicationContext
 import com.facebook.react.bridge.ReactContextBaseJavaModule
 import com.facebook.react.bridge.ReactMethod
+import com.facebook.react.bridge.UiThreadUtil
+import com.facebook.react.modules.core.DeviceEventManagerModule
+import com.telenko.filemanager.media.MediaStoreSync
+import com.telenko.filemanager.metrics.Metrics
+import com.telenko.filemanager.storage.StorageVolumes
+import java.io.File
+import java.util.concurrent.Executors
 
-class PickerActivityModule(reactContext: ReactApplicationContext) : ReactContextBaseJavaModule(reactContext) {
+class PickerActivityModule(private val reactContext: ReactApplicationContext) : ReactContextBaseJavaModule(reactContext) {
+
+    companion object {
+        private const val PROGRESS_EVENT = "PickerIngestProgress"
+    }
+
+    private val ingest = SharedFilesIngest(reactContext.contentResolver)
+    private val ingestExecutor = Executors.newSingleThreadExecutor()
+    private val ingestLatency = Metrics.histogram("picker.ingest")
+    private val ingestThroughput = Metrics.throughput("picker.ingest")
 
     override fun getName(): String {
         return "PickerActivityModule"
     }
 
+    // Copies shared files into the folder, reporting PickerIngestProgress events,
+    // resolves once all are handled and then closes the picker
     @ReactMethod
-    fun handleSend(selectedDirUri: String) {
-        val activity = currentActivity as PickerActivity
-        activity.handleSend(selectedDirUri)
+    fun handleSend(selectedDirUri: String, promise: Promise) {
+        val activity = currentActivity as? PickerActivity
+        if (activity == null) {
+            promise.reject("Error", "Picker is not active")
+            return
+        }
+        val uris = activity.sharedUris()
+        ingestExecutor.execute {
+            try {
+                val start = System.nanoTime()
+                var bytesDone = 0L
+                val result = ingest.ingest(uris, File(selectedDirUri)) { progress ->
+                    bytesDone = progress.bytesDone
+                    sendProgress(progress)
+                }
+                val elapsed = System.nanoTime() - start
+                ingestLatency.record(elapsed)
+                ingestThroughput.record(bytesDone, elapsed)
+                MediaStoreSync.getInstance(reactContext).scan(result.savedPaths)
+                val params = Arguments.createMap()
+                params.putArray("savedPaths", Arguments.fromList(result.savedPaths))
+                params.putInt("failed", result.failed)
+                promise.resolve(params)
+            } catch (e: Exception) {
+                promise.reject("Error", e)
+            } finally {
+                StorageVolumes.getInstance(reactContext).refreshSoon()
+                UiThreadUtil.runOnUiThread { activity.finish() }
+            }
+        }
+    }
+
+    private fun sendProgress(progress: SharedFilesIngest.Progress) {
+        val params = Arguments.createMap()
+        params.putDouble("bytesDone", progress.bytesDone.toDouble())
+        params.putDouble("bytesTotal", progress.bytesTotal.toDouble())
+        params.putInt("filesDone", progress.filesDone)
+        params.putInt("filesTotal", progress.filesTotal)
+        params.putInt("failed", progress.failed)
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter::class.java)
+            .emit(PROGRESS_EVENT, params)
     }
-}
\ No newline at end of file
+
+    @ReactMethod
+    fun addListener(eventName: String) { }
+
+    @ReactMethod
+    fun removeListeners(count: Int) { }
+}
@@ -0,0 +1,204 @@
+package com.telenko.filemanager.picker
+
+import android.content.ContentResolver
+import android.net.Uri
+import android.os.ParcelFileDescriptor
+import android.provider.OpenableColumns
+import android.util.Log
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+// Copies shared content URIs into a folder on a small pool. Providers giving a
+// seekable descriptor are copied channel to channel, others through a reused
+// per-thread buffer. Names come from DISPLAY_NAME and never overwrite files.
+class SharedFilesIngest(private val contentResolver: ContentResolver) {
+
+    data class Progress(
+        val bytesDone: Long,
+        val bytesTotal: Long,
+        val filesDone: Int,
+        val filesTotal: Int,
+        val failed: Int,
+    )
+
+    class Result(val savedPaths: List<String>, val failed: Int)
+
+    private class Source(val uri: Uri, val name: String, val size: Long)
+
+    companion object {
+        private const val TAG = "SharedFilesIngest"
+        // Providers are often backed by a single process, more threads only queue in it
+        private const val PARALLELISM = 3
+        private const val BUFFER_SIZE = 256 * 1024
+        private const val TRANSFER_CHUNK_BYTES = 8L * 1024 * 1024
+        private const val PROGRESS_INTERVAL_MS = 250L
+        private const val DEFAULT_NAME = "shared_file"
+    }
+
+    private val copyExecutor = Executors.newFixedThreadPool(PARALLELISM)
+    private val buffers = object : ThreadLocal<ByteArray>() {
+        override fun initialValue() = ByteArray(BUFFER_SIZE)
+    }
+
+    // Blocks until every URI is copied or failed, failures do not stop the rest
+    fun ingest(uris: List<Uri>, targetDir: File, onProgress: (Progress) -> Unit): Result {
+        if (!targetDir.isDirectory && !targetDir.mkdirs()) {
+            throw IOException("Failed to create folder ${targetDir.absolutePath}")
+        }
+        val sources = uris.map { describe(it) }
+        val bytesTotal = sources.sumOf { maxOf(it.size, 0L) }
+        val bytesDone = AtomicLong()
+        val filesDone = AtomicInteger()
+        val failed = AtomicInteger()
+        val lastReportAt = AtomicLong(System.currentTimeMillis())
+        val report = { force: Boolean ->
+            val now = System.currentTimeMillis()
+            val last = lastReportAt.get()
+            if (force || (now - last >= PROGRESS_INTERVAL_MS && lastReportAt.compareAndSet(last, now))) {
+                // Sizes unknown to the provider make the total an estimate
+                val done = bytesDone.get()
+                onProgress(Progress(done, maxOf(bytesTotal, done), filesDone.get(), sources.size, failed.get()))
+            }
+        }
+        report(true)
+
+        val futures = sources.map { source ->
+            copyExecutor.submit(Callable<String?> {
+                try {
+                    copy(source, targetDir) { bytes ->
+                        bytesDone.addAndGet(bytes)
+                        report(false)
+                    }.absolutePath
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error saving file from URI: ${source.uri}", e)
+                    failed.incrementAndGet()
+                    null
+                } finally {
+                    filesDone.incrementAndGet()
+                    report(false)
+                }
+            })
+        }
+        val savedPaths = futures.mapNotNull { it.get() }
+        report(true)
+        return Result(savedPaths, failed.get())
+    }
+
+    private fun describe(uri: Uri): Source {
+        var name: String? = null
+        var size = -1L
+        try {
+            contentResolver.query(uri, arrayOf(OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE), null, null, null)
+                ?.use { cursor ->
+                    if (cursor.moveToFirst()) {
+                        val nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME)
+                        if (nameIndex >= 0 && !cursor.isNull(nameIndex)) {
+                            name = cursor.getString(nameIndex)
+                        }
+                        val sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE)
+                        if (sizeIndex >= 0 && !cursor.isNull(sizeIndex)) {
+                            size = cursor.getLong(sizeIndex)
+                        }
+                    }
+                }
+        } catch (e: Exception) {
+            // file:// URIs and some providers do not support queries
+            Log.w(TAG, "Failed to query name of URI: $uri", e)
+        }
+        val fileName = (name ?: uri.lastPathSegment?.substringAfterLast('/'))
+            ?.replace('/', '_')
+            ?.takeIf { it.isNotBlank() && it != "." && it != ".." }
+            ?: DEFAULT_NAME
+        return Source(uri, fileName, size)
+    }
+
+    private fun copy(source: Source, targetDir: File, onBytes: (Long) -> Unit): File {
+        val target = claimTarget(targetDir, source.name)
+        try {
+            val descriptor = try {
+                contentResolver.openFileDescriptor(source.uri, "r")
+            } catch (e: Exception) {
+                null
+            }
+            // Pipes report no size and cannot be transferred by position
+            if (descriptor != null && descriptor.statSize >= 0) {
+                ParcelFileDescriptor.AutoCloseInputStream(descriptor).channel.use { input ->
+                    FileOutputStream(target).channel.use { output ->
+                        val size = input.size()
+                        var position = 0L
+                        while (position < size) {
+                            val transferred = input.transferTo(position, minOf(TRANSFER_CHUNK_BYTES, size - position), output)
+                            if (transferred <= 0) {
+                                // Not every provider descriptor supports transferTo, the rest is read through the buffer
+                                copyRest(input, position, output, onBytes)
+                                break
+                            }
+                            position += transferred
+                            onBytes(transferred)
+                        }
+                    }
+                }
+            } else {
+                descriptor?.close()
+                val input = contentResolver.openInputStream(source.uri)
+                    ?: throw IOException("Failed to open input stream for URI: ${source.uri}")
+                input.use { stream ->
+                    FileOutputStream(target).use { output ->
+                        val buffer = buffers.get()!!
+                        while (true) {
+                            val read = stream.read(buffer)
+                            if (read < 0) {
+                                break
+                            }
+                            output.write(buffer, 0, read)
+                            onBytes(read.toLong())
+                        }
+                    }
+                }
+            }
+            return target
+        } catch (e: Exception) {
+            target.delete()
+            throw e
+        }
+    }
+
+    // Copies from position until end of input, whatever size was reported up front
+    private fun copyRest(input: FileChannel, position: Long, output: FileChannel, onBytes: (Long) -> Unit) {
+        val buffer = ByteBuffer.wrap(buffers.get()!!)
+        input.position(position)
+        while (true) {
+            buffer.clear()
+            val read = input.read(buffer)
+            if (read < 0) {
+                break
+            }
+            buffer.flip()
+            while (buffer.hasRemaining()) {
+                output.write(buffer)
+            }
+            onBytes(read.toLong())
+        }
+    }
+
+    // "photo.jpg" -> "photo (1).jpg"; createNewFile is atomic, so parallel copies never share a target
+    private fun claimTarget(targetDir: File, name: String): File {
+        val dot = name.lastIndexOf('.')
+        val base = if (dot > 0) name.substring(0, dot) else name
+        val extension = if (dot > 0) name.substring(dot) else ""
+        var candidate = File(targetDir, name)
+        var n = 1
+        while (!candidate.createNewFile()) {
+            candidate = File(targetDir, "$base ($n)$extension")
+            n++
+        }
+        return candidate
+    }
+}
@@ -0,0 +1,57 @@
+package com.telenko.filemanager.search;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+// Storage of the search index: one row per indexed file/folder, FTS4 table over
+// the names for token prefix search, and listed folders with their mtime, which
+// lets the crawler skip folders that did not change since the previous run.
+public class SearchIndexDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "search_index.db";
+    private static final int DATABASE_VERSION = 2;
+
+    public SearchIndexDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Searches keep reading while the crawler writes
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE entries ("
+                + "id INTEGER PRIMARY KEY, "
+                + "path TEXT NOT NULL UNIQUE, "
+                + "parent TEXT NOT NULL, "
+                + "name TEXT NOT NULL, "
+                + "size INTEGER NOT NULL, "
+                + "mtime INTEGER NOT NULL, "
+                + "is_directory INTEGER NOT NULL, "
+                + "is_link INTEGER NOT NULL, "
+                + "category TEXT NOT NULL)");
+        db.execSQL("CREATE INDEX entries_parent ON entries(parent)");
+        try {
+            // Folds case and splits on punctuation for any script, not only ASCII
+            db.execSQL("CREATE VIRTUAL TABLE entries_fts USING fts4(content=\"entries\", name, tokenize=unicode61)");
+        } catch (SQLException e) {
+            db.execSQL("CREATE VIRTUAL TABLE entries_fts USING fts4(content=\"entries\", name)");
+        }
+        // External content table, so names are stored once and FTS holds only the tokens
+        db.execSQL("CREATE TRIGGER entries_ai AFTER INSERT ON entries BEGIN "
+                + "INSERT INTO entries_fts(docid, name) VALUES (new.id, new.name); END");
+        db.execSQL("CREATE TRIGGER entries_bd BEFORE DELETE ON entries BEGIN "
+                + "DELETE FROM entries_fts WHERE docid = old.id; END");
+        db.execSQL("CREATE TABLE folders (path TEXT PRIMARY KEY, mtime INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Index is a cache of the file system, rebuilding it is always safe
+        db.execSQL("DROP TABLE IF EXISTS entries_fts");
+        db.execSQL("DROP TABLE IF EXISTS entries");
+        db.execSQL("DROP TABLE IF EXISTS folders");
+        onCreate(db);
+    }
+}
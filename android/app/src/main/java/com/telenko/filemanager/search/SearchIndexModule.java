@@ -0,0 +1,231 @@
+package com.telenko.filemanager.search;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.telenko.filemanager.storage.StorageRoots;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SearchIndexModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "SearchIndex";
+    private static final String PROGRESS_EVENT = "SearchIndexProgress";
+    private static final String CATEGORIES = "categories";
+    private static final String DIRECTORIES = "directories";
+    private static final String MIN_SIZE = "minSize";
+    private static final String MAX_SIZE = "maxSize";
+    private static final String MODIFIED_AFTER = "modifiedAfter";
+    private static final String MODIFIED_BEFORE = "modifiedBefore";
+    private static final String ROOT = "root";
+    private static final String OFFSET = "offset";
+    private static final String LIMIT = "limit";
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final ReactApplicationContext reactContext;
+    private final SearchIndexDatabase database;
+    // Single writer, so crawls and folder refreshes never overlap
+    private final ExecutorService indexExecutor;
+    private final ExecutorService searchExecutor;
+    private final AtomicBoolean updating = new AtomicBoolean(false);
+
+    public SearchIndexModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.reactContext = reactContext;
+        this.database = new SearchIndexDatabase(reactContext);
+        this.indexExecutor = Executors.newSingleThreadExecutor();
+        this.searchExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "SearchIndex";
+    }
+
+    // Incremental crawl of all storages, resolves with false when one is already running
+    @ReactMethod
+    public void update(Promise promise) {
+        if (!updating.compareAndSet(false, true)) {
+            promise.resolve(false);
+            return;
+        }
+        List<String> roots = StorageRoots.list(reactContext);
+        indexExecutor.execute(() -> {
+            try {
+                SearchIndexer indexer = new SearchIndexer(database.getWritableDatabase(),
+                        (folders, changes) -> sendProgress(folders, changes, false));
+                indexer.update(roots);
+                sendProgress(indexer.getFolders(), indexer.getChanges(), true);
+                promise.resolve(true);
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            } finally {
+                updating.set(false);
+            }
+        });
+    }
+
+    // Called for folders the app saw changing, so results stay current between crawls
+    @ReactMethod
+    public void refreshFolder(String path) {
+        indexExecutor.execute(() -> {
+            try {
+                new SearchIndexer(database.getWritableDatabase(), (folders, changes) -> { }).refreshFolder(path);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to refresh folder " + path, e);
+            }
+        });
+    }
+
+    // Name tokens are matched by prefix, e.g. "hol 2024" finds "Holiday_2024-07.jpg".
+    // Resolves one page, hasMore tells whether the next offset returns anything.
+    @ReactMethod
+    public void search(String query, ReadableMap filters, Promise promise) {
+        int offset = filters.hasKey(OFFSET) ? filters.getInt(OFFSET) : 0;
+        int limit = filters.hasKey(LIMIT) ? filters.getInt(LIMIT) : DEFAULT_LIMIT;
+        StringBuilder sql = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        String match = matchExpression(query);
+        if (match != null) {
+            sql.append("SELECT e.path, e.size, e.mtime, e.is_directory FROM entries_fts JOIN entries e ON e.id = entries_fts.docid"
+                    + " WHERE entries_fts MATCH ?");
+            args.add(match);
+        } else {
+            sql.append("SELECT e.path, e.size, e.mtime, e.is_directory FROM entries e WHERE 1");
+        }
+        appendFilters(sql, args, filters);
+        // One extra row tells whether there is another page
+        sql.append(" ORDER BY e.is_directory DESC, e.name COLLATE NOCASE LIMIT ").append(limit + 1).append(" OFFSET ").append(offset);
+
+        searchExecutor.execute(() -> {
+            try {
+                SQLiteDatabase db = database.getReadableDatabase();
+                WritableArray paths = new WritableNativeArray();
+                WritableArray sizes = new WritableNativeArray();
+                WritableArray mtimes = new WritableNativeArray();
+                WritableArray directories = new WritableNativeArray();
+                boolean hasMore = false;
+                try (Cursor cursor = db.rawQuery(sql.toString(), args.toArray(new String[0]))) {
+                    int count = 0;
+                    while (cursor.moveToNext()) {
+                        if (++count > limit) {
+                            hasMore = true;
+                            break;
+                        }
+                        paths.pushString(cursor.getString(0));
+                        sizes.pushDouble((double) cursor.getLong(1));
+                        mtimes.pushDouble((double) cursor.getLong(2));
+                        directories.pushBoolean(cursor.getInt(3) == 1);
+                    }
+                }
+                WritableMap result = new WritableNativeMap();
+                result.putArray("paths", paths);
+                result.putArray("sizes", sizes);
+                result.putArray("mtimes", mtimes);
+                result.putArray("directories", directories);
+                result.putBoolean("hasMore", hasMore);
+                promise.resolve(result);
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            }
+        });
+    }
+
+    // Every word of the query has to be a prefix of some token of the name
+    private static String matchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String token : query.split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            // Lower case, so words like OR or NOT are not taken as operators
+            match.append(token.toLowerCase()).append('*');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    private void appendFilters(StringBuilder sql, List<String> args, ReadableMap filters) {
+        if (filters.hasKey(CATEGORIES)) {
+            ReadableArray categories = filters.getArray(CATEGORIES);
+            if (categories != null && categories.size() > 0) {
+                sql.append(" AND e.category IN (");
+                for (int i = 0; i < categories.size(); i++) {
+                    sql.append(i > 0 ? ", ?" : "?");
+                    args.add(categories.getString(i));
+                }
+                sql.append(")");
+            }
+        }
+        if (filters.hasKey(DIRECTORIES)) {
+            sql.append(" AND e.is_directory = ?");
+            args.add(filters.getBoolean(DIRECTORIES) ? "1" : "0");
+        }
+        appendNumberFilter(sql, args, filters, MIN_SIZE, " AND e.size >= ?");
+        appendNumberFilter(sql, args, filters, MAX_SIZE, " AND e.size <= ?");
+        appendNumberFilter(sql, args, filters, MODIFIED_AFTER, " AND e.mtime >= ?");
+        appendNumberFilter(sql, args, filters, MODIFIED_BEFORE, " AND e.mtime <= ?");
+
+        // Only storages which are mounted now, or the single one asked for
+        List<String> roots = new ArrayList<>();
+        if (filters.hasKey(ROOT)) {
+            roots.add(filters.getString(ROOT));
+        } else {
+            roots.addAll(StorageRoots.list(reactContext));
+        }
+        sql.append(" AND (0");
+        for (String root : roots) {
+            sql.append(" OR (e.path >= ? AND e.path < ?)");
+            args.add(root + "/");
+            args.add(root + "0");
+        }
+        sql.append(")");
+    }
+
+    private void appendNumberFilter(StringBuilder sql, List<String> args, ReadableMap filters, String key, String condition) {
+        if (filters.hasKey(key)) {
+            sql.append(condition);
+            args.add(String.valueOf((long) filters.getDouble(key)));
+        }
+    }
+
+    private void sendProgress(long folders, long changes, boolean done) {
+        WritableMap params = Arguments.createMap();
+        params.putDouble("folders", (double) folders);
+        params.putDouble("changes", (double) changes);
+        params.putBoolean("done", done);
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(PROGRESS_EVENT, params);
+    }
+
+    @ReactMethod
+    public void addListener(String eventName) { }
+
+    @ReactMethod
+    public void removeListeners(Integer count) { }
+}
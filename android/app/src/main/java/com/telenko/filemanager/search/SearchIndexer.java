@@ -0,0 +1,209 @@
+package com.telenko.filemanager.search;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.telenko.filemanager.directory.DirectoryListing;
+import com.telenko.filemanager.directory.FileCategories;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Brings the index in line with the file system. A folder is listed again only
+// when its mtime differs from the stored one (entries were added, removed or
+// renamed in it), unchanged folders cost a single stat.
+public class SearchIndexer {
+
+    public interface Listener {
+        void onProgress(long folders, long changes);
+    }
+
+    private static final int FOLDERS_PER_TRANSACTION = 200;
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private static class IndexedEntry {
+        final long size;
+        final long mtime;
+        final boolean isDirectory;
+        final boolean isLink;
+
+        IndexedEntry(long size, long mtime, boolean isDirectory, boolean isLink) {
+            this.size = size;
+            this.mtime = mtime;
+            this.isDirectory = isDirectory;
+            this.isLink = isLink;
+        }
+    }
+
+    private final SQLiteDatabase db;
+    private final Listener listener;
+    private long folders = 0;
+    private long changes = 0;
+    private long lastReportAt = 0;
+
+    public SearchIndexer(SQLiteDatabase db, Listener listener) {
+        this.db = db;
+        this.listener = listener;
+    }
+
+    public long getFolders() {
+        return folders;
+    }
+
+    public long getChanges() {
+        return changes;
+    }
+
+    // Walks the whole tree under every root
+    public void update(List<String> roots) {
+        Deque<String> queue = new ArrayDeque<>(roots);
+        crawl(queue, null);
+    }
+
+    // Lists the folder even if its mtime did not change, e.g. after a file inside was overwritten
+    public void refreshFolder(String path) {
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(path);
+        crawl(queue, path);
+    }
+
+    private void crawl(Deque<String> queue, String forcedFolder) {
+        int foldersInTransaction = 0;
+        db.beginTransaction();
+        try {
+            while (!queue.isEmpty()) {
+                String folderPath = queue.poll();
+                File folder = new File(folderPath);
+                long mtime = folder.lastModified();
+                Long indexedMtime = folderMtime(folderPath);
+                if (indexedMtime != null && indexedMtime == mtime && !folderPath.equals(forcedFolder)) {
+                    queue.addAll(childFolders(folderPath));
+                } else {
+                    queue.addAll(relist(folderPath, mtime));
+                }
+                folders++;
+                if (++foldersInTransaction >= FOLDERS_PER_TRANSACTION) {
+                    // Short transactions keep the WAL small and let searches see progress
+                    db.setTransactionSuccessful();
+                    db.endTransaction();
+                    db.beginTransaction();
+                    foldersInTransaction = 0;
+                }
+                reportProgress();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        listener.onProgress(folders, changes);
+    }
+
+    // Diffs the listing against indexed children, returns child folders to visit
+    private List<String> relist(String folderPath, long mtime) {
+        List<String> childFolders = new ArrayList<>();
+        DirectoryListing.Result listing;
+        try {
+            listing = DirectoryListing.list(folderPath, false, DirectoryListing.SORT_NAME, true, 0, 0);
+        } catch (IOException e) {
+            // Gone or not readable (e.g. Android/data), forget what was indexed there
+            removeSubtree(folderPath);
+            return childFolders;
+        }
+        Map<String, IndexedEntry> indexed = indexedChildren(folderPath);
+        for (DirectoryListing.Entry entry : listing.entries) {
+            String path = folderPath + "/" + entry.name;
+            IndexedEntry previous = indexed.remove(entry.name);
+            if (previous == null) {
+                insert(folderPath, path, entry);
+            } else if (previous.isDirectory != entry.isDirectory || previous.isLink != entry.isLink) {
+                removeSubtree(path);
+                insert(folderPath, path, entry);
+            } else if (previous.size != entry.size || previous.mtime != entry.mtime) {
+                ContentValues values = new ContentValues();
+                values.put("size", entry.size);
+                values.put("mtime", entry.mtime);
+                db.update("entries", values, "path = ?", new String[]{path});
+                changes++;
+            }
+            // A linked folder is indexed by name only, following it could loop forever
+            if (entry.isDirectory && !entry.isLink) {
+                childFolders.add(path);
+            }
+        }
+        for (String removedName : indexed.keySet()) {
+            removeSubtree(folderPath + "/" + removedName);
+        }
+        ContentValues folderValues = new ContentValues();
+        folderValues.put("path", folderPath);
+        folderValues.put("mtime", mtime);
+        db.insertWithOnConflict("folders", null, folderValues, SQLiteDatabase.CONFLICT_REPLACE);
+        return childFolders;
+    }
+
+    private void insert(String parent, String path, DirectoryListing.Entry entry) {
+        ContentValues values = new ContentValues();
+        values.put("path", path);
+        values.put("parent", parent);
+        values.put("name", entry.name);
+        values.put("size", entry.size);
+        values.put("mtime", entry.mtime);
+        values.put("is_directory", entry.isDirectory ? 1 : 0);
+        values.put("is_link", entry.isLink ? 1 : 0);
+        values.put("category", entry.isDirectory ? FileCategories.OTHER : FileCategories.of(entry.name));
+        db.insert("entries", null, values);
+        changes++;
+    }
+
+    // '0' follows '/' in ASCII, so the range covers exactly the paths below the folder
+    private void removeSubtree(String path) {
+        String[] args = {path, path + "/", path + "0"};
+        int removed = db.delete("entries", "path = ? OR (path >= ? AND path < ?)", args);
+        db.delete("folders", "path = ? OR (path >= ? AND path < ?)", args);
+        changes += removed;
+    }
+
+    private Long folderMtime(String path) {
+        try (Cursor cursor = db.rawQuery("SELECT mtime FROM folders WHERE path = ?", new String[]{path})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        }
+    }
+
+    // Same folders relist returns, linked ones are never visited
+    private List<String> childFolders(String parent) {
+        List<String> result = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT path FROM entries WHERE parent = ? AND is_directory = 1 AND is_link = 0",
+                new String[]{parent})) {
+            while (cursor.moveToNext()) {
+                result.add(cursor.getString(0));
+            }
+        }
+        return result;
+    }
+
+    private Map<String, IndexedEntry> indexedChildren(String parent) {
+        Map<String, IndexedEntry> result = new HashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT name, size, mtime, is_directory, is_link FROM entries WHERE parent = ?",
+                new String[]{parent})) {
+            while (cursor.moveToNext()) {
+                result.put(cursor.getString(0), new IndexedEntry(cursor.getLong(1), cursor.getLong(2), cursor.getInt(3) == 1,
+                        cursor.getInt(4) == 1));
+            }
+        }
+        return result;
+    }
+
+    private void reportProgress() {
+        long now = System.currentTimeMillis();
+        if (now - lastReportAt >= PROGRESS_INTERVAL_MS) {
+            lastReportAt = now;
+            listener.onProgress(folders, changes);
+        }
+    }
+}
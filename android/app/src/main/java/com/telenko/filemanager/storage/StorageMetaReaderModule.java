@@ -1,11 +1,10 @@
 package com.telenko.filemanager.storage;
 
 import android.content.Context;
-import android.os.Environment;
 
 import androidx.annotation.NonNull;
-import androidx.core.content.ContextCompat;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
@@ -14,17 +13,34 @@ import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeArray;
 import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.telenko.filemanager.metrics.LatencyHistogram;
+import com.telenko.filemanager.metrics.Metrics;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.List;
 
 public class StorageMetaReaderModule extends ReactContextBaseJavaModule {
 
+    private static final String VOLUMES_CHANGED_EVENT = "StorageVolumesChanged";
+
     private final ReactApplicationContext reactContext;
+    private final StorageVolumes storageVolumes;
+    private final LatencyHistogram readAllLatency = Metrics.histogram("storage.readAll");
+
+    // Mounts, unmounts and free space changes after operations
+    private final StorageVolumes.Listener volumesListener = volumes -> {
+        WritableMap params = Arguments.createMap();
+        params.putArray("storages", toArray(volumes));
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(VOLUMES_CHANGED_EVENT, params);
+    };
 
     public StorageMetaReaderModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.storageVolumes = StorageVolumes.getInstance(reactContext);
+        storageVolumes.addListener(volumesListener);
     }
 
     @NonNull
@@ -33,32 +49,55 @@ public class StorageMetaReaderModule extends ReactContextBaseJavaModule {
         return "StorageMetaReader";
     }
 
+    // Last known state, a re-read is scheduled and reported as StorageVolumesChanged if anything differs
     @ReactMethod
     public void readAll(Promise promise) {
         try {
-            WritableArray storagesArray = new WritableNativeArray();
-            ArrayList<String> rootPaths = new ArrayList<>();
-            Context context = getReactApplicationContext();
-            File[] rootsStorage = ContextCompat.getExternalFilesDirs(context, null);
-
-            for (File rootStorage : rootsStorage) {
-                String root = rootStorage.getAbsolutePath().replace("/Android/data/" + context.getPackageName() + "/files", "");
-                rootPaths.add(root);
-
-                WritableMap storageMap = new WritableNativeMap();
-                storageMap.putString("path", root);
-                storageMap.putString("name", rootStorage.getName());
-                storageMap.putDouble("freeSpace", (double) new File(root).getFreeSpace());
-                storageMap.putDouble("totalSpace", (double) new File(root).getTotalSpace());
-                storageMap.putBoolean("isMainDeviceStorage", root.equals(Environment.getExternalStorageDirectory().getAbsolutePath()));
-                storageMap.putBoolean("isSdCardStorage", !root.equals(Environment.getExternalStorageDirectory().getAbsolutePath()));
-
-                storagesArray.pushMap(storageMap);
-            }
-
-            promise.resolve(storagesArray);
+            long start = System.nanoTime();
+            WritableArray storages = readStorages(getReactApplicationContext());
+            readAllLatency.recordSince(start);
+            promise.resolve(storages);
+            storageVolumes.refreshSoon();
         } catch (Exception e) {
             promise.reject("Error", e);
         }
     }
+
+    public static WritableArray readStorages(Context context) {
+        return toArray(StorageVolumes.getInstance(context).getVolumes());
+    }
+
+    private static WritableArray toArray(List<StorageVolumes.Volume> volumes) {
+        WritableArray storagesArray = new WritableNativeArray();
+        for (StorageVolumes.Volume volume : volumes) {
+            WritableMap storageMap = new WritableNativeMap();
+            storageMap.putString("path", volume.path);
+            storageMap.putString("name", new File(volume.path).getName());
+            if (volume.description != null) {
+                storageMap.putString("description", volume.description);
+            }
+            storageMap.putDouble("freeSpace", (double) volume.freeSpace);
+            storageMap.putDouble("totalSpace", (double) volume.totalSpace);
+            storageMap.putBoolean("isMainDeviceStorage", volume.isPrimary);
+            storageMap.putBoolean("isSdCardStorage", volume.isRemovable && !volume.isUsb);
+            storageMap.putBoolean("isUsb", volume.isUsb);
+            storageMap.putBoolean("isRemovable", volume.isRemovable);
+            storageMap.putBoolean("isReadOnly", volume.isReadOnly);
+
+            storagesArray.pushMap(storageMap);
+        }
+        return storagesArray;
+    }
+
+    @Override
+    public void invalidate() {
+        storageVolumes.removeListener(volumesListener);
+        super.invalidate();
+    }
+
+    @ReactMethod
+    public void addListener(String eventName) { }
+
+    @ReactMethod
+    public void removeListeners(Integer count) { }
 }
@@ -0,0 +1,31 @@
+package com.telenko.filemanager.storage;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.List;
+
+public class StorageRoots {
+
+    // Mounted volumes, including USB OTG ones, from the StorageVolumes cache
+    public static List<String> list(Context context) {
+        return StorageVolumes.getInstance(context).getRoots();
+    }
+
+    // Longest root which contains the path, or null when path is outside of known storages
+    public static String rootOf(List<String> roots, String path) {
+        String result = null;
+        for (String root : roots) {
+            if ((path.equals(root) || path.startsWith(root + File.separator))
+                    && (result == null || root.length() > result.length())) {
+                result = root;
+            }
+        }
+        return result;
+    }
+
+    public static boolean isSameVolume(List<String> roots, String pathA, String pathB) {
+        String rootA = rootOf(roots, pathA);
+        return rootA != null && rootA.equals(rootOf(roots, pathB));
+    }
+}
@@ -0,0 +1,295 @@
+package com.telenko.filemanager.storage;
+
+import android.app.usage.StorageStatsManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Environment;
+import android.os.StatFs;
+import android.os.storage.StorageManager;
+import android.os.storage.StorageVolume;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Cached list of mounted storage volumes with their free/total space. Read once,
+// then refreshed on mount broadcasts and after operations which wrote a lot, so
+// callers get the last known state without statfs or StorageManager calls.
+public class StorageVolumes {
+
+    public interface Listener {
+        void onVolumesChanged(List<Volume> volumes);
+    }
+
+    public static class Volume {
+        public final String path;
+        // Label shown by the system, e.g. "SanDisk SD card" or "USB drive"
+        public final String description;
+        public final boolean isPrimary;
+        public final boolean isRemovable;
+        // Removable drive attached over USB OTG, other removable volumes are SD cards
+        public final boolean isUsb;
+        public final boolean isReadOnly;
+        public final long freeSpace;
+        public final long totalSpace;
+
+        Volume(String path, String description, boolean isPrimary, boolean isRemovable, boolean isUsb,
+               boolean isReadOnly, long freeSpace, long totalSpace) {
+            this.path = path;
+            this.description = description;
+            this.isPrimary = isPrimary;
+            this.isRemovable = isRemovable;
+            this.isUsb = isUsb;
+            this.isReadOnly = isReadOnly;
+            this.freeSpace = freeSpace;
+            this.totalSpace = totalSpace;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Volume)) {
+                return false;
+            }
+            Volume volume = (Volume) other;
+            return path.equals(volume.path) && Objects.equals(description, volume.description)
+                    && isPrimary == volume.isPrimary && isRemovable == volume.isRemovable
+                    && isUsb == volume.isUsb && isReadOnly == volume.isReadOnly && freeSpace == volume.freeSpace
+                    && totalSpace == volume.totalSpace;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+
+    private static final String TAG = "StorageVolumes";
+    // Mount broadcasts come in bursts (checking, mounted, scanner), as do finished operations
+    private static final long REFRESH_DELAY_MS = 500;
+    // vold mounts public volumes from "/dev/block/vold/public:<major>,<minor>". SD cards are MMC
+    // block devices, USB drives show up as SCSI disks, so the major number tells them apart.
+    private static final String PUBLIC_VOLUME_DEVICE = "/dev/block/vold/public:";
+    private static final int MMC_BLOCK_MAJOR = 179;
+
+    private static StorageVolumes instance;
+
+    private final Context context;
+    private final StorageManager storageManager;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private volatile List<Volume> volumes = Collections.emptyList();
+    private ScheduledFuture<?> pendingRefresh;
+    // Set when a refresh was requested while one is scheduled or running
+    private boolean refreshAgain = false;
+
+    private final BroadcastReceiver mountReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            refreshSoon();
+        }
+    };
+
+    public static synchronized StorageVolumes getInstance(Context context) {
+        if (instance == null) {
+            instance = new StorageVolumes(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private StorageVolumes(Context context) {
+        this.context = context;
+        this.storageManager = context.getSystemService(StorageManager.class);
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_MEDIA_MOUNTED);
+        filter.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
+        filter.addAction(Intent.ACTION_MEDIA_REMOVED);
+        filter.addAction(Intent.ACTION_MEDIA_BAD_REMOVAL);
+        filter.addAction(Intent.ACTION_MEDIA_EJECT);
+        filter.addDataScheme("file");
+        ContextCompat.registerReceiver(context, mountReceiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+        executor.execute(this::refresh);
+    }
+
+    // Blocks only until the first read is done
+    public List<Volume> getVolumes() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return volumes;
+    }
+
+    public List<String> getRoots() {
+        List<String> roots = new ArrayList<>();
+        for (Volume volume : getVolumes()) {
+            roots.add(volume.path);
+        }
+        return roots;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Called after writes and deletes, listeners hear about it only when free space changed
+    public synchronized void refreshSoon() {
+        if (pendingRefresh != null && !pendingRefresh.isDone()) {
+            // A running refresh may have read the volumes already, it schedules another one when done
+            refreshAgain = true;
+            return;
+        }
+        pendingRefresh = executor.schedule(this::refresh, REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+        synchronized (this) {
+            // Requests up to here are covered by this read
+            refreshAgain = false;
+        }
+        try {
+            List<Volume> current;
+            try {
+                current = readVolumes();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to read storage volumes", e);
+                loaded.countDown();
+                return;
+            }
+            boolean changed = !current.equals(volumes);
+            volumes = Collections.unmodifiableList(current);
+            loaded.countDown();
+            if (changed) {
+                for (Listener listener : listeners) {
+                    listener.onVolumesChanged(volumes);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                if (refreshAgain) {
+                    refreshAgain = false;
+                    pendingRefresh = executor.schedule(this::refresh, REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    // Straight from StorageManager and statfs, bypassing the cached list
+    public List<Volume> readVolumes() {
+        List<Volume> result = new ArrayList<>();
+        Map<String, Integer> blockMajors = readPublicVolumeMajors();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // Lists USB OTG and other public volumes as well, not only those with app dirs
+            for (StorageVolume storageVolume : storageManager.getStorageVolumes()) {
+                File directory = storageVolume.getDirectory();
+                if (directory != null && isMounted(storageVolume.getState())) {
+                    result.add(read(directory.getAbsolutePath(), storageVolume, blockMajors));
+                }
+            }
+        } else {
+            String primaryPath = Environment.getExternalStorageDirectory().getAbsolutePath();
+            String suffix = "/Android/data/" + context.getPackageName() + "/files";
+            for (File filesDir : ContextCompat.getExternalFilesDirs(context, null)) {
+                if (filesDir == null) {
+                    // Volume is currently unavailable
+                    continue;
+                }
+                StorageVolume storageVolume = storageManager.getStorageVolume(filesDir);
+                String path = filesDir.getAbsolutePath().replace(suffix, "");
+                if (storageVolume == null || isMounted(storageVolume.getState())) {
+                    result.add(storageVolume != null ? read(path, storageVolume, blockMajors)
+                            : stat(path, null, path.equals(primaryPath), false, false, false));
+                }
+            }
+        }
+        // Primary storage first, the order JS expects
+        Collections.sort(result, (a, b) -> Boolean.compare(b.isPrimary, a.isPrimary));
+        return result;
+    }
+
+    private Volume read(String path, StorageVolume storageVolume, Map<String, Integer> blockMajors) {
+        // Public volumes are mounted under their UUID, unknown devices are taken for SD cards as before
+        Integer major = storageVolume.getUuid() != null ? blockMajors.get(storageVolume.getUuid()) : null;
+        boolean isUsb = storageVolume.isRemovable() && major != null && major != MMC_BLOCK_MAJOR;
+        return stat(path, storageVolume.getDescription(context), storageVolume.isPrimary(), storageVolume.isRemovable(),
+                isUsb, Environment.MEDIA_MOUNTED_READ_ONLY.equals(storageVolume.getState()));
+    }
+
+    // Volume UUID -> major number of the block device it is mounted from
+    private static Map<String, Integer> readPublicVolumeMajors() {
+        Map<String, Integer> result = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/mounts"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // "/dev/block/vold/public:8,1 /mnt/media_rw/1A2B-3C4D vfat ..."
+                String[] fields = line.split(" ");
+                if (fields.length < 2 || !fields[0].startsWith(PUBLIC_VOLUME_DEVICE)) {
+                    continue;
+                }
+                int comma = fields[0].indexOf(',', PUBLIC_VOLUME_DEVICE.length());
+                if (comma < 0) {
+                    continue;
+                }
+                try {
+                    int major = Integer.parseInt(fields[0].substring(PUBLIC_VOLUME_DEVICE.length(), comma));
+                    result.put(new File(fields[1]).getName(), major);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read mounts", e);
+        }
+        return result;
+    }
+
+    // One statfs per volume
+    private Volume stat(String path, String description, boolean isPrimary, boolean isRemovable, boolean isUsb,
+                        boolean isReadOnly) {
+        long freeSpace = 0;
+        long totalSpace = 0;
+        try {
+            StatFs statFs = new StatFs(path);
+            freeSpace = statFs.getAvailableBytes();
+            totalSpace = statFs.getTotalBytes();
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Failed to stat " + path, e);
+        }
+        if (isPrimary && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // statfs sees the data partition only, this is the device size as Settings shows it
+            try {
+                totalSpace = context.getSystemService(StorageStatsManager.class).getTotalBytes(StorageManager.UUID_DEFAULT);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to read storage stats", e);
+            }
+        }
+        return new Volume(path, description, isPrimary, isRemovable, isUsb, isReadOnly, freeSpace, totalSpace);
+    }
+
+    private static boolean isMounted(String state) {
+        return Environment.MEDIA_MOUNTED.equals(state) || Environment.MEDIA_MOUNTED_READ_ONLY.equals(state);
+    }
+}
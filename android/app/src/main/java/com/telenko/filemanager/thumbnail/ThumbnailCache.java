@@ -0,0 +1,206 @@
+package com.telenko.filemanager.thumbnail;
+
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Two tier cache of encoded thumbnails: byte bounded in-memory LRU on top of a
+// size bounded directory in the app cache. Keys include size and mtime of the
+// source, so a changed file never hits a stale thumbnail.
+public class ThumbnailCache {
+
+    private static final String DIRECTORY_NAME = "thumbnails";
+    private static final String JPEG_EXTENSION = ".jpg";
+    // Thumbnails of images with transparency are PNG, see ThumbnailHelper.createImageThumbnail
+    private static final String PNG_EXTENSION = ".png";
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G'};
+    private static final long MAX_DISK_BYTES = 150L * 1024 * 1024;
+    // Evict down to this share of the limit, so trimming does not run on every put
+    private static final double DISK_TRIM_RATIO = 0.8;
+
+    private final LruCache<String, byte[]> memoryCache;
+    private final File directory;
+    private long diskBytes = -1;
+
+    public ThumbnailCache(File cacheDir) {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        int memoryBytes = (int) Math.min(maxMemory / 16, 32L * 1024 * 1024);
+        this.memoryCache = new LruCache<String, byte[]>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+        this.directory = new File(cacheDir, DIRECTORY_NAME);
+    }
+
+    public static String keyFor(File source, Integer width) {
+        return source.getAbsolutePath() + "|" + source.length() + "|" + source.lastModified() + "|" + (width != null ? width : 0);
+    }
+
+    public byte[] get(String key) {
+        byte[] cached = memoryCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        File file = findFile(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            cached = readFully(file);
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+        // Touch for LRU order on disk
+        file.setLastModified(System.currentTimeMillis());
+        memoryCache.put(key, cached);
+        return cached;
+    }
+
+    public void put(String key, byte[] thumbnail) {
+        memoryCache.put(key, thumbnail);
+        writeToDisk(key, thumbnail);
+    }
+
+    // Disk entry only, for callers which hand out file URIs and never need the bytes
+    public File getFile(String key) {
+        File file = findFile(key);
+        if (file == null) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    public File putFile(String key, byte[] thumbnail) {
+        return writeToDisk(key, thumbnail);
+    }
+
+    private File findFile(String key) {
+        String name = hash(key);
+        File file = new File(directory, name + JPEG_EXTENSION);
+        if (file.isFile()) {
+            return file;
+        }
+        file = new File(directory, name + PNG_EXTENSION);
+        return file.isFile() ? file : null;
+    }
+
+    // Extension follows the encoded format, so the file URI handed out tells the truth
+    private File fileFor(String key, byte[] thumbnail) {
+        return new File(directory, hash(key) + (isPng(thumbnail) ? PNG_EXTENSION : JPEG_EXTENSION));
+    }
+
+    private static boolean isPng(byte[] data) {
+        if (data.length < PNG_SIGNATURE.length) {
+            return false;
+        }
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (data[i] != PNG_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized File writeToDisk(String key, byte[] thumbnail) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return null;
+        }
+        File target = fileFor(key, thumbnail);
+        File temp = new File(directory, target.getName() + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(temp)) {
+            outputStream.write(thumbnail);
+        } catch (IOException e) {
+            temp.delete();
+            return null;
+        }
+        long previousSize = target.length();
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            return null;
+        }
+        if (diskBytes < 0) {
+            diskBytes = directorySize();
+        } else {
+            diskBytes += thumbnail.length - previousSize;
+        }
+        if (diskBytes > MAX_DISK_BYTES) {
+            trimDisk();
+        }
+        return target.isFile() ? target : null;
+    }
+
+    private long directorySize() {
+        long total = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lastModified[a], lastModified[b]));
+        long target = (long) (MAX_DISK_BYTES * DISK_TRIM_RATIO);
+        for (Integer index : order) {
+            if (diskBytes <= target) {
+                break;
+            }
+            long size = files[index].length();
+            if (files[index].delete()) {
+                diskBytes -= size;
+            }
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = inputStream.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file.getAbsolutePath());
+                }
+                offset += read;
+            }
+        }
+        return data;
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
@@ -1,39 +1,292 @@
 package com.telenko.filemanager.thumbnail;
 
+import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.media.ExifInterface;
 import android.media.MediaMetadataRetriever;
-import android.util.Base64;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Size;
+import com.telenko.filemanager.media.MediaStoreIndex;
+
 import java.io.IOException;
 
 import java.io.ByteArrayOutputStream;
 
 public class ThumbnailHelper {
 
-    public static String createVideoThumbnail(String videoPath, Integer width) {
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        retriever.setDataSource(videoPath);
-        Boolean needScale = width != null && width > 0;
-        Bitmap bitmap = retriever.getFrameAtTime(1000000); // Get frame at 1 second (1000000 microseconds)
+    private static final long FRAME_TIME_US = 1000000; // 1 second
+    private static final int JPEG_QUALITY = 90;
+    // Panoramas and long screenshots are shown center cropped, so only the middle is decoded
+    private static final float CROP_ASPECT_RATIO = 2f;
+
+    // Cheapest source first: thumbnail MediaStore already keeps, cover embedded into
+    // the container, and only then a sync frame decoded straight at the target size.
+    public static byte[] createVideoThumbnailJpeg(Context context, String videoPath, Integer width) {
+        boolean needScale = width != null && width > 0;
+        Bitmap bitmap = needScale ? loadMediaStoreThumbnail(context, videoPath, width) : null;
+        if (bitmap == null) {
+            bitmap = decodeVideoFrame(videoPath, needScale ? width : 0);
+        }
         if (bitmap == null) {
             return null;
         }
-        // If both width and height are specified and width is greater than 0
-        if (needScale) {
-             // Calculate the aspect ratio of the original video frame
-            float aspectRatio = (float) bitmap.getWidth() / (float) bitmap.getHeight();
-            // Calculate the new height based on the aspect ratio and the specified width
-            Integer height = Math.round(width / aspectRatio);
-            bitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (needScale && bitmap.getWidth() != width) {
+            bitmap = scaleToWidth(bitmap, width);
         }
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, byteArrayOutputStream);
-        byte[] byteArray = byteArrayOutputStream.toByteArray();
-         try {
-            retriever.release();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, byteArrayOutputStream);
+        bitmap.recycle();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    // Grid cells show images center cropped, so the shorter side is fit to the width.
+    // EXIF thumbnail is taken when it is big enough, otherwise the image is decoded
+    // with subsampling, and only its middle part when the image is very long.
+    // Encoded as JPEG, or as PNG when the image has transparency.
+    public static byte[] createImageThumbnail(String imagePath, Integer width) {
+        int targetSize = width != null && width > 0 ? width : 0;
+        int orientation = ExifInterface.ORIENTATION_UNDEFINED;
+        Bitmap bitmap = null;
+        try {
+            ExifInterface exif = new ExifInterface(imagePath);
+            orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            if (targetSize > 0 && exif.hasThumbnail()) {
+                bitmap = decodeSampled(exif.getThumbnail(), targetSize);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            // Not a format with EXIF, decode it as is
+        }
+        if (bitmap == null) {
+            bitmap = decodeImage(imagePath, targetSize);
+        }
+        if (bitmap == null) {
+            return null;
+        }
+        if (targetSize > 0 && Math.min(bitmap.getWidth(), bitmap.getHeight()) > targetSize) {
+            bitmap = scaleShorterSide(bitmap, targetSize);
+        }
+        bitmap = applyOrientation(bitmap, orientation);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        // Keep transparency of PNG/GIF, the rest does not need lossless encoding
+        Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+        bitmap.compress(format, JPEG_QUALITY, byteArrayOutputStream);
+        bitmap.recycle();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    // EXIF thumbnails are usually 160px, used only when they are not upscaled
+    private static Bitmap decodeSampled(byte[] data, int targetSize) {
+        if (data == null) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int shorterSide = Math.min(options.outWidth, options.outHeight);
+        if (shorterSide < targetSize) {
+            return null;
+        }
+        options.inSampleSize = sampleSize(shorterSide, targetSize);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    private static Bitmap decodeImage(String imagePath, int targetSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int imageWidth = options.outWidth;
+        int imageHeight = options.outHeight;
+        options.inSampleSize = sampleSize(Math.min(imageWidth, imageHeight), targetSize);
+        options.inJustDecodeBounds = false;
+        if (targetSize > 0 && "image/jpeg".equals(options.outMimeType)) {
+            // Opaque anyway, half the memory of ARGB
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+        }
+        float aspectRatio = (float) Math.max(imageWidth, imageHeight) / Math.min(imageWidth, imageHeight);
+        if (targetSize > 0 && aspectRatio > CROP_ASPECT_RATIO) {
+            Bitmap cropped = decodeCenterSquare(imagePath, imageWidth, imageHeight, options);
+            if (cropped != null) {
+                return cropped;
+            }
+        }
+        return BitmapFactory.decodeFile(imagePath, options);
+    }
+
+    private static Bitmap decodeCenterSquare(String imagePath, int imageWidth, int imageHeight, BitmapFactory.Options options) {
+        BitmapRegionDecoder decoder = null;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(imagePath, false);
+            int side = Math.min(imageWidth, imageHeight);
+            int left = (imageWidth - side) / 2;
+            int top = (imageHeight - side) / 2;
+            return decoder.decodeRegion(new Rect(left, top, left + side, top + side), options);
+        } catch (IOException | RuntimeException e) {
+            // Region decoding supports JPEG/PNG/WebP only
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    private static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        Bitmap oriented = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (oriented != bitmap) {
+            bitmap.recycle();
+        }
+        return oriented;
+    }
+
+    private static Bitmap scaleShorterSide(Bitmap bitmap, int size) {
+        float scale = (float) size / Math.min(bitmap.getWidth(), bitmap.getHeight());
+        int scaledWidth = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int scaledHeight = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private static Bitmap loadMediaStoreThumbnail(Context context, String videoPath, int width) {
+        // Before Q thumbnails are only generated on demand by the legacy API, which is no faster
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return null;
+        }
+        Uri videoUri = MediaStoreIndex.getInstance(context).getUri(videoPath, "video/*");
+        if (videoUri == null) {
+            return null;
+        }
+        try {
+            return context.getContentResolver().loadThumbnail(videoUri, new Size(width, width), null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Bitmap decodeVideoFrame(String videoPath, int width) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(videoPath);
+            Bitmap embedded = decodeEmbeddedPicture(retriever, width);
+            if (embedded != null) {
+                return embedded;
+            }
+            // Sync frames decode without walking the GOP from the previous key frame
+            if (width > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                int[] frameSize = frameSize(retriever, width);
+                if (frameSize != null) {
+                    Bitmap scaled = retriever.getScaledFrameAtTime(FRAME_TIME_US, MediaMetadataRetriever.OPTION_CLOSEST_SYNC,
+                            frameSize[0], frameSize[1]);
+                    if (scaled != null) {
+                        return scaled;
+                    }
+                }
+            }
+            return retriever.getFrameAtTime(FRAME_TIME_US, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Cover art some containers carry, decoded with subsampling close to the target width
+    private static Bitmap decodeEmbeddedPicture(MediaMetadataRetriever retriever, int width) {
+        byte[] picture = retriever.getEmbeddedPicture();
+        if (picture == null) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+        options.inSampleSize = sampleSize(options.outWidth, width);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+    }
+
+    // Largest power of two which keeps the decoded width at or above the target one
+    static int sampleSize(int sourceWidth, int targetWidth) {
+        int sampleSize = 1;
+        if (targetWidth <= 0) {
+            return sampleSize;
+        }
+        while (sourceWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // Target size of the displayed (rotated) frame for the given width
+    private static int[] frameSize(MediaMetadataRetriever retriever, int width) {
+        try {
+            int videoWidth = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+            int videoHeight = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+            String rotation = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+            if (rotation != null && (rotation.equals("90") || rotation.equals("270"))) {
+                int swap = videoWidth;
+                videoWidth = videoHeight;
+                videoHeight = swap;
+            }
+            if (videoWidth <= 0 || videoHeight <= 0) {
+                return null;
+            }
+            int height = Math.max(1, Math.round((float) width * videoHeight / videoWidth));
+            return new int[]{width, height};
+        } catch (NumberFormatException e) {
             return null;
         }
-        return Base64.encodeToString(byteArray, Base64.DEFAULT);
     }
-}
\ No newline at end of file
+
+    private static Bitmap scaleToWidth(Bitmap bitmap, int width) {
+        float aspectRatio = (float) bitmap.getWidth() / (float) bitmap.getHeight();
+        int height = Math.max(1, Math.round(width / aspectRatio));
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+}
@@ -1,20 +1,45 @@
 package com.telenko.filemanager.thumbnail;
 
+import android.net.Uri;
+
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
-import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.telenko.filemanager.metrics.HitRatio;
+import com.telenko.filemanager.metrics.LatencyHistogram;
+import com.telenko.filemanager.metrics.Metrics;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.File;
+import java.util.concurrent.Callable;
 
 public class ThumbnailModule extends ReactContextBaseJavaModule {
 
-    private final ExecutorService executorService;
+    private static final String REQUEST_IDS = "requestIds";
+    private static final String THUMBNAIL_READY_EVENT = "ThumbnailReady";
+    private static final String PRIORITY = "priority";
+    private static final int DEFAULT_PRIORITY = 0;
+
+    private final ReactApplicationContext reactContext;
+    private final ThumbnailScheduler scheduler;
+    private final ThumbnailCache thumbnailCache;
+    // Request latency includes the time spent queued, create* only the decode and encode
+    private final LatencyHistogram requestLatency = Metrics.histogram("thumbnail.request");
+    private final LatencyHistogram createImageLatency = Metrics.histogram("thumbnail.createImage");
+    private final LatencyHistogram createVideoLatency = Metrics.histogram("thumbnail.createVideo");
+    private final HitRatio cacheHits = Metrics.hitRatio("thumbnail.cache");
 
     public ThumbnailModule(ReactApplicationContext reactContext) {
         super(reactContext);
-        this.executorService = Executors.newFixedThreadPool(10);
+        this.reactContext = reactContext;
+        this.scheduler = new ThumbnailScheduler();
+        this.thumbnailCache = new ThumbnailCache(reactContext.getCacheDir());
+        Metrics.gauge("thumbnail.queued", scheduler::getQueueSize);
+        Metrics.gauge("thumbnail.active", scheduler::getActiveCount);
     }
 
     @Override
@@ -22,22 +47,91 @@ public class ThumbnailModule extends ReactContextBaseJavaModule {
         return "ThumbnailModule";
     }
 
+    // One bridge call for a page of grid cells. Every result is emitted separately as
+    // ThumbnailReady with the file:// URI of the cached JPEG, so the image is never copied
+    // through the bridge. Requests with ids can be cancelled once their cells leave the screen.
+    @ReactMethod
+    public void createVideoThumbnails(ReadableArray videoPaths, Integer width, ReadableMap options) {
+        scheduleBatch(videoPaths, width, options, false);
+    }
+
+    // Downscaled copies of photos, so grid cells never decode full camera resolution
     @ReactMethod
-    public void createVideoThumbnail(String videoPath, Integer width, Callback successCallback, Callback errorCallback) {
-        executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    String base64Thumbnail = ThumbnailHelper.createVideoThumbnail(videoPath, width);
-                    if (base64Thumbnail == null) {
-                        errorCallback.invoke("Failed to decode 1st second from video");
-                    } else {
-                        successCallback.invoke(base64Thumbnail);
-                    }
-                } catch (Exception e) {
-                    errorCallback.invoke(e.getMessage());
+    public void createImageThumbnails(ReadableArray imagePaths, Integer width, ReadableMap options) {
+        scheduleBatch(imagePaths, width, options, true);
+    }
+
+    @ReactMethod
+    public void cancelThumbnails(ReadableArray requestIds) {
+        for (int i = 0; i < requestIds.size(); i++) {
+            scheduler.cancel(requestIds.getInt(i));
+        }
+    }
+
+    private void scheduleBatch(ReadableArray paths, Integer width, ReadableMap options, boolean image) {
+        ReadableArray requestIds = options.hasKey(REQUEST_IDS) ? options.getArray(REQUEST_IDS) : null;
+        int priority = options.hasKey(PRIORITY) ? options.getInt(PRIORITY) : DEFAULT_PRIORITY;
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.getString(i);
+            int requestId = requestIds != null ? requestIds.getInt(i) : ThumbnailScheduler.NO_REQUEST_ID;
+            long start = System.nanoTime();
+            scheduler.schedule(requestId, "uri|" + path + "|" + width, priority, thumbnailUriWork(path, width, image),
+                    new ThumbnailScheduler.Callback() {
+                        @Override
+                        public void onSuccess(String result) {
+                            requestLatency.recordSince(start);
+                            sendThumbnailReady(requestId, path, width, result, null);
+                        }
+
+                        @Override
+                        public void onError(String message) {
+                            sendThumbnailReady(requestId, path, width, null, message);
+                        }
+                    });
+        }
+    }
+
+    private Callable<String> thumbnailUriWork(String path, Integer width, boolean image) {
+        return () -> {
+            String cacheKey = ThumbnailCache.keyFor(new File(path), width);
+            File thumbnailFile = thumbnailCache.getFile(cacheKey);
+            cacheHits.record(thumbnailFile != null);
+            if (thumbnailFile == null) {
+                long start = System.nanoTime();
+                byte[] thumbnail = image
+                        ? ThumbnailHelper.createImageThumbnail(path, width)
+                        : ThumbnailHelper.createVideoThumbnailJpeg(reactContext, path, width);
+                (image ? createImageLatency : createVideoLatency).recordSince(start);
+                if (thumbnail == null) {
+                    throw new Exception(image ? "Failed to decode image" : "Failed to decode 1st second from video");
+                }
+                thumbnailFile = thumbnailCache.putFile(cacheKey, thumbnail);
+                if (thumbnailFile == null) {
+                    throw new Exception("Failed to store thumbnail");
                 }
             }
-        });
+            return Uri.fromFile(thumbnailFile).toString();
+        };
+    }
+
+    private void sendThumbnailReady(int requestId, String path, Integer width, String uri, String errorMessage) {
+        WritableMap params = Arguments.createMap();
+        params.putInt("requestId", requestId);
+        params.putString("path", path);
+        params.putInt("width", width != null ? width : 0);
+        if (uri != null) {
+            params.putString("uri", uri);
+        }
+        if (errorMessage != null) {
+            params.putString("error", errorMessage);
+        }
+        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(THUMBNAIL_READY_EVENT, params);
     }
-}
\ No newline at end of file
+
+    @ReactMethod
+    public void addListener(String eventName) { }
+
+    @ReactMethod
+    public void removeListeners(Integer count) { }
+}
@@ -0,0 +1,181 @@
+package com.telenko.filemanager.thumbnail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Runs thumbnail decodes on a core sized pool. Jobs are ordered by priority and
+// then newest first, since the latest requests belong to rows which just scrolled
+// into view. Requests for the same key share one decode, and a job is dropped
+// from the queue once every request waiting on it was cancelled.
+public class ThumbnailScheduler {
+
+    public interface Callback {
+        void onSuccess(String result);
+
+        void onError(String message);
+    }
+
+    // Request which nobody will cancel, e.g. legacy calls without an id
+    public static final int NO_REQUEST_ID = -1;
+    private static final int MAX_QUEUED_JOBS = 256;
+
+    private class Job implements Runnable, Comparable<Job> {
+        final String key;
+        final Callable<String> work;
+        final long sequence;
+        int priority;
+        boolean started = false;
+        final Map<Integer, Callback> waiters = new HashMap<>();
+        final List<Callback> anonymousWaiters = new ArrayList<>();
+
+        Job(String key, Callable<String> work, int priority, long sequence) {
+            this.key = key;
+            this.work = work;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(other.sequence, sequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (ThumbnailScheduler.this) {
+                if (!hasWaiters()) {
+                    jobs.remove(key, this);
+                    return;
+                }
+                started = true;
+            }
+            String result = null;
+            String error = null;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                error = e.getMessage();
+            }
+            List<Callback> callbacks;
+            synchronized (ThumbnailScheduler.this) {
+                jobs.remove(key, this);
+                callbacks = new ArrayList<>(waiters.values());
+                callbacks.addAll(anonymousWaiters);
+                for (Integer requestId : waiters.keySet()) {
+                    requestsToKeys.remove(requestId);
+                }
+            }
+            for (Callback callback : callbacks) {
+                if (result != null) {
+                    callback.onSuccess(result);
+                } else {
+                    callback.onError(error != null ? error : "Failed to create thumbnail");
+                }
+            }
+        }
+
+        boolean hasWaiters() {
+            return !waiters.isEmpty() || !anonymousWaiters.isEmpty();
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final Map<String, Job> jobs = new HashMap<>();
+    private final Map<Integer, String> requestsToKeys = new HashMap<>();
+    private long sequence = 0;
+
+    public ThumbnailScheduler() {
+        int cores = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.executor = new ThreadPoolExecutor(cores, cores, 30, TimeUnit.SECONDS, queue);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void schedule(int requestId, String key, int priority, Callable<String> work, Callback callback) {
+        Job job = jobs.get(key);
+        if (job == null) {
+            job = new Job(key, work, priority, sequence++);
+            jobs.put(key, job);
+            addWaiter(job, requestId, callback);
+            executor.execute(job);
+            trimQueue();
+            return;
+        }
+        addWaiter(job, requestId, callback);
+        if (!job.started && priority > job.priority && queue.remove(job)) {
+            // Re-queue so the heap picks up the raised priority
+            job.priority = priority;
+            queue.offer(job);
+        }
+    }
+
+    public void cancel(int requestId) {
+        Callback cancelled = null;
+        synchronized (this) {
+            String key = requestsToKeys.remove(requestId);
+            Job job = key != null ? jobs.get(key) : null;
+            if (job == null || job.started) {
+                return;
+            }
+            cancelled = job.waiters.remove(requestId);
+            if (!job.hasWaiters() && executor.remove(job)) {
+                jobs.remove(key);
+            }
+        }
+        if (cancelled != null) {
+            cancelled.onError("Cancelled");
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    private void addWaiter(Job job, int requestId, Callback callback) {
+        if (requestId == NO_REQUEST_ID) {
+            job.anonymousWaiters.add(callback);
+            return;
+        }
+        job.waiters.put(requestId, callback);
+        requestsToKeys.put(requestId, job.key);
+    }
+
+    // Drops the least important job when scrolling outpaces decoding
+    private void trimQueue() {
+        if (queue.size() <= MAX_QUEUED_JOBS) {
+            return;
+        }
+        Job leastImportant = null;
+        for (Runnable runnable : queue) {
+            Job job = (Job) runnable;
+            if (leastImportant == null || job.compareTo(leastImportant) > 0) {
+                leastImportant = job;
+            }
+        }
+        if (leastImportant == null || !queue.remove(leastImportant)) {
+            return;
+        }
+        jobs.remove(leastImportant.key);
+        List<Callback> dropped = new ArrayList<>(leastImportant.waiters.values());
+        dropped.addAll(leastImportant.anonymousWaiters);
+        for (Integer requestId : leastImportant.waiters.keySet()) {
+            requestsToKeys.remove(requestId);
+        }
+        for (Callback callback : dropped) {
+            callback.onError("Cancelled");
+        }
+    }
+}
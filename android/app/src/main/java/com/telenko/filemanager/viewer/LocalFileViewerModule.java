@@ -2,40 +2,63 @@
 package com.telenko.filemanager.viewer;
 
 import android.app.Activity;
+import android.content.BroadcastReceiver;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.content.ContentUris;
 import android.net.Uri;
+import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 import android.webkit.MimeTypeMap;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Environment;
-import android.provider.MediaStore;
-import android.media.MediaScannerConnection;
-import android.util.Log;
 
 import com.facebook.react.bridge.ActivityEventListener;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.BaseActivityEventListener;
+import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.UiThreadUtil;
 import com.facebook.react.bridge.WritableMap;
 
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.telenko.filemanager.media.MediaStoreIndex;
+import com.telenko.filemanager.metrics.HitRatio;
+import com.telenko.filemanager.metrics.LatencyHistogram;
+import com.telenko.filemanager.metrics.Metrics;
 import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class LocalFileViewerModule extends ReactContextBaseJavaModule {
     private final ReactApplicationContext reactContext;
+    private final MediaStoreIndex mediaStoreIndex;
     private static final String SHOW_OPEN_WITH_DIALOG = "showOpenWithDialog" ;
     private static final String SHOW_STORE_SUGGESTIONS ="showAppsSuggestions";
-    private static final String OPEN_EVENT = "LocalFileViewerDidOpen";
     private static final String DISMISS_EVENT = "LocalFileViewerDidDismiss";
     private static final Integer RN_FILE_VIEWER_REQUEST = 33341;
 
+    // Resolved handler per MIME type, cleared whenever an app is installed or removed
+    private final Map<String, Boolean> handlersByMimeType = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // From the call until the viewer activity is launched
+    private final LatencyHistogram openLatency = Metrics.histogram("viewer.open");
+    private final LatencyHistogram mediaUriLatency = Metrics.histogram("viewer.mediaUri");
+    private final HitRatio handlerCacheHits = Metrics.hitRatio("viewer.handlers");
+
+    private final BroadcastReceiver packagesReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            handlersByMimeType.clear();
+        }
+    };
+
     private final ActivityEventListener mActivityEventListener = new BaseActivityEventListener() {
         @Override
         public void onActivityResult(final Activity activity, final int requestCode, final int resultCode, final Intent intent) {
@@ -46,72 +69,82 @@ public class LocalFileViewerModule extends ReactContextBaseJavaModule {
     public LocalFileViewerModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        // Starts the bulk index build, so it is ready by the time the first file is opened
+        this.mediaStoreIndex = MediaStoreIndex.getInstance(reactContext);
         reactContext.addActivityEventListener(mActivityEventListener);
+        IntentFilter packagesFilter = new IntentFilter();
+        packagesFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packagesFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packagesFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packagesFilter.addDataScheme("package");
+        ContextCompat.registerReceiver(reactContext, packagesReceiver, packagesFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
     }
 
+    // Lookups and intent resolution run on the executor, so a slow SD card or MediaStore
+    // does not hold up other native calls; only the activity launch goes to the UI thread.
     @ReactMethod
-    public void open(String path, Integer currentId, ReadableMap options, String dialogTitle) {
-        // Check if the file exists
-        File file = new File(path);
-        if (!file.exists()) {
-            // File does not exist
-            return;
-        }
-
-        // Get the MIME type of the file
-        String mimeType = getMimeType(path);
-
-        final Uri data = buildFileUri(path, mimeType);
-
+    public void open(String path, Integer currentId, ReadableMap options, String dialogTitle, Promise promise) {
         Boolean showOpenWithDialog = options.hasKey(SHOW_OPEN_WITH_DIALOG) ? options.getBoolean(SHOW_OPEN_WITH_DIALOG) : false;
         Boolean showStoreSuggestions = options.hasKey(SHOW_STORE_SUGGESTIONS) ? options.getBoolean(SHOW_STORE_SUGGESTIONS) : false;
 
-        if(data == null) {
-            sendEvent(OPEN_EVENT, currentId, "Invalid file");
-            return;
-        }
+        long start = System.nanoTime();
+        executor.execute(() -> {
+            try {
+                // Check if the file exists
+                File file = new File(path);
+                if (!file.exists()) {
+                    throw new Exception("File does not exist");
+                }
+
+                // Get the MIME type of the file
+                String mimeType = getMimeType(path);
+
+                final Uri data = buildFileUri(path, mimeType);
+                if (data == null) {
+                    throw new Exception("Invalid file");
+                }
 
-         Intent shareIntent = new Intent();
-         shareIntent.setAction(Intent.ACTION_VIEW);
-         shareIntent.addCategory("android.intent.category.DEFAULT");
-         shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-         shareIntent.addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
-         shareIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-         shareIntent.setDataAndType(data, mimeType);
-         shareIntent.putExtra(Intent.EXTRA_STREAM, data);
-         Intent intentActivity;
-
-         if (showOpenWithDialog) {
-             intentActivity = Intent.createChooser(shareIntent, dialogTitle);
-         } else {
-             intentActivity = shareIntent;
-         }
-
-         PackageManager pm = getCurrentActivity().getPackageManager();
-
-         if (shareIntent.resolveActivity(pm) != null) {
-             try {
-                 getCurrentActivity().startActivityForResult(intentActivity, currentId + RN_FILE_VIEWER_REQUEST);
-                 sendEvent(OPEN_EVENT, currentId, null);
-             }
-             catch(Exception e) {
-                 sendEvent(OPEN_EVENT, currentId, e.getMessage());
-             }
-         } else {
-             try {
-                 if (showStoreSuggestions) {
-                     if(mimeType == null) {
-                         throw new Exception("It wasn't possible to detect the type of the file");
-                     }
-                     Intent storeIntent = new Intent(Intent.ACTION_VIEW, Uri.parse("market://search?q=" + mimeType + "&c=apps"));
-                     getCurrentActivity().startActivity(storeIntent);
-                 }
-                 throw new Exception("No app associated with this mime type");
-             }
-             catch(Exception e) {
-                 sendEvent(OPEN_EVENT, currentId, e.getMessage());
-             }
-         }
+                Intent shareIntent = new Intent();
+                shareIntent.setAction(Intent.ACTION_VIEW);
+                shareIntent.addCategory("android.intent.category.DEFAULT");
+                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                shareIntent.addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+                shareIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                shareIntent.setDataAndType(data, mimeType);
+                shareIntent.putExtra(Intent.EXTRA_STREAM, data);
+                Intent intentActivity = showOpenWithDialog ? Intent.createChooser(shareIntent, dialogTitle) : shareIntent;
+
+                if (hasHandler(shareIntent, mimeType)) {
+                    UiThreadUtil.runOnUiThread(() -> {
+                        try {
+                            requireActivity().startActivityForResult(intentActivity, currentId + RN_FILE_VIEWER_REQUEST);
+                            openLatency.recordSince(start);
+                            promise.resolve(null);
+                        } catch (Exception e) {
+                            promise.reject("Error", e);
+                        }
+                    });
+                    return;
+                }
+                if (!showStoreSuggestions) {
+                    throw new Exception("No app associated with this mime type");
+                }
+                if (mimeType == null) {
+                    throw new Exception("It wasn't possible to detect the type of the file");
+                }
+                Intent storeIntent = new Intent(Intent.ACTION_VIEW, Uri.parse("market://search?q=" + mimeType + "&c=apps"));
+                UiThreadUtil.runOnUiThread(() -> {
+                    try {
+                        requireActivity().startActivity(storeIntent);
+                        promise.reject("Error", "No app associated with this mime type");
+                    } catch (Exception e) {
+                        promise.reject("Error", e);
+                    }
+                });
+            } catch (Exception e) {
+                promise.reject("Error", e);
+            }
+        });
     }
 
     @Override
@@ -119,24 +152,13 @@ public class LocalFileViewerModule extends ReactContextBaseJavaModule {
         return "LocalFileViewer";
     }
 
-    // Currently not in use
-    private void openImageViaScanner(Context context, String filePath) {
-        MediaScannerConnection.scanFile(
-            context,
-            new String[]{filePath},
-            null,
-            new MediaScannerConnection.OnScanCompletedListener() {
-                @Override
-                public void onScanCompleted(String path, Uri uri) {
-                    if (uri != null) {
-                        Log.i("Scanned", "Scanned image path: " + path);
-                        Intent intent = new Intent(Intent.ACTION_VIEW);
-                        intent.setDataAndType(uri, "image/*");
-                        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                        context.startActivity(intent);
-                    }
-                }
-            });
+    @Override
+    public void invalidate() {
+        reactContext.unregisterReceiver(packagesReceiver);
+        reactContext.removeActivityEventListener(mActivityEventListener);
+        executor.shutdown();
+        mediaStoreIndex.release();
+        super.invalidate();
     }
 
     private void sendEvent(String eventName, Integer currentId, String errorMessage) {
@@ -150,75 +172,38 @@ public class LocalFileViewerModule extends ReactContextBaseJavaModule {
     }
 
     private Uri buildFileUri(String filePath, String mimeType) {
-        if (mimeType != null) {
-            if (mimeType.startsWith("image/")) {
-                return buildImageUri(filePath);
-            } else if (mimeType.startsWith("video/")) {
-                return buildVideoUri(filePath);
-            } else if (mimeType.startsWith("audio/")) {
-                return buildMusicUri(filePath);
-            }
+        if (mimeType != null && (mimeType.startsWith("image/") || mimeType.startsWith("video/") || mimeType.startsWith("audio/"))) {
+            long start = System.nanoTime();
+            Uri uri = mediaStoreIndex.getUri(filePath, mimeType);
+            mediaUriLatency.recordSince(start);
+            return uri;
         }
         return buildNonMediaUri(filePath);
     }
 
-     private Uri buildImageUri(String filePath) {
-        String sortOrder = MediaStore.Images.Media.DISPLAY_NAME + " ASC";
-         // Query the MediaStore to get the ID of the image file based on file path
-         Cursor cursor = reactContext.getContentResolver().query(
-                 MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
-                 new String[]{MediaStore.Images.Media._ID},
-                 MediaStore.Images.Media.DATA + "=? AND " + MediaStore.Images.Media.DISPLAY_NAME + "=?",
-                 new String[]{filePath, new File(filePath).getName()},
-                 sortOrder
-         );
-
-         if (cursor != null && cursor.moveToFirst()) {
-             long mediaId = cursor.getLong(cursor.getColumnIndex(MediaStore.Images.Media._ID));
-             cursor.close();
-             return ContentUris.withAppendedId(MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL), mediaId);
-         }
-         return null;
-     }
-
-    private Uri buildVideoUri(String filePath) {
-        // Query the MediaStore to get the ID of the media file
-        Cursor cursor = reactContext.getContentResolver().query(
-                MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                new String[]{MediaStore.Video.Media._ID},
-                MediaStore.Video.Media.DATA + "=? AND " + MediaStore.Video.Media.DISPLAY_NAME + "=?",
-                new String[]{filePath, new File(filePath).getName()},
-                null
-        );
-
-        if (cursor != null && cursor.moveToFirst()) {
-            long mediaId = cursor.getLong(cursor.getColumnIndex(MediaStore.Files.FileColumns._ID));
-            cursor.close();
-            return Uri.withAppendedPath(MediaStore.Files.getContentUri("external"), String.valueOf(mediaId));
-        }
-        return null;
+    private Uri buildNonMediaUri(String filePath) {
+        return FileProvider.getUriForFile(reactContext, "com.telenko.filemanager.fileprovider", new File(filePath));
     }
 
-    private Uri buildMusicUri(String filePath) {
-        // Query the MediaStore to get the ID of the media file
-        Cursor cursor = reactContext.getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                new String[]{MediaStore.Audio.Media._ID},
-                MediaStore.Audio.Media.DATA + "=? AND " + MediaStore.Audio.Media.DISPLAY_NAME + "=?",
-                new String[]{filePath, new File(filePath).getName()},
-                null
-        );
-
-        if (cursor != null && cursor.moveToFirst()) {
-            long mediaId = cursor.getLong(cursor.getColumnIndex(MediaStore.Files.FileColumns._ID));
-            cursor.close();
-            return Uri.withAppendedPath(MediaStore.Files.getContentUri("external"), String.valueOf(mediaId));
+    private boolean hasHandler(Intent intent, String mimeType) {
+        String key = mimeType != null ? mimeType : "";
+        Boolean cached = handlersByMimeType.get(key);
+        handlerCacheHits.record(cached != null);
+        if (cached != null) {
+            return cached;
         }
-        return null;
+        PackageManager pm = reactContext.getPackageManager();
+        boolean resolved = intent.resolveActivity(pm) != null;
+        handlersByMimeType.put(key, resolved);
+        return resolved;
     }
 
-    private Uri buildNonMediaUri(String filePath) {
-        return FileProvider.getUriForFile(getCurrentActivity(), "com.telenko.filemanager.fileprovider", new File(filePath));
+    private Activity requireActivity() throws Exception {
+        Activity activity = getCurrentActivity();
+        if (activity == null) {
+            throw new Exception("Activity doesn't exist");
+        }
+        return activity;
     }
 
     private String getMimeType(String filePath) {
@@ -0,0 +1,17 @@
+package com.telenko.filemanager;
+
+import com.facebook.react.ReactPackage;
+
+import java.util.Collections;
+import java.util.List;
+
+// Benchmarks and other debug tools are not part of release builds, see the debug source set
+public class DebugPackages {
+
+    private DebugPackages() {
+    }
+
+    public static List<ReactPackage> get() {
+        return Collections.emptyList();
+    }
+}
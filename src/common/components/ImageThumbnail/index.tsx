@@ -0,0 +1,68 @@
+import React, { useEffect, useRef, useState } from 'react';
+import { DirItem, FileApi, ThumbnailPriority } from '../../../services/FileApi';
+import { Cache } from '../../../services/Cache';
+import { Image, PixelRatio, View } from 'react-native';
+
+const ImageThumbnail = ({
+  file,
+  width,
+  iconRadius,
+}: {
+  file: DirItem;
+  width: number;
+  iconRadius: number;
+}) => {
+  // decoded size matches the cell, not the photo
+  const PREVIEW_SIZE = PixelRatio.getPixelSizeForLayoutSize(width);
+  const [thumbnail, setThumbnail] = useState<string | null>(() =>
+    Cache.getImagePreview(file.path, PREVIEW_SIZE),
+  );
+  const [attempt, setAttempt] = useState(0);
+  const retried = useRef(false);
+  useEffect(() => {
+    if (thumbnail) {
+      return;
+    }
+    let mounted = true;
+    const requestId = FileApi.createThumbnailRequestId();
+    FileApi.makeImagePreview(file, PREVIEW_SIZE, {
+      requestId,
+      priority: ThumbnailPriority.VISIBLE,
+    })
+      .then(preview => {
+        if (preview) {
+          Cache.putImagePreview(file.path, preview, PREVIEW_SIZE);
+          if (mounted) {
+            setThumbnail(preview);
+          }
+        }
+      })
+      .catch(() => {});
+    return () => {
+      mounted = false;
+      // cell left the screen, its decode is not needed anymore
+      FileApi.cancelThumbnail(requestId);
+    };
+  }, [attempt]);
+  const onError = () => {
+    // cached file was trimmed natively, the next request makes a new one
+    if (!retried.current) {
+      retried.current = true;
+      Cache.removeImagePreview(file.path, PREVIEW_SIZE);
+      setThumbnail(null);
+      setAttempt(a => a + 1);
+    }
+  };
+  const style = {
+    width: '100%' as const,
+    height: '100%' as const,
+    borderRadius: iconRadius,
+  };
+  return thumbnail ? (
+    <Image source={{ uri: thumbnail }} style={style} onError={onError} />
+  ) : (
+    <View style={[style, { backgroundColor: '#c2c2c2' }]} />
+  );
+};
+
+export default ImageThumbnail;
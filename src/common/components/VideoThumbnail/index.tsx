@@ -1,5 +1,9 @@
 import React, { useEffect, useRef, useState } from 'react';
-import { DirItem, FileApi } from '../../../services/FileApi';
+import {
+  DirItem,
+  FileApi,
+  ThumbnailPriority,
+} from '../../../services/FileApi';
 import { Cache } from '../../../services/Cache';
 import { ImageBackground } from 'react-native';
 import { Icon } from 'react-native-paper';
@@ -17,8 +21,25 @@ const VideoThumbnail = ({
     'data:image/gif;base64,R0lGODlhAQABAIAAAMLCwgAAACH5BAAAAAAALAAAAAABAAEAAAICRAEAOw==';
   const [thumbnail, setThumbnail] = useState<string | null>(null);
   const makeThumbnailAllowed = useRef<boolean>(false);
+  const requestIdRef = useRef<number>(0);
+  const retried = useRef(false);
   const PREVIEW_SIZE = width * 2;
+  const requestPreview = () => {
+    FileApi.makeVideoPreview(file, PREVIEW_SIZE, {
+      requestId: requestIdRef.current,
+      priority: ThumbnailPriority.VISIBLE,
+    })
+      .then(preview => {
+        setThumbnail(preview);
+        if (preview) {
+          Cache.putVideoPreview(file.path, preview, PREVIEW_SIZE);
+        }
+      })
+      .catch(() => {});
+  };
   useEffect(() => {
+    const requestId = FileApi.createThumbnailRequestId();
+    requestIdRef.current = requestId;
     (async () => {
       // @ts-ignore
       await new Promise(r => setTimeout(r, 600));
@@ -27,25 +48,29 @@ const VideoThumbnail = ({
         if (cachedPreview) {
           setThumbnail(cachedPreview);
         } else {
-          FileApi.makeVideoPreview(file, PREVIEW_SIZE)
-            .then(preview => {
-              setThumbnail(preview);
-              if (preview) {
-                Cache.putVideoPreview(file.path, preview, PREVIEW_SIZE);
-              }
-            })
-            .catch(() => {});
+          requestPreview();
         }
       }
     })();
     return () => {
       makeThumbnailAllowed.current = false;
+      // row left the screen, its decode is not needed anymore
+      FileApi.cancelThumbnail(requestId);
     };
   }, []);
   return (
     <ImageBackground
       onLayout={() => (makeThumbnailAllowed.current = true)}
       source={{ uri: thumbnail ?? fallbackThumbnail }}
+      onError={() => {
+        // cached file was trimmed natively, the next request makes a new one
+        if (thumbnail && !retried.current) {
+          retried.current = true;
+          Cache.removeVideoPreview(file.path, PREVIEW_SIZE);
+          setThumbnail(null);
+          requestPreview();
+        }
+      }}
       style={{
         width,
         height: width,
@@ -1,6 +1,10 @@
 import React, { useEffect, useState } from 'react';
 import Video, { ViewType } from 'react-native-video';
-import { DirItem, FileApi } from '../../../services/FileApi';
+import {
+  DirItem,
+  FileApi,
+  ThumbnailPriority,
+} from '../../../services/FileApi';
 import { useWindowDimensions, View } from 'react-native';
 import { Cache } from '../../../services/Cache';
 import LoadingIndicator from '../LoadingIndicator';
@@ -31,7 +35,9 @@ const VideoViewer: React.FC<{
       setPreview(cachedPreview);
     } else {
       // @ts-ignore
-      FileApi.makeVideoPreview(file)
+      FileApi.makeVideoPreview(file, 0, {
+        priority: ThumbnailPriority.PREVIEW,
+      })
         .then(setPreview)
         .catch(() => {});
     }
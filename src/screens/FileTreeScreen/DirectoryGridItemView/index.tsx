@@ -1,5 +1,5 @@
 import React, { useMemo, useRef, useState } from 'react';
-import { Image, StyleSheet, useWindowDimensions, View } from 'react-native';
+import { StyleSheet, useWindowDimensions, View } from 'react-native';
 import { IconButton, Text } from 'react-native-paper';
 import {
   FileApi,
@@ -17,6 +17,7 @@ import { type FileScreenProps } from '..';
 import { useFileTreeContext } from '../FileTreeContext';
 import { useExceptionHandler } from '../../../common/components/ExceptionHandler';
 import VideoThumbnail from '../../../common/components/VideoThumbnail';
+import ImageThumbnail from '../../../common/components/ImageThumbnail';
 import { calcGridColumns, GRID_HEIGHT } from '../../../common/utils/layout';
 import { Gesture, GestureDetector } from 'react-native-gesture-handler';
 import Animated, {
@@ -126,13 +127,10 @@ const DirectoryGridItemView: React.FC<DirItemProps> = ({
   const content = useMemo(
     () =>
       FileApi.isFileImage(item) ? (
-        <Image
-          source={{ uri: `file://${item.path}` }}
-          style={{
-            width: '100%',
-            height: '100%',
-            borderRadius: ICON_RADIUS,
-          }}
+        <ImageThumbnail
+          file={item}
+          width={GRID_WIDTH - GRID_GAP_SINGLE * 2 - 10}
+          iconRadius={ICON_RADIUS}
         />
       ) : FileApi.isFileVideo(item) ? (
         <View style={{ justifyContent: 'center', alignItems: 'center' }}>
@@ -29,16 +29,17 @@ const MultiSelectActions: React.FC<{
   const exceptionHandler = useExceptionHandler();
 
   const menuItems = useMemo(() => {
-    if (dirItemsForOperations.length !== 1) {
+    if (!dirItemsForOperations.length) {
       return [];
     }
+    const single = dirItemsForOperations.length === 1;
     const item = dirItemsForOperations[0];
     return [
       {
         title: t('openWith'),
         icon: 'open-in-app',
         key: 'openWith',
-        enabled: item.isFile(),
+        enabled: single && item.isFile(),
         onPress: () => {
           FileApi.openFile(item).catch(exceptionHandler.handleError);
         },
@@ -47,7 +48,7 @@ const MultiSelectActions: React.FC<{
         title: t('rename'),
         icon: 'form-textbox',
         key: 'rename',
-        enabled: true,
+        enabled: single,
         onPress: () => {
           fileManager.renameContent(item);
         },
@@ -56,11 +57,23 @@ const MultiSelectActions: React.FC<{
         title: t('details'),
         key: 'details',
         icon: 'information-outline',
-        enabled: true,
+        enabled: single,
         onPress: () => {
           fileManager.showFileDetails(item);
         },
       },
+      {
+        title: t('compress'),
+        key: 'compress',
+        icon: 'zip-box-outline',
+        enabled: true,
+        onPress: () => {
+          fileManager
+            .compressContent(dirItemsForOperations)
+            .then(() => fileManager.setReloadRequired(true))
+            .catch(exceptionHandler.handleError);
+        },
+      },
     ]
       .filter(menuItem => menuItem.enabled)
       .map(menuItem => ({
@@ -128,7 +141,7 @@ const MultiSelectActions: React.FC<{
           <ActionButton
             text={t('more')}
             icon={'dots-vertical'}
-            disabled={dirItemsForOperations.length !== 1}
+            disabled={!dirItemsForOperations.length}
             style={ICON_STYLE}
             onPress={() => {
               setMenuOpen(true);
@@ -9,12 +9,15 @@ import {
   ProgressBar,
   Text,
 } from 'react-native-paper';
-import { FileApi } from '../../../services/FileApi';
+import { FileApi, StorageItem } from '../../../services/FileApi';
 import { useFileManager } from '../../../widgets/FileManager';
 import { useNavigation } from '../../../common/hooks/useNavigation';
 import { TouchableOpacity, useWindowDimensions, View } from 'react-native';
 import { theme } from '../../../theme';
 
+const storageIcon = (root: StorageItem) =>
+  root.isMainDeviceStorage ? 'memory' : root.isUsb ? 'usb' : 'sd';
+
 const StorageSelect: React.FC<{ route: string }> = ({ route }) => {
   const fileManager = useFileManager();
   const [open, setOpen] = useState(false);
@@ -42,10 +45,7 @@ const StorageSelect: React.FC<{ route: string }> = ({ route }) => {
           }}
           onPress={() => setOpen(true)}>
           <View style={{ marginRight: 5 }}>
-            <Icon
-              size={20}
-              source={matchingRoot.isMainDeviceStorage ? 'memory' : 'sd'}
-            />
+            <Icon size={20} source={storageIcon(matchingRoot)} />
           </View>
           <Text>{matchingRoot?.name}</Text>
           <View style={{ marginLeft: 5 }}>
@@ -64,10 +64,7 @@ const StorageSelect: React.FC<{ route: string }> = ({ route }) => {
                 alignItems: 'center',
                 justifyContent: 'center',
               }}>
-              <Icon
-                size={25}
-                source={root.isMainDeviceStorage ? 'memory' : 'sd'}
-              />
+              <Icon size={25} source={storageIcon(root)} />
             </View>
           )}
           title={root.name}
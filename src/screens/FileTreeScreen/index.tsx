@@ -1,12 +1,24 @@
-import React, { useCallback, useEffect, useMemo, useState } from 'react';
+import React, {
+  useCallback,
+  useEffect,
+  useMemo,
+  useRef,
+  useState,
+} from 'react';
 import ReactNativeHapticFeedback from 'react-native-haptic-feedback';
 import { DirItem, FileApi } from '../../services/FileApi';
 import FilePathBreadCrumb from './FilePathBreadCrumb';
 import { useNavigation } from '../../common/hooks/useNavigation';
-import { View, StyleSheet, useWindowDimensions } from 'react-native';
+import {
+  AppState,
+  View,
+  StyleSheet,
+  useWindowDimensions,
+} from 'react-native';
 import { FileTreeContext, FileTreeContextType } from './FileTreeContext';
 import { DataProvider, LayoutProvider } from 'recyclerlistview';
 import { Cache } from '../../services/Cache';
+import { FileSearch } from '../../services/FileSearch';
 import { useTranslation } from 'react-i18next';
 import { navigateFromSelectable } from '../../common/utils/navigator';
 import { useFileManager } from '../../widgets/FileManager';
@@ -61,12 +73,18 @@ const FileScreen: React.FC<FileScreenProps> = ({
   const { t } = useTranslation();
   const [dirLoadingDone, setDirLoadingDone] = useState(false);
   const [dirItems, setDirItems] = useState<DirItem[]>([]);
+  // sort direction which native listing already applied to dirItems
+  const [dirItemsSort, setDirItemsSort] = useState<'asc' | 'desc'>('asc');
   const [dirLoading, setDirLoading] = useState<boolean>(false);
   const [dirError, setDirError] = useState<Error | null>(null);
   const [selectedPaths, setSelectedPaths] = useState<string[]>([]);
   const [copyInProgress, setCopyInProgress] = useState<boolean>(false);
   const [moveInProgress, setMoveInProgress] = useState<boolean>(false);
   const fileManager = useFileManager();
+  const sortRef = useRef(fileManager.sort);
+  sortRef.current = fileManager.sort;
+  // first focus is covered by the reload on route change
+  const focusedRef = useRef(false);
   const isMultiSelectActivated = selectedPaths.length > 0;
   const isStorageLevel = fileManager.roots.map(r => r.path).includes(route);
   const { saveLatestFolder } = useStoreLatestFolder();
@@ -135,8 +153,14 @@ const FileScreen: React.FC<FileScreenProps> = ({
     // @ts-ignore
     await new Promise(r => setTimeout(r, 100));
     try {
-      const newDirItems = await FileApi.readDir(route ?? FileApi.ROOT_PATH);
-      setDirItems(newDirItems.filter(file => !FileApi.isItemHidden(file)));
+      const sort = sortRef.current;
+      const newDirItems = await FileApi.readDir(route ?? FileApi.ROOT_PATH, {
+        showHidden: false,
+        sortBy: 'date',
+        sortDirection: sort,
+      });
+      setDirItemsSort(sort);
+      setDirItems(newDirItems);
       setDirLoadingDone(true);
     } catch (e: any) {
       setDirError(e as Error);
@@ -148,11 +172,11 @@ const FileScreen: React.FC<FileScreenProps> = ({
   }, [route]);
 
   const sortedDirItems = useMemo<DirItem[]>(() => {
-    return FileApi.sortDirItems(
-      dirItems.filter(file => !FileApi.isItemHidden(file)),
-      fileManager.sort,
-    );
-  }, [dirItems, fileManager.sort]);
+    if (dirItemsSort === fileManager.sort) {
+      return dirItems;
+    }
+    return FileApi.sortDirItems(dirItems, fileManager.sort);
+  }, [dirItems, dirItemsSort, fileManager.sort]);
   useEffect(() => {
     Cache.putDirItems(route ?? FileApi.ROOT_PATH, sortedDirItems);
   }, [sortedDirItems]);
@@ -174,16 +198,63 @@ const FileScreen: React.FC<FileScreenProps> = ({
 
   useEffect(() => {
     if (fileManager.reloadRequired) {
+      // FileObserver drops events on overflow and on some FUSE mounts, so
+      // the watcher alone cannot be trusted with the result of an operation
       reloadDir();
       fileManager.setReloadRequired(false);
       setSelectedPaths([]);
     }
   }, [fileManager.reloadRequired]);
 
+  useEffect(() => {
+    let unwatch: (() => void) | null = null;
+    let unmounted = false;
+    FileApi.watchDir(
+      route ?? FileApi.ROOT_PATH,
+      { showHidden: false },
+      change => {
+        if (change.reset) {
+          reloadDir();
+          return;
+        }
+        const sort = sortRef.current;
+        setDirItems(items => FileApi.applyDirChange(items, change, sort));
+        setDirItemsSort(sort);
+        FileSearch.refreshFolder(route ?? FileApi.ROOT_PATH);
+      },
+    )
+      .then(stop => {
+        if (unmounted) {
+          stop();
+          return;
+        }
+        unwatch = stop;
+      })
+      .catch(() => {
+        // listing is still reloaded on focus, resume and after operations
+      });
+    return () => {
+      unmounted = true;
+      unwatch?.();
+    };
+  }, [route, reloadDir]);
+
+  useEffect(() => {
+    // changes made while the app was in background may not have been
+    // delivered, screens below in the stack reload once they get focus
+    const subscription = AppState.addEventListener('change', state => {
+      if (state === 'active' && navigator.isFocused()) {
+        reloadDir();
+      }
+    });
+    return () => subscription.remove();
+  }, [navigator, reloadDir]);
+
   useEffect(() => {
     setSelectedPaths([]);
     reloadDir();
     Cache.clearVideoPreviews();
+    Cache.clearImagePreviews();
     return () => {
       Cache.clearDirItems();
       setDirLoadingDone(false);
@@ -197,7 +268,12 @@ const FileScreen: React.FC<FileScreenProps> = ({
       if (route && !isOperational) {
         saveLatestFolder(route);
       }
-    }, []),
+      if (focusedRef.current) {
+        // back from another screen, the watcher may have missed changes
+        reloadDir();
+      }
+      focusedRef.current = true;
+    }, [reloadDir]),
   );
 
   const backHandle = useCallback(() => {
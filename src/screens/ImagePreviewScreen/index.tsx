@@ -143,9 +143,9 @@ const ImagePreviewScreen: React.FC<ImageViewerScreenProps> = ({
       let dirItems = Cache.getDirItems(FileApi.getParentDirectoryPath(route));
       if (!dirItems) {
         // if no files in cache - then fetch them manually
-        dirItems = FileApi.sortDirItems(
-          await FileApi.readDir(FileApi.getParentDirectoryPath(route)),
-          sort,
+        dirItems = await FileApi.readDir(
+          FileApi.getParentDirectoryPath(route),
+          { showHidden: true, sortBy: 'date', sortDirection: sort },
         );
       }
       setImagesInFolderSorted(dirItems.filter(FileApi.isFileViewable));
@@ -0,0 +1,56 @@
+import { NativeModules } from 'react-native';
+import type { DirItem } from './FileApi';
+
+const NativeArchive = NativeModules.Archive;
+
+export type ArchiveItem = DirItem & {
+  // path inside the archive, e.g. "photos/2024/img.jpg"
+  entryPath: string;
+};
+
+export type ArchivePage = {
+  items: ArchiveItem[];
+  total: number;
+};
+
+type NativeArchivePage = {
+  paths: string[];
+  sizes: number[];
+  mtimes: number[];
+  directories: boolean[];
+  total: number;
+};
+
+// Contents of zip/tar/tar.gz/gz archives without extracting them,
+// see ArchiveModule. Extraction is FileOperations.extractArchive.
+export const ArchiveApi = {
+  // "" lists the archive root, size is -1 when the archive does not store it
+  list: async (
+    archivePath: string,
+    directory: string = '',
+    offset: number = 0,
+    limit: number = 0,
+  ): Promise<ArchivePage> => {
+    const page: NativeArchivePage = await NativeArchive.list(
+      archivePath,
+      directory,
+      { offset, limit },
+    );
+    return {
+      items: page.paths.map((entryPath, i) => {
+        const isDirectory = page.directories[i];
+        return {
+          name: entryPath.split('/').pop() ?? entryPath,
+          path: `${archivePath}/${entryPath}`,
+          entryPath,
+          size: page.sizes[i],
+          mtime: new Date(page.mtimes[i]),
+          ctime: undefined,
+          isDirectory: () => isDirectory,
+          isFile: () => !isDirectory,
+        };
+      }),
+      total: page.total,
+    };
+  },
+};
@@ -0,0 +1,85 @@
+import {
+  Alert,
+  DevSettings,
+  NativeEventEmitter,
+  NativeModules,
+} from 'react-native';
+
+// Only registered in debug builds, see BenchmarkModule
+const NativeBenchmark = NativeModules.Benchmark;
+
+export type BenchmarkResult = {
+  medianMs: number;
+  p90Ms: number;
+  minMs: number;
+  iterations: number;
+  itemsPerSecond?: number;
+  bytesPerSecond?: number;
+};
+
+export type BenchmarkReport = {
+  version: string;
+  device: string;
+  sdk: number;
+  timestamp: number;
+  results: Record<string, BenchmarkResult>;
+  // version the report was compared with, absent on the first run
+  baseline?: string;
+  // case name -> slowdown of the median, 0.25 = 25% slower
+  regressions?: Record<string, number>;
+};
+
+export type BenchmarkOptions = {
+  iterations?: number;
+  flatFiles?: number;
+  mixedFiles?: number;
+};
+
+export const BenchmarkApi = {
+  isAvailable: (): boolean => !!NativeBenchmark,
+
+  run: async (
+    options: BenchmarkOptions = {},
+    onCase?: (name: string, index: number, total: number) => void,
+  ): Promise<BenchmarkReport> => {
+    const eventEmitter = new NativeEventEmitter(NativeBenchmark);
+    const subscription = eventEmitter.addListener(
+      'BenchmarkProgress',
+      event => onCase?.(event.name, event.index, event.total),
+    );
+    try {
+      return JSON.parse(await NativeBenchmark.run(options));
+    } finally {
+      subscription.remove();
+    }
+  },
+
+  cancel: () => NativeBenchmark.cancel(),
+
+  getReports: async (): Promise<BenchmarkReport[]> => {
+    const reports: string[] = await NativeBenchmark.getReports();
+    return reports.map(report => JSON.parse(report));
+  },
+
+  // Dev menu entry, shows medians when done, full reports stay on the device
+  registerDevMenu: () => {
+    if (!NativeBenchmark) {
+      return;
+    }
+    DevSettings.addMenuItem('Run native benchmarks', () => {
+      BenchmarkApi.run()
+        .then(report => Alert.alert('Benchmark', summarize(report)))
+        .catch(e => Alert.alert('Benchmark failed', String(e?.message ?? e)));
+    });
+  },
+};
+
+// one line per case, "+25%" marks regressions against the baseline
+const summarize = (report: BenchmarkReport): string =>
+  Object.entries(report.results)
+    .map(([name, result]) => {
+      const regression = report.regressions?.[name];
+      const suffix = regression ? ` +${Math.round(regression * 100)}%` : '';
+      return `${name}: ${result.medianMs.toFixed(1)} ms${suffix}`;
+    })
+    .join('\n');
@@ -1,8 +1,26 @@
 import { DirItem } from './FileApi';
 
+// Native ThumbnailModule keeps its own memory + disk cache, so only a
+// small window of recent previews is worth holding in JS heap
+const MAX_PREVIEWS = 200;
+
 const CACHE: Record<string, any> = {
   dirItems: {},
   videoPreviews: {},
+  imagePreviews: {},
+};
+
+const putPreview = (
+  previews: Record<string, string>,
+  key: string,
+  preview: string,
+) => {
+  const keys = Object.keys(previews);
+  if (keys.length >= MAX_PREVIEWS) {
+    // string keys keep insertion order, so the first one is the oldest
+    delete previews[keys[0]];
+  }
+  previews[key] = preview;
 };
 
 // Non-React store to keep some heavily computed content
@@ -19,15 +37,36 @@ export const Cache = {
     CACHE.dirItems = {};
   },
 
-  putVideoPreview(filePath: string, previewB64: string, width: number = 0) {
-    CACHE.videoPreviews[`${filePath}_${width}`] = previewB64;
+  putVideoPreview(filePath: string, preview: string, width: number = 0) {
+    putPreview(CACHE.videoPreviews, `${filePath}_${width}`, preview);
+  },
+
+  // the native disk cache is trimmed on its own, a URI may outlive its file
+  removeVideoPreview(filePath: string, width: number = 0) {
+    delete CACHE.videoPreviews[`${filePath}_${width}`];
   },
 
   clearVideoPreviews() {
     CACHE.videoPreviews = {};
   },
 
+  clearImagePreviews() {
+    CACHE.imagePreviews = {};
+  },
+
   getVideoPreview(filePath: string, width: number = 0): string | null {
     return CACHE.videoPreviews[`${filePath}_${width}`] ?? null;
   },
+
+  putImagePreview(filePath: string, preview: string, width: number) {
+    putPreview(CACHE.imagePreviews, `${filePath}_${width}`, preview);
+  },
+
+  removeImagePreview(filePath: string, width: number) {
+    delete CACHE.imagePreviews[`${filePath}_${width}`];
+  },
+
+  getImagePreview(filePath: string, width: number): string | null {
+    return CACHE.imagePreviews[`${filePath}_${width}`] ?? null;
+  },
 };
@@ -1,7 +1,14 @@
-import RnfsQueued, { limitFileApi, ReadDirItem } from './RnfsQueued';
-import { NativeModules } from 'react-native';
+import RnfsQueued, { ReadDirItem } from './RnfsQueued';
+import { NativeEventEmitter, NativeModules } from 'react-native';
 import Share from 'react-native-share';
 import { FileOpener } from './FileOpener';
+import { ThumbnailBatcher } from './ThumbnailBatcher';
+import {
+  FileOperationListener,
+  FileOperations,
+  ItemsSizeProgress,
+  OperationListener,
+} from './FileOperations';
 import i18n from '../i18n/i18n';
 import {
   ErrorType,
@@ -12,31 +19,84 @@ export type DirItem = ReadDirItem & { isStorage?: boolean };
 export type StorageItem = {
   isMainDeviceStorage?: boolean;
   isSdCardStorage?: boolean;
+  // removable drive attached over USB OTG
+  isUsb?: boolean;
+  isRemovable?: boolean;
+  isReadOnly?: boolean;
+  // volume label from the system, e.g. "USB drive"
+  description?: string;
   isStorage?: boolean;
   freeSpace?: number;
   totalSpace?: number;
   name: string;
   path: string;
 } & DirItem;
+export type ReadDirOptions = {
+  showHidden?: boolean;
+  sortBy?: 'name' | 'date' | 'size' | 'type';
+  sortDirection?: 'asc' | 'desc';
+  offset?: number;
+  limit?: number;
+};
+
+// Columnar entries produced by native DirectoryLister module
+type NativeDirEntries = {
+  names: string;
+  directories: boolean[];
+  sizes: number[];
+  mtimes: number[];
+};
+
+type NativeDirListing = NativeDirEntries & {
+  path: string;
+  total: number;
+};
+
+type NativeDirChange = {
+  id: number;
+  path: string;
+  reset: boolean;
+  added?: NativeDirEntries;
+  modified?: NativeDirEntries;
+  removed?: string;
+};
+
+// Incremental update of a watched folder, reset means it has to be read again
+export type DirChange = {
+  added: DirItem[];
+  modified: DirItem[];
+  removedPaths: string[];
+  reset: boolean;
+};
 
-const resolveCounterConflictRecursive = async (
-  destination: string,
-  count: number,
-  langKey: string = 'copyCount',
-): Promise<string> => {
-  const dotTokens = destination.split('.');
-  const ext = dotTokens.length > 1 ? dotTokens.pop() : '';
-  const preExt = dotTokens.join('.');
-  const pathTokens = preExt.split('/');
-  const itemName = pathTokens.pop();
-  const resultPath = `${pathTokens.join('/')}/${itemName} ${i18n.t(langKey, {
-    n: count,
-  })}${ext ? '.' + ext : ''}`;
+const dirEventEmitter = new NativeEventEmitter(NativeModules.DirectoryLister);
+const storageEventEmitter = new NativeEventEmitter(
+  NativeModules.StorageMetaReader,
+);
+let lastWatchId = 0;
 
-  if (await RnfsQueued.exists(resultPath)) {
-    return resolveCounterConflictRecursive(destination, count + 1);
+const fromNativeListing = (
+  listing: NativeDirEntries & { path: string },
+): DirItem[] => {
+  if (listing.directories.length === 0) {
+    return [];
   }
-  return resultPath;
+  const parentPath = listing.path.endsWith('/')
+    ? listing.path.slice(0, -1)
+    : listing.path;
+  // '/' is never a part of a file name, so it is safe as names separator
+  return listing.names.split('/').map((name, i) => {
+    const isDirectory = listing.directories[i];
+    return {
+      name,
+      path: `${parentPath}/${name}`,
+      size: listing.sizes[i],
+      mtime: new Date(listing.mtimes[i]),
+      ctime: undefined,
+      isDirectory: () => isDirectory,
+      isFile: () => !isDirectory,
+    };
+  });
 };
 
 const getMimeType = (filePath: string) => {
@@ -58,147 +118,84 @@ const generateContentUri = (filePath: string) => {
   return `content://${filePath}`;
 };
 
-const copyRecursive = async (
-  source: string,
-  destination: string,
-  injectCopyNIfConflict: boolean,
-) => {
-  const stats = await RnfsQueued.stat(source);
-  if (stats.isDirectory()) {
-    if (await RnfsQueued.exists(destination)) {
-      if (injectCopyNIfConflict) {
-        destination = await resolveCounterConflictRecursive(destination, 1);
-      } else {
-        throw new Error(
-          'Failed to copy contents, as destination already exists',
-        );
-      }
-    }
-    await RnfsQueued.mkdir(destination);
-    const items = await RnfsQueued.readDir(source);
-
-    for (const item of items) {
-      const itemSourcePath = `${source}/${item.name}`;
-      const itemDestinationPath = `${destination}/${item.name}`;
-
-      await copyRecursive(
-        itemSourcePath,
-        itemDestinationPath,
-        injectCopyNIfConflict,
-      );
-    }
-  } else {
-    if (await RnfsQueued.exists(destination)) {
-      if (injectCopyNIfConflict) {
-        destination = await resolveCounterConflictRecursive(destination, 1);
-      } else {
-        throw new Error(
-          'Failed to copy file, as destination file already exists',
-        );
-      }
-    }
-    await RnfsQueued.copyFile(source, destination);
-  }
-};
-const moveRecursive = async (
-  source: string,
-  destination: string,
-  injectCopyNIfConflict: boolean,
-) => {
-  const stats = await RnfsQueued.stat(source);
-  if (stats.isDirectory()) {
-    if (await RnfsQueued.exists(destination)) {
-      if (injectCopyNIfConflict) {
-        destination = await resolveCounterConflictRecursive(
-          destination,
-          1,
-          'moveCount',
-        );
-      } else {
-        throw new Error(
-          'Failed to move contents, as destination already exists',
-        );
-      }
-    }
-    await RnfsQueued.mkdir(destination);
-    const items = await RnfsQueued.readDir(source);
-
-    for (const item of items) {
-      const itemSourcePath = `${source}/${item.name}`;
-      const itemDestinationPath = `${destination}/${item.name}`;
-
-      await moveRecursive(
-        itemSourcePath,
-        itemDestinationPath,
-        injectCopyNIfConflict,
-      );
-    }
-    // Remove the original directory after moving all its contents
-    await RnfsQueued.unlink(source);
-  } else {
-    if (await RnfsQueued.exists(destination)) {
-      if (injectCopyNIfConflict) {
-        destination = await resolveCounterConflictRecursive(
-          destination,
-          1,
-          'moveCount',
-        );
-      } else {
-        throw new Error(
-          'Failed to move file, as destination file already exists',
-        );
-      }
-    }
-    await RnfsQueued.moveFile(source, destination);
-  }
-};
 const deleteItem = async (item: DirItem) => {
   try {
     await RnfsQueued.unlink(item.path);
+    FileOperations.notifyMediaChanged([item.path]);
   } catch (e) {
     throw new FileManagerError(i18n.t('deleteFailed'), ErrorType.FILE_API, e);
   }
 };
 
-const getSafeSize = async (path: string) => {
-  const fileStats = await RnfsQueued.stat(path);
-  if (fileStats.isFile()) {
-    return fileStats.size;
-  }
-  let totalSize = 0;
-  const files = await RnfsQueued.readDir(path);
-  for (const file of files) {
-    totalSize += await getSafeSize(file.path);
-  }
-  return totalSize;
+export const ThumbnailPriority = {
+  BACKGROUND: 0,
+  VISIBLE: 1,
+  PREVIEW: 2,
+};
+
+export type ThumbnailRequestOptions = {
+  // allows to cancel request with FileApi.cancelThumbnail
+  requestId?: number;
+  priority?: number;
 };
 
+// Native side orders decodes by priority and drops cancelled ones,
+// so requests are not additionally throttled by limitFileApi.
+// Requests are batched per frame and results come back via one event channel
 const makeVideoPreview = async (
   file: DirItem,
   width: number = 0,
+  options: ThumbnailRequestOptions = {},
 ): Promise<string | null> => {
   if (!FileApi.isFileVideo(file)) {
     return null;
   }
-  return new Promise((resolve, reject) => {
-    const { ThumbnailModule } = NativeModules;
-    ThumbnailModule.createVideoThumbnail(
-      file.path,
-      width,
-      (base64Thumbnail: string) => {
-        resolve(`data:image/jpeg;base64,${base64Thumbnail}`);
-      },
-      (error: string) => {
-        reject(error);
-      },
-    );
-  });
+  // file:// URI of natively cached JPEG, loaded by Image without base64 copies
+  return ThumbnailBatcher.request(
+    'video',
+    file.path,
+    width,
+    options.priority ?? ThumbnailPriority.BACKGROUND,
+    options.requestId,
+  );
+};
+
+// Downscaled copy for grid cells, the original may be a 48 MP photo
+const makeImagePreview = async (
+  file: DirItem,
+  width: number,
+  options: ThumbnailRequestOptions = {},
+): Promise<string | null> => {
+  if (!FileApi.isFileImage(file)) {
+    return null;
+  }
+  return ThumbnailBatcher.request(
+    'image',
+    file.path,
+    width,
+    options.priority ?? ThumbnailPriority.BACKGROUND,
+    options.requestId,
+  );
 };
-const makeVideoPreviewQueued: typeof makeVideoPreview = (...args) =>
-  limitFileApi(() => makeVideoPreview(...args));
 
 let ROOTS: StorageItem[] = [];
 
+const toStorageItems = (rootDirs: StorageItem[]): StorageItem[] =>
+  rootDirs.map(storageItem => {
+    return {
+      ...storageItem,
+      name: storageItem.isMainDeviceStorage
+        ? i18n.t('deviceRoot')
+        : storageItem.description ??
+          i18n.t(storageItem.isUsb ? 'usbRoot' : 'sdCardRoot', {
+            name: storageItem.name,
+          }),
+      isDirectory: () => true,
+      isFile: () => false,
+      isStorage: true,
+    };
+  });
+
 export const FileApi = {
   get ROOT_STORAGE() {
     if (!ROOTS) {
@@ -220,19 +217,8 @@ export const FileApi = {
     try {
       const rootDirs: StorageItem[] =
         await NativeModules.StorageMetaReader.readAll();
-      const resultDirItems: StorageItem[] = rootDirs.map(storageItem => {
-        return {
-          ...storageItem,
-          name: storageItem.isMainDeviceStorage
-            ? i18n.t('deviceRoot')
-            : i18n.t('sdCardRoot', { name: storageItem.name }),
-          isDirectory: () => true,
-          isFile: () => false,
-          isStorage: true,
-        };
-      });
 
-      ROOTS = resultDirItems;
+      ROOTS = toStorageItems(rootDirs);
 
       return ROOTS;
     } catch (e) {
@@ -243,9 +229,40 @@ export const FileApi = {
       );
     }
   },
-  getItemSize: async (path: string) => {
+  // Volume mounted/unmounted or free space changed, ROOTS is already updated
+  onRootsChanged: (listener: (roots: StorageItem[]) => void) => {
+    const subscription = storageEventEmitter.addListener(
+      'StorageVolumesChanged',
+      ({ storages }: { storages: StorageItem[] }) => {
+        ROOTS = toStorageItems(storages);
+        listener(ROOTS);
+      },
+    );
+    return () => subscription.remove();
+  },
+  getItemSize: async (
+    path: string,
+    listener?: OperationListener<ItemsSizeProgress>,
+  ) => {
+    try {
+      const { bytes } = await FileOperations.calculateSize([path], listener);
+      return bytes;
+    } catch (e) {
+      throw new FileManagerError(
+        i18n.t('readDirFailed'),
+        ErrorType.FILE_API,
+        e,
+      );
+    }
+  },
+  readDir: async (
+    path: string,
+    options: ReadDirOptions = { showHidden: true },
+  ): Promise<DirItem[]> => {
     try {
-      return await getSafeSize(path);
+      const listing: NativeDirListing =
+        await NativeModules.DirectoryLister.list(path, options);
+      return fromNativeListing(listing);
     } catch (e) {
       throw new FileManagerError(
         i18n.t('readDirFailed'),
@@ -254,16 +271,64 @@ export const FileApi = {
       );
     }
   },
-  readDir: async (path: string) => {
+  // Resolves with unwatch function once native watcher is running
+  watchDir: async (
+    path: string,
+    options: Pick<ReadDirOptions, 'showHidden'>,
+    onChange: (change: DirChange) => void,
+  ): Promise<() => void> => {
+    const watchId = ++lastWatchId;
+    const parentPath = path.endsWith('/') ? path.slice(0, -1) : path;
+    const subscription = dirEventEmitter.addListener(
+      'DirectoryChanged',
+      (change: NativeDirChange) => {
+        if (change.id !== watchId) {
+          return;
+        }
+        onChange({
+          added: change.added
+            ? fromNativeListing({ path, ...change.added })
+            : [],
+          modified: change.modified
+            ? fromNativeListing({ path, ...change.modified })
+            : [],
+          removedPaths: change.removed
+            ? change.removed.split('/').map(name => `${parentPath}/${name}`)
+            : [],
+          reset: change.reset,
+        });
+      },
+    );
     try {
-      return await RnfsQueued.readDir(path);
+      await NativeModules.DirectoryLister.watch(watchId, path, options);
     } catch (e) {
+      subscription.remove();
       throw new FileManagerError(
         i18n.t('readDirFailed'),
         ErrorType.FILE_API,
         e,
       );
     }
+    return () => {
+      subscription.remove();
+      NativeModules.DirectoryLister.unwatch(watchId);
+    };
+  },
+  // Applies watcher diff to already listed items, without reading the folder again
+  applyDirChange: (
+    dirItems: DirItem[],
+    change: DirChange,
+    sortDirection: 'asc' | 'desc',
+  ): DirItem[] => {
+    const updated = new Map<string, DirItem>();
+    [...change.added, ...change.modified].forEach(item =>
+      updated.set(item.path, item),
+    );
+    const removedPaths = new Set(change.removedPaths);
+    const kept = dirItems.filter(
+      item => !removedPaths.has(item.path) && !updated.has(item.path),
+    );
+    return FileApi.sortDirItems([...kept, ...updated.values()], sortDirection);
   },
   getMetadata: async (path: string): Promise<DirItem> => {
     try {
@@ -307,28 +372,11 @@ export const FileApi = {
       );
     }
   },
-  _copyFileOrDirectory: async (
-    source: string,
-    destination: string,
-    injectCopyNIfConflict: boolean = false,
-  ) => {
-    const destStats = await RnfsQueued.stat(destination);
-    const fileName = source.split('/').pop();
-    let fileDest = destStats.isDirectory()
-      ? `${destination}/${fileName}`
-      : destination;
-
-    return copyRecursive(source, fileDest, injectCopyNIfConflict);
-  },
-
   _validateItemSizesToDest: async (sources: string[], destination: string) => {
     try {
-      const sizes = await Promise.all(
-        sources.map(source => getSafeSize(source)),
+      const { bytes: sizeCombined } = await FileOperations.calculateSize(
+        sources,
       );
-      const sizeCombined = sizes.reduce((acc, size) => {
-        return size + acc;
-      }, 0);
       const targetStorage = ROOTS.find(root => destination.includes(root.path));
       if (!targetStorage) {
         throw new Error('Destination folder is not valid');
@@ -349,17 +397,18 @@ export const FileApi = {
     sources: string[],
     destination: string,
     injectCopyNIfConflict: boolean = false,
+    listener?: FileOperationListener,
   ) => {
     await FileApi._validateItemSizesToDest(sources, destination);
     try {
-      return Promise.all(
-        sources.map(source =>
-          FileApi._copyFileOrDirectory(
-            source,
-            destination,
-            injectCopyNIfConflict,
-          ),
-        ),
+      await FileOperations.copy(
+        sources,
+        destination,
+        {
+          resolveConflicts: injectCopyNIfConflict,
+          conflictTemplate: i18n.t('copyCount', { n: '{n}' }),
+        },
+        listener,
       );
     } catch (e) {
       throw new FileManagerError(
@@ -374,36 +423,34 @@ export const FileApi = {
     source: string,
     destination: string,
     injectCopyNIfConflict: boolean = false,
+    listener?: FileOperationListener,
   ) => {
-    const isDestDirectory = await (async () => {
-      try {
-        const destStats = await RnfsQueued.stat(destination);
-        return destStats.isDirectory();
-      } catch {
-        return false;
-      }
-    })();
-
-    const fileName = source.split('/').pop();
-    let fileDest = isDestDirectory ? `${destination}/${fileName}` : destination;
-
-    return moveRecursive(source, fileDest, injectCopyNIfConflict);
+    return FileOperations.move(
+      [source],
+      destination,
+      {
+        resolveConflicts: injectCopyNIfConflict,
+        conflictTemplate: i18n.t('moveCount', { n: '{n}' }),
+      },
+      listener,
+    );
   },
 
   moveFilesOrDirectoriesBatched: async (
     sources: string[],
     destination: string,
     injectCopyNIfConflict: boolean = false,
+    listener?: FileOperationListener,
   ) => {
     try {
-      return Promise.all(
-        sources.map(source =>
-          FileApi.moveFileOrDirectory(
-            source,
-            destination,
-            injectCopyNIfConflict,
-          ),
-        ),
+      await FileOperations.move(
+        sources,
+        destination,
+        {
+          resolveConflicts: injectCopyNIfConflict,
+          conflictTemplate: i18n.t('moveCount', { n: '{n}' }),
+        },
+        listener,
       );
     } catch (e) {
       throw new FileManagerError(
@@ -414,6 +461,34 @@ export const FileApi = {
     }
   },
 
+  // zips items into an archive next to the first of them, returns its path
+  compressItems: async (
+    sources: string[],
+    listener?: FileOperationListener,
+  ): Promise<string> => {
+    const tokens = sources[0].split('/');
+    const name = tokens.pop()!;
+    const parent = tokens.join('/');
+    const baseName =
+      sources.length > 1
+        ? tokens[tokens.length - 1] || 'Archive'
+        : name.replace(/\.[^.]+$/, '') || name;
+    let destination = `${parent}/${baseName}.zip`;
+    for (let n = 1; await RnfsQueued.exists(destination); n++) {
+      destination = `${parent}/${baseName} (${n}).zip`;
+    }
+    try {
+      await FileOperations.compress(sources, destination, {}, listener);
+      return destination;
+    } catch (e) {
+      throw new FileManagerError(
+        i18n.t('compressFailed'),
+        ErrorType.FILE_API,
+        e,
+      );
+    }
+  },
+
   renameItem: async (dirItem: DirItem, newName: string) => {
     try {
       const dirItemPathTokens = dirItem.path.split('/');
@@ -432,9 +507,13 @@ export const FileApi = {
     }
   },
   deleteItem,
-  deleteItemsBatched: async (items: DirItem[]) => {
+  // Single native operation for the selection, folders are deleted in parallel
+  deleteItemsBatched: async (
+    items: DirItem[],
+    listener?: FileOperationListener,
+  ) => {
     try {
-      return Promise.all(items.map(FileApi.deleteItem));
+      await FileOperations.delete(items.map(item => item.path), listener);
     } catch (e) {
       throw new FileManagerError(i18n.t('deleteFailed'), ErrorType.FILE_API, e);
     }
@@ -482,7 +561,10 @@ export const FileApi = {
   isFileArchive: (item: DirItem) => {
     return /\.(zip|rar|tar|gz|bz2|7z|xz|iso|tgz)$/i.test(item.path);
   },
-  makeVideoPreview: makeVideoPreviewQueued,
+  makeVideoPreview,
+  makeImagePreview,
+  createThumbnailRequestId: ThumbnailBatcher.createRequestId,
+  cancelThumbnail: ThumbnailBatcher.cancel,
   getParentDirectoryPath: (filePath: string) => {
     if (!filePath) {
       return '';
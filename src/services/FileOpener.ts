@@ -10,7 +10,7 @@ const eventEmitter = new NativeEventEmitter(LocalFileViewer);
 
 let lastId = 0;
 
-function open(
+async function open(
   path: string,
   options: {
     dialogTitle?: string;
@@ -18,7 +18,7 @@ function open(
     showAppsSuggestions?: boolean;
     showOpenWithDialog?: boolean;
   } = {},
-) {
+): Promise<void> {
   const {
     onDismiss,
     dialogTitle = 'Open File With',
@@ -29,43 +29,36 @@ function open(
     return LocalFileViewer.open(path, nativeOptions, dialogTitle);
   }
 
-  return new Promise<void>((resolve, reject) => {
-    const currentId = ++lastId;
-
-    const openSubscription = eventEmitter.addListener(
-      'LocalFileViewerDidOpen',
-      ({ id, error }) => {
-        if (id === currentId) {
-          openSubscription.remove();
-          return error
-            ? reject(
-                new FileManagerError(
-                  i18n.t('failedToOpenPath'),
-                  ErrorType.FILE_API,
-                  error,
-                ),
-              )
-            : resolve();
-        }
-      },
-    );
-    const dismissSubscription = eventEmitter.addListener(
-      'LocalFileViewerDidDismiss',
-      ({ id }) => {
-        if (id === currentId) {
-          dismissSubscription.remove();
-          onDismiss && onDismiss();
-        }
-      },
-    );
+  const currentId = ++lastId;
+  const dismissSubscription = eventEmitter.addListener(
+    'LocalFileViewerDidDismiss',
+    ({ id }) => {
+      if (id === currentId) {
+        dismissSubscription.remove();
+        onDismiss && onDismiss();
+      }
+    },
+  );
 
-    LocalFileViewer.open(
+  try {
+    // resolves once the viewer activity is launched
+    await LocalFileViewer.open(
       normalize(path),
       currentId,
       nativeOptions,
       dialogTitle,
     );
-  });
+  } catch (e) {
+    dismissSubscription.remove();
+    if (e instanceof FileManagerError) {
+      throw e;
+    }
+    throw new FileManagerError(
+      i18n.t('failedToOpenPath'),
+      ErrorType.FILE_API,
+      e,
+    );
+  }
 }
 
 function normalize(path: string) {
@@ -0,0 +1,252 @@
+import { NativeEventEmitter, NativeModules } from 'react-native';
+
+const NativeFileOperations = NativeModules.FileOperations;
+const eventEmitter = new NativeEventEmitter(NativeFileOperations);
+
+const CANCELLED_CODE = 'Cancelled';
+
+export type FileOperationProgress = {
+  id: number;
+  bytesDone: number;
+  bytesTotal: number;
+  filesDone: number;
+  filesTotal: number;
+  bytesPerSecond: number;
+};
+
+export type ItemsSize = {
+  bytes: number;
+  files: number;
+  directories: number;
+};
+
+export type ItemsSizeProgress = ItemsSize & { id: number };
+
+export type StorageItemSize = {
+  path: string;
+  size: number;
+};
+
+// Partial while streamed as progress, final when operation resolves
+export type StorageAnalysis = {
+  bytes: number;
+  files: number;
+  // bytes per category: image, video, audio, document, archive, other
+  categories: Record<string, number>;
+  largestFiles: StorageItemSize[];
+  largestDirectories: StorageItemSize[];
+};
+
+export type StorageAnalysisProgress = StorageAnalysis & { id: number };
+
+export type DuplicateGroup = {
+  size: number;
+  paths: string[];
+};
+
+export type DuplicateProgress = {
+  id: number;
+  // 0 - scanning, 1 - hashing head and tail blocks, 2 - hashing whole files
+  stage: number;
+  filesScanned: number;
+  candidates: number;
+  hashedBytes: number;
+};
+
+export type DuplicateSearchResult = {
+  groups: DuplicateGroup[];
+  // bytes freed by keeping a single file of every group
+  wastedBytes: number;
+};
+
+export type OperationListener<P> = {
+  onStart?: (id: number) => void;
+  onProgress?: (progress: P) => void;
+};
+
+export type FileOperationListener = OperationListener<FileOperationProgress>;
+
+export type TransferOptions = {
+  resolveConflicts?: boolean;
+  // suffix template for renamed duplicates, "{n}" is replaced with counter
+  conflictTemplate?: string;
+};
+
+export type TransferRecovery = {
+  resumed: number;
+  rolledBack: number;
+};
+
+export type CompressOptions = {
+  // deflate level 0..9, default one when omitted
+  level?: number;
+};
+
+let lastId = 0;
+
+// Runs a native operation, routing its progress events to the listener
+const runOperation = async <T, P extends { id: number }>(
+  progressEvent: string,
+  start: (id: number) => Promise<T>,
+  listener: OperationListener<P> = {},
+): Promise<T> => {
+  const currentId = ++lastId;
+  const progressSubscription = eventEmitter.addListener(
+    progressEvent,
+    (progress: P) => {
+      if (progress.id === currentId) {
+        listener.onProgress?.(progress);
+      }
+    },
+  );
+  listener.onStart?.(currentId);
+  try {
+    return await start(currentId);
+  } finally {
+    progressSubscription.remove();
+  }
+};
+
+export const FileOperations = {
+  copy: (
+    sources: string[],
+    destination: string,
+    options: TransferOptions = {},
+    listener?: FileOperationListener,
+  ): Promise<void> =>
+    runOperation(
+      'FileOperationProgress',
+      id => NativeFileOperations.copy(id, sources, destination, options),
+      listener,
+    ),
+  move: (
+    sources: string[],
+    destination: string,
+    options: TransferOptions = {},
+    listener?: FileOperationListener,
+  ): Promise<void> =>
+    runOperation(
+      'FileOperationProgress',
+      id => NativeFileOperations.move(id, sources, destination, options),
+      listener,
+    ),
+  // files and whole folders, progress counts deleted files and their bytes
+  delete: (paths: string[], listener?: FileOperationListener): Promise<void> =>
+    runOperation(
+      'FileOperationProgress',
+      id => NativeFileOperations.delete(id, paths),
+      listener,
+    ),
+  calculateSize: (
+    paths: string[],
+    listener?: OperationListener<ItemsSizeProgress>,
+  ): Promise<ItemsSize> =>
+    runOperation(
+      'FileSizeProgress',
+      id => NativeFileOperations.calculateSize(id, paths),
+      listener,
+    ),
+  analyzeStorage: (
+    path: string,
+    topCount: number = 20,
+    listener?: OperationListener<StorageAnalysisProgress>,
+  ): Promise<StorageAnalysis> =>
+    runOperation(
+      'StorageAnalysisProgress',
+      id => NativeFileOperations.analyzeStorage(id, path, { topCount }),
+      listener,
+    ),
+  // zips sources into a new archive, fails when destination exists
+  compress: (
+    sources: string[],
+    destination: string,
+    options: CompressOptions = {},
+    listener?: FileOperationListener,
+  ): Promise<void> =>
+    runOperation(
+      'FileOperationProgress',
+      id => NativeFileOperations.compress(id, sources, destination, options),
+      listener,
+    ),
+  // extracts given entry paths with their contents, all entries when empty,
+  // names taken at destination are handled like in copy
+  extractArchive: (
+    archivePath: string,
+    entryPaths: string[],
+    destination: string,
+    options: TransferOptions = {},
+    listener?: FileOperationListener,
+  ): Promise<void> =>
+    runOperation(
+      'FileOperationProgress',
+      id =>
+        NativeFileOperations.extractArchive(
+          id,
+          archivePath,
+          entryPaths,
+          destination,
+          options,
+        ),
+      listener,
+    ),
+  // groups are reported through onGroup as soon as they are confirmed
+  findDuplicates: async (
+    paths: string[],
+    minSize: number = 1,
+    listener: OperationListener<DuplicateProgress> & {
+      onGroup?: (group: DuplicateGroup) => void;
+    } = {},
+  ): Promise<DuplicateSearchResult> => {
+    const groups: DuplicateGroup[] = [];
+    let operationId: number | undefined;
+    const groupSubscription = eventEmitter.addListener(
+      'DuplicateGroupFound',
+      ({ id, ...group }: DuplicateGroup & { id: number }) => {
+        if (id === operationId) {
+          groups.push(group);
+          listener.onGroup?.(group);
+        }
+      },
+    );
+    try {
+      const { wastedBytes } = await runOperation<
+        { wastedBytes: number },
+        DuplicateProgress
+      >(
+        'DuplicateProgress',
+        id => NativeFileOperations.findDuplicates(id, paths, { minSize }),
+        {
+          ...listener,
+          onStart: id => {
+            operationId = id;
+            listener.onStart?.(id);
+          },
+        },
+      );
+      return { groups, wastedBytes };
+    } finally {
+      groupSubscription.remove();
+    }
+  },
+  // copies and moves the app was killed in the middle of
+  getInterruptedTransfers: (): Promise<number> =>
+    NativeFileOperations.getInterruptedTransfers(),
+  // resumes them from their journals, cancelling rolls the rest back
+  recoverTransfers: (
+    listener?: FileOperationListener,
+  ): Promise<TransferRecovery> =>
+    runOperation(
+      'FileOperationProgress',
+      id => NativeFileOperations.recoverTransfers(id),
+      listener,
+    ),
+  // for changes made outside these operations, e.g. through RNFS; folders
+  // count with everything below them
+  notifyMediaChanged: (removedPaths: string[], writtenPaths: string[] = []) =>
+    NativeFileOperations.notifyMediaChanged(removedPaths, writtenPaths),
+  cancel: (id: number) => NativeFileOperations.cancel(id),
+  pause: (id: number) => NativeFileOperations.pause(id),
+  resume: (id: number) => NativeFileOperations.resume(id),
+  isCancelled: (e: any): boolean =>
+    e?.code === CANCELLED_CODE || e?.origError?.code === CANCELLED_CODE,
+};
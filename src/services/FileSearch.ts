@@ -0,0 +1,118 @@
+import { NativeEventEmitter, NativeModules } from 'react-native';
+import type { DirItem } from './FileApi';
+
+const NativeSearchIndex = NativeModules.SearchIndex;
+const eventEmitter = new NativeEventEmitter(NativeSearchIndex);
+
+const DEFAULT_PAGE_SIZE = 100;
+
+export type SearchCategory =
+  | 'image'
+  | 'video'
+  | 'audio'
+  | 'document'
+  | 'archive'
+  | 'other';
+
+export type SearchFilters = {
+  categories?: SearchCategory[];
+  // true for folders only, false for files only
+  directories?: boolean;
+  minSize?: number;
+  maxSize?: number;
+  modifiedAfter?: Date;
+  modifiedBefore?: Date;
+  // limits results to one storage
+  root?: string;
+};
+
+export type SearchPage = {
+  items: DirItem[];
+  hasMore: boolean;
+  nextOffset: number;
+};
+
+export type SearchIndexProgress = {
+  folders: number;
+  changes: number;
+  done: boolean;
+};
+
+type NativeSearchPage = {
+  paths: string[];
+  sizes: number[];
+  mtimes: number[];
+  directories: boolean[];
+  hasMore: boolean;
+};
+
+const toDirItems = (page: NativeSearchPage): DirItem[] =>
+  page.paths.map((path, i) => {
+    const isDirectory = page.directories[i];
+    return {
+      name: path.split('/').pop() ?? path,
+      path,
+      size: page.sizes[i],
+      mtime: new Date(page.mtimes[i]),
+      ctime: undefined,
+      isDirectory: () => isDirectory,
+      isFile: () => !isDirectory,
+    };
+  });
+
+const search = async (
+  query: string,
+  filters: SearchFilters = {},
+  offset: number = 0,
+  limit: number = DEFAULT_PAGE_SIZE,
+): Promise<SearchPage> => {
+  const { modifiedAfter, modifiedBefore, ...rest } = filters;
+  const page: NativeSearchPage = await NativeSearchIndex.search(query, {
+    ...rest,
+    ...(modifiedAfter ? { modifiedAfter: modifiedAfter.getTime() } : {}),
+    ...(modifiedBefore ? { modifiedBefore: modifiedBefore.getTime() } : {}),
+    offset,
+    limit,
+  });
+  return {
+    items: toDirItems(page),
+    hasMore: page.hasMore,
+    nextOffset: offset + page.paths.length,
+  };
+};
+
+// Native index of all storages, see SearchIndexModule
+export const FileSearch = {
+  // incremental crawl, only changed folders are listed again
+  updateIndex: async (
+    onProgress?: (progress: SearchIndexProgress) => void,
+  ): Promise<boolean> => {
+    const subscription = onProgress
+      ? eventEmitter.addListener('SearchIndexProgress', onProgress)
+      : null;
+    try {
+      return await NativeSearchIndex.update();
+    } finally {
+      subscription?.remove();
+    }
+  },
+  refreshFolder: (path: string) => NativeSearchIndex.refreshFolder(path),
+  search,
+  // fetches next page only when the consumer asks for it
+  searchPages: async function* (
+    query: string,
+    filters: SearchFilters = {},
+    pageSize: number = DEFAULT_PAGE_SIZE,
+  ): AsyncGenerator<DirItem[]> {
+    let offset = 0;
+    let hasMore = true;
+    while (hasMore) {
+      const page = await search(query, filters, offset, pageSize);
+      if (page.items.length) {
+        yield page.items;
+      }
+      offset = page.nextOffset;
+      hasMore = page.hasMore;
+    }
+  },
+};
@@ -0,0 +1,48 @@
+import { NativeModules } from 'react-native';
+
+const NativeMetrics = NativeModules.Metrics;
+
+export type LatencyMetric = {
+  count: number;
+  // absent while count is 0
+  meanMs?: number;
+  p50Ms?: number;
+  p90Ms?: number;
+  p99Ms?: number;
+  maxMs?: number;
+};
+
+export type ThroughputMetric = {
+  operations: number;
+  bytes: number;
+  bytesPerSecond: number;
+};
+
+export type CacheMetric = {
+  hits: number;
+  misses: number;
+  ratio: number;
+};
+
+export type NativeMetricsSnapshot = {
+  timestamp: number;
+  uptimeMs: number;
+  latencies: Record<string, LatencyMetric>;
+  throughput: Record<string, ThroughputMetric>;
+  caches: Record<string, CacheMetric>;
+  // e.g. thumbnail.queued, thumbnail.active
+  gauges: Record<string, number>;
+};
+
+// Native latency/throughput/cache counters since start, see Metrics.java
+export const MetricsApi = {
+  getMetrics: async (): Promise<NativeMetricsSnapshot> =>
+    JSON.parse(await NativeMetrics.getMetrics()),
+
+  reset: () => NativeMetrics.resetMetrics(),
+
+  // Appends a snapshot every intervalSeconds to a file in app storage,
+  // kept across restarts, 0 turns it off. Resolves the file path.
+  setDumpInterval: (intervalSeconds: number): Promise<string> =>
+    NativeMetrics.setDumpInterval(intervalSeconds),
+};
@@ -0,0 +1,130 @@
+import { NativeEventEmitter, NativeModules } from 'react-native';
+
+const { ThumbnailModule } = NativeModules;
+const eventEmitter = new NativeEventEmitter(ThumbnailModule);
+
+// requests made during one frame (e.g. a page of grid cells) go in one bridge call
+const FLUSH_DELAY_MS = 16;
+const CANCELLED_ERROR = 'Cancelled';
+
+export type ThumbnailKind = 'video' | 'image';
+
+type ThumbnailReadyEvent = {
+  requestId: number;
+  path: string;
+  width: number;
+  uri?: string;
+  error?: string;
+};
+
+type PendingRequest = {
+  kind: ThumbnailKind;
+  requestId: number;
+  path: string;
+  width: number;
+  priority: number;
+};
+
+type Waiter = {
+  resolve: (uri: string) => void;
+  reject: (error: string) => void;
+};
+
+let lastRequestId = 0;
+let queued: PendingRequest[] = [];
+let queuedCancels: number[] = [];
+let flushTimer: ReturnType<typeof setTimeout> | null = null;
+const waiters = new Map<number, Waiter>();
+let readySubscription: ReturnType<typeof eventEmitter.addListener> | null =
+  null;
+
+const onThumbnailReady = (event: ThumbnailReadyEvent) => {
+  const waiter = waiters.get(event.requestId);
+  if (!waiter) {
+    return;
+  }
+  waiters.delete(event.requestId);
+  if (event.uri) {
+    waiter.resolve(event.uri);
+  } else {
+    waiter.reject(event.error ?? 'Failed to create thumbnail');
+  }
+};
+
+const flush = () => {
+  flushTimer = null;
+  if (queuedCancels.length) {
+    ThumbnailModule.cancelThumbnails(queuedCancels);
+    queuedCancels = [];
+  }
+  // one native call per kind/width/priority, normally one or two for the grid
+  const batches = new Map<string, PendingRequest[]>();
+  queued.forEach(request => {
+    const batchKey = `${request.kind}|${request.width}|${request.priority}`;
+    const batch = batches.get(batchKey) ?? [];
+    batch.push(request);
+    batches.set(batchKey, batch);
+  });
+  queued = [];
+  batches.forEach(batch => {
+    const createThumbnails =
+      batch[0].kind === 'image'
+        ? ThumbnailModule.createImageThumbnails
+        : ThumbnailModule.createVideoThumbnails;
+    createThumbnails(
+      batch.map(request => request.path),
+      batch[0].width,
+      {
+        requestIds: batch.map(request => request.requestId),
+        priority: batch[0].priority,
+      },
+    );
+  });
+};
+
+const scheduleFlush = () => {
+  if (!flushTimer) {
+    flushTimer = setTimeout(flush, FLUSH_DELAY_MS);
+  }
+};
+
+export const ThumbnailBatcher = {
+  createRequestId: () => ++lastRequestId,
+  request: (
+    kind: ThumbnailKind,
+    path: string,
+    width: number,
+    priority: number,
+    requestId: number = ++lastRequestId,
+  ): Promise<string> => {
+    if (!readySubscription) {
+      readySubscription = eventEmitter.addListener(
+        'ThumbnailReady',
+        onThumbnailReady,
+      );
+    }
+    return new Promise((resolve, reject) => {
+      waiters.set(requestId, { resolve, reject });
+      queued.push({ kind, requestId, path, width, priority });
+      scheduleFlush();
+    });
+  },
+  cancel: (requestId: number) => {
+    const waiter = waiters.get(requestId);
+    if (!waiter) {
+      return;
+    }
+    const queuedIndex = queued.findIndex(
+      request => request.requestId === requestId,
+    );
+    if (queuedIndex >= 0) {
+      // never reached native side, nothing to cancel there
+      queued.splice(queuedIndex, 1);
+      waiters.delete(requestId);
+      waiter.reject(CANCELLED_ERROR);
+      return;
+    }
+    queuedCancels.push(requestId);
+    scheduleFlush();
+  },
+};
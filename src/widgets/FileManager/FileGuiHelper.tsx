@@ -1,6 +1,10 @@
 import { Alert } from 'react-native';
 import i18n from '../../i18n/i18n';
 import { DirItem, FileApi } from '../../services/FileApi';
+import {
+  FileOperationListener,
+  FileOperations,
+} from '../../services/FileOperations';
 import { NavigationProp } from '@react-navigation/native';
 import { FileManagerNavigation } from '../../common/types/navigation';
 import { getGlobalExceptionHandler } from '../../common/components/ExceptionHandler';
@@ -27,6 +31,7 @@ export const FileGuiHelper = {
   deleteContent: (
     files: DirItem[],
     onDeleteStart?: () => void,
+    listener?: FileOperationListener,
   ): Promise<boolean> => {
     let resolved = false;
     return new Promise((resolve, reject) => {
@@ -45,9 +50,12 @@ export const FileGuiHelper = {
             onPress: async () => {
               onDeleteStart?.();
               await new Promise(r => setTimeout(r, 500));
-              await FileApi.deleteItemsBatched(files).catch(
-                getGlobalExceptionHandler()?.handleError,
-              );
+              await FileApi.deleteItemsBatched(files, listener).catch(e => {
+                // cancelled from the progress dialog
+                if (!FileOperations.isCancelled(e)) {
+                  getGlobalExceptionHandler()?.handleError(e);
+                }
+              });
               resolved = true;
               resolve(true);
             },
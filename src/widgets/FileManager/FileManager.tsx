@@ -9,6 +9,11 @@ import { NavigationContainer, NavigationProp } from '@react-navigation/native';
 import { createNativeStackNavigator } from '@react-navigation/native-stack';
 import FileTreeScreen from '../../screens/FileTreeScreen';
 import { DirItem, FileApi } from '../../services/FileApi';
+import {
+  FileOperationListener,
+  FileOperations,
+} from '../../services/FileOperations';
+import { FileSearch } from '../../services/FileSearch';
 import { FileManagerNavigation } from '../../common/types/navigation';
 import { useTranslation } from 'react-i18next';
 import ImagePreviewScreen from '../../screens/ImagePreviewScreen';
@@ -33,6 +38,11 @@ import { useInitialState } from './useInitialState';
 import { theme } from '../../theme';
 import { View } from 'react-native';
 import { SafeAreaView, useSafeAreaInsets } from 'react-native-safe-area-context';
+import {
+  ErrorType,
+  FileManagerError,
+  useExceptionHandler,
+} from '../../common/components/ExceptionHandler';
 
 const SNACK_DEFAULT_DURATION_MS = 4000;
 
@@ -40,6 +50,7 @@ const Stack = createNativeStackNavigator<FileManagerNavigation>();
 export default function FileManager() {
   const { t } = useTranslation();
   const { enqueueSnackbar } = useSnackbar();
+  const exceptionHandler = useExceptionHandler();
   const insets = useSafeAreaInsets();
   const [reloadRequired, setReloadRequired] = useState(false);
   const [renameDialogActive, setRenameDialogActive] = useState<DirItem | null>(
@@ -71,6 +82,20 @@ export default function FileManager() {
     setFileDetails(dirItem);
   }, []);
 
+  const operationListener = useMemo<FileOperationListener>(
+    () => ({
+      onStart: operationId =>
+        setLongOperation(op => (op ? { ...op, operationId } : op)),
+      onProgress: ({ bytesDone, bytesTotal }) =>
+        setLongOperation(op =>
+          op
+            ? { ...op, progress: bytesTotal > 0 ? bytesDone / bytesTotal : 0 }
+            : op,
+        ),
+    }),
+    [],
+  );
+
   const performCopyContent = useCallback(
     async (
       sources: string[],
@@ -85,6 +110,7 @@ export default function FileManager() {
           sources,
           destination,
           injectIfConflict,
+          operationListener,
         );
         // user manually closed dialog of long operation
         if (!hasLongOperationVisibleRef.current) {
@@ -96,6 +122,10 @@ export default function FileManager() {
         }
         refreshRoots();
       } catch (e: any) {
+        if (FileOperations.isCancelled(e)) {
+          refreshRoots();
+          return;
+        }
         throw e;
       } finally {
         setLongOperation(null);
@@ -118,6 +148,7 @@ export default function FileManager() {
           sources,
           destination,
           injectIfConflict,
+          operationListener,
         );
         // user manually closed dialog of long operation
         if (!hasLongOperationVisibleRef.current) {
@@ -129,6 +160,10 @@ export default function FileManager() {
         }
         refreshRoots();
       } catch (e: any) {
+        if (FileOperations.isCancelled(e)) {
+          refreshRoots();
+          return;
+        }
         throw e;
       } finally {
         setLongOperation(null);
@@ -137,15 +172,59 @@ export default function FileManager() {
     [],
   );
 
+  const compressContent = useCallback(async (files: DirItem[]) => {
+    try {
+      setLongOperation({
+        message: t('compressInProgress'),
+      });
+      await FileApi.compressItems(
+        files.map(file => file.path),
+        operationListener,
+      );
+      // user manually closed dialog of long operation
+      if (!hasLongOperationVisibleRef.current) {
+        enqueueSnackbar({
+          variant: 'success',
+          message: t('compressIsDone'),
+          duration: SNACK_DEFAULT_DURATION_MS,
+        });
+      }
+      refreshRoots();
+    } catch (e: any) {
+      if (FileOperations.isCancelled(e)) {
+        return;
+      }
+      throw e;
+    } finally {
+      setLongOperation(null);
+    }
+  }, []);
+
   const deleteContent = useCallback(async (files: DirItem[]) => {
     let deleteInitiated = false;
     try {
-      const res = await FileGuiHelper.deleteContent(files, () => {
-        deleteInitiated = true;
-        setLongOperation({
-          message: t('deleteInProgress'),
-        });
-      });
+      const res = await FileGuiHelper.deleteContent(
+        files,
+        () => {
+          deleteInitiated = true;
+          setLongOperation({
+            message: t('deleteInProgress'),
+          });
+        },
+        {
+          onStart: operationListener.onStart,
+          // deleting takes about the same time for small and large files
+          onProgress: ({ filesDone, filesTotal }) =>
+            setLongOperation(op =>
+              op
+                ? {
+                    ...op,
+                    progress: filesTotal > 0 ? filesDone / filesTotal : 0,
+                  }
+                : op,
+            ),
+        },
+      );
       // user manually closed dialog of long operation
       if (deleteInitiated && !hasLongOperationVisibleRef.current) {
         enqueueSnackbar({
@@ -180,6 +259,7 @@ export default function FileManager() {
       setNewDirPath,
       performCopyContent,
       performMoveContent,
+      compressContent,
       deleteContent,
       roots,
       rootsReady,
@@ -222,6 +302,43 @@ export default function FileManager() {
     refreshRoots();
   }, []);
 
+  useEffect(() => {
+    // copies and moves cut off when the app was killed last time
+    (async () => {
+      if (!(await FileOperations.getInterruptedTransfers())) {
+        return;
+      }
+      try {
+        setLongOperation({
+          message: t('resumeInProgress'),
+        });
+        await FileOperations.recoverTransfers(operationListener);
+        enqueueSnackbar({
+          variant: 'success',
+          message: t('resumeIsDone'),
+          duration: SNACK_DEFAULT_DURATION_MS,
+        });
+      } finally {
+        setLongOperation(null);
+        refreshRoots();
+      }
+    })().catch(e => {
+      // cancelled from the progress dialog, the rest is rolled back
+      if (!FileOperations.isCancelled(e)) {
+        exceptionHandler.handleError(
+          new FileManagerError(t('resumeFailed'), ErrorType.FILE_API, e),
+        );
+      }
+    });
+  }, []);
+
+  useEffect(() => {
+    if (rootsReady) {
+      // background crawl, search results stay usable while it runs
+      FileSearch.updateIndex().catch(() => {});
+    }
+  }, [rootsReady]);
+
   if (!rootsReady || !stateReady) {
     return (
       <View
@@ -7,6 +7,10 @@ import { FileManagerNavigation } from '../../common/types/navigation';
 export type FileLongOperationType = {
   message: string;
   hidden?: boolean;
+  // id of native operation, allows to cancel it
+  operationId?: number;
+  // 0..1, when operation reports progress
+  progress?: number;
 };
 
 export type FileManagerLayout = 'list' | 'grid';
@@ -45,6 +49,7 @@ export type FileManagerContextType = {
     destination: string,
     injectIfConflict: boolean,
   ) => Promise<void>;
+  compressContent: (files: DirItem[]) => Promise<void>;
 
   showFileDetails: (dirItem: DirItem) => void;
   setFileDetails: (v: DirItem | null) => void;
@@ -84,6 +89,7 @@ export const FileManagerContext = React.createContext<FileManagerContextType>({
   setLongOperation: () => {},
   performCopyContent: async () => {},
   performMoveContent: async () => {},
+  compressContent: async () => {},
 
   ...FileGuiHelper,
 });
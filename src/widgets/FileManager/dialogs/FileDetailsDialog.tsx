@@ -11,6 +11,7 @@ import { useTranslation } from 'react-i18next';
 import { StyleSheet, View } from 'react-native';
 import { theme } from '../../../theme';
 import { FileApi } from '../../../services/FileApi';
+import { FileOperations } from '../../../services/FileOperations';
 
 const styles = StyleSheet.create({
   text: {
@@ -48,18 +49,31 @@ const FileDetailsDialog: React.FC = () => {
     if (!fileManager?.fileDetails?.path) {
       return;
     }
+    let operationId: number | null = null;
     (async () => {
       setSizeLoading(true);
       try {
         const rawSize = await FileApi.getItemSize(
           fileManager?.fileDetails?.path!,
+          {
+            onStart: id => (operationId = id),
+            // show partial totals while big folders are being walked
+            onProgress: ({ bytes }) =>
+              forCurrentTask(() => setSize(FileApi.formatSize(bytes))),
+          },
         );
         forCurrentTask(() => setSize(FileApi.formatSize(rawSize)));
       } catch {
       } finally {
+        operationId = null;
         forCurrentTask(() => setSizeLoading(false));
       }
     })();
+    return () => {
+      if (operationId !== null) {
+        FileOperations.cancel(operationId);
+      }
+    };
   }, [fileManager?.fileDetails?.path]);
 
   if (!fileManager.fileDetails) {
@@ -96,7 +110,7 @@ const FileDetailsDialog: React.FC = () => {
                 <Text style={[styles.text, { fontFamily: theme.regularText }]}>
                   {detail.label}
                 </Text>
-                {detail.loading ? (
+                {detail.loading && !detail.value ? (
                   <View style={styles.loader}>
                     <ActivityIndicator size={24} />
                   </View>
@@ -107,6 +121,7 @@ const FileDetailsDialog: React.FC = () => {
                       { fontFamily: theme.mediumText, flex: 2 },
                     ]}>
                     {detail.value || '-'}
+                    {detail.loading ? ' …' : ''}
                   </Text>
                 )}
               </View>
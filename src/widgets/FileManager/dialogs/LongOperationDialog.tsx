@@ -5,6 +5,7 @@ import {
   Dialog,
   MD2Colors,
   Portal,
+  ProgressBar,
   Text,
 } from 'react-native-paper';
 import { useFileManager } from '../FileManagerContext';
@@ -12,6 +13,7 @@ import { useTranslation } from 'react-i18next';
 import { useBackAction } from '../../../common/hooks/useBackAction';
 import { View } from 'react-native';
 import { theme } from '../../../theme';
+import { FileOperations } from '../../../services/FileOperations';
 
 const STARTUP_DELAY_MS = 1500;
 
@@ -52,10 +54,12 @@ const LongOperationDialog: React.FC = () => {
       return;
     }
     fileManager.setLongOperation({
-      message: fileManager.longOperation?.message,
+      ...fileManager.longOperation,
       hidden: true,
     });
   };
+  const operationId = fileManager.longOperation?.operationId;
+  const progress = fileManager.longOperation?.progress;
   return (
     <Portal>
       <Dialog
@@ -86,8 +90,23 @@ const LongOperationDialog: React.FC = () => {
                 }}>
                 {t('hide')}
               </Button>
+              {operationId !== undefined ? (
+                <Button
+                  onPress={() => {
+                    FileOperations.cancel(operationId);
+                  }}>
+                  {t('cancel')}
+                </Button>
+              ) : null}
             </View>
           </View>
+          {progress !== undefined ? (
+            <ProgressBar
+              style={{ marginTop: 15 }}
+              progress={progress}
+              color={MD2Colors.blueA400}
+            />
+          ) : null}
         </Dialog.Content>
       </Dialog>
     </Portal>
@@ -29,8 +29,12 @@ export const useFsRoots = () => {
   }, []);
 
   useEffect(() => {
+    // Mounts and free space changes are pushed by native, polling only catches
+    // writes of other apps
+    const unsubscribe = FileApi.onRootsChanged(setRoots);
     const intervalId = setInterval(refresh, REFRESH_ROOTS_INTERVAL);
     return () => {
+      unsubscribe();
       clearInterval(intervalId);
     };
   }, []);
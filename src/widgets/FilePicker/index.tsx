@@ -1,16 +1,53 @@
-import React from 'react';
-import { View, Button, Text, NativeModules } from 'react-native';
+import React, { useState } from 'react';
+import {
+  View,
+  Button,
+  Text,
+  NativeEventEmitter,
+  NativeModules,
+} from 'react-native';
+
+const NativePicker = NativeModules.PickerActivityModule;
+const eventEmitter = new NativeEventEmitter(NativePicker);
+
+type IngestProgress = {
+  bytesDone: number;
+  bytesTotal: number;
+  filesDone: number;
+  filesTotal: number;
+  failed: number;
+};
 
 const FilePickerComponent = () => {
-  const handleSelectFile = () => {
+  const [progress, setProgress] = useState<IngestProgress | null>(null);
+
+  const handleSelectFile = async () => {
     const selectedFolder = '/storage/emulated/0/Documents';
-    NativeModules.PickerActivityModule.handleSend(selectedFolder);
+    const subscription = eventEmitter.addListener(
+      'PickerIngestProgress',
+      setProgress,
+    );
+    try {
+      // picker activity finishes once files are saved
+      await NativePicker.handleSend(selectedFolder);
+    } finally {
+      subscription.remove();
+    }
   };
 
   return (
     <View>
       <Text>Here will be select of files</Text>
-      <Button title="Select File" onPress={handleSelectFile} />
+      {progress ? (
+        <Text>
+          {progress.filesDone} / {progress.filesTotal}
+        </Text>
+      ) : null}
+      <Button
+        title="Select File"
+        disabled={!!progress}
+        onPress={handleSelectFile}
+      />
     </View>
   );
 };